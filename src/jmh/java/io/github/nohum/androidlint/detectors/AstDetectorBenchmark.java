@@ -0,0 +1,114 @@
+package io.github.nohum.androidlint.detectors;
+
+import com.android.tools.lint.detector.api.JavaContext;
+import lombok.ast.AstVisitor;
+import lombok.ast.Expression;
+import lombok.ast.ForwardingAstVisitor;
+import lombok.ast.MethodInvocation;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the AST detectors and the {@link StringDataFlowDetector} on a parsed and resolved compilation unit. Each
+ * invocation checks the whole file with fresh per-file state, as lint does for every Java file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AstDetectorBenchmark {
+
+    /** number of generated request and connect methods */
+    @Param({"8", "64"})
+    public int methods;
+
+    private LintFixture fixture;
+
+    private JavaContext context;
+
+    /** calls with a name the location detector applies to, as lint dispatches them */
+    private List<MethodInvocation> locationCalls;
+
+    /** provider arguments of all location calls */
+    private List<Expression> providerArguments;
+
+    private LocationUsageDetectorAst locationDetector;
+
+    private SocketUsageDetectorAst socketDetector;
+
+    @Setup
+    public void setUp() throws IOException {
+        Map<String, String> sources = GeneratedSources.requests(methods);
+        fixture = new LintFixture(sources);
+        context = fixture.parse(sources.keySet()).get(0);
+
+        locationDetector = new LocationUsageDetectorAst();
+        locationDetector.beforeCheckProject(context);
+        socketDetector = new SocketUsageDetectorAst();
+        socketDetector.beforeCheckProject(context);
+
+        final Set<String> names = new HashSet<>(locationDetector.getApplicableMethodNames());
+        locationCalls = new ArrayList<>();
+        providerArguments = new ArrayList<>();
+        context.getCompilationUnit().accept(new ForwardingAstVisitor() {
+            @Override
+            public boolean visitMethodInvocation(MethodInvocation node) {
+                if (names.contains(node.astName().astValue())) {
+                    locationCalls.add(node);
+                    providerArguments.add(node.astArguments().first());
+                }
+
+                return false;
+            }
+        });
+    }
+
+    @TearDown
+    public void tearDown() {
+        fixture.dispose();
+    }
+
+    @Benchmark
+    public int locationDetector() {
+        int reports = fixture.client.reports;
+
+        for (MethodInvocation call : locationCalls) {
+            locationDetector.visitMethod(context, null, call);
+        }
+        locationDetector.afterCheckFile(context);
+
+        return fixture.client.reports - reports;
+    }
+
+    /**
+     * The visitor visits the whole compilation unit, lint would only dispatch the applicable node types.
+     */
+    @Benchmark
+    public int socketDetector() {
+        int reports = fixture.client.reports;
+
+        AstVisitor visitor = socketDetector.createJavaVisitor(context);
+        context.getCompilationUnit().accept(visitor);
+        socketDetector.afterCheckFile(context);
+
+        return fixture.client.reports - reports;
+    }
+
+    @Benchmark
+    public int startInspectionOnExpression() {
+        StringDataFlowDetector detector = new StringDataFlowDetector(context);
+
+        int results = 0;
+        for (Expression argument : providerArguments) {
+            detector.startInspectionOnExpression(argument);
+            results += detector.getResults().size();
+        }
+
+        return results;
+    }
+}
@@ -0,0 +1,377 @@
+package io.github.nohum.androidlint.detectors;
+
+import com.android.tools.lint.detector.api.ClassContext;
+import com.android.tools.lint.detector.api.JavaContext;
+import lombok.ast.AstVisitor;
+import lombok.ast.Expression;
+import lombok.ast.ForwardingAstVisitor;
+import lombok.ast.MethodInvocation;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks that the detectors give the same results when run from many threads at once as when run alone:
+ * <ul>
+ * <li>one {@link BytecodeChecker} is shared by all threads, each checking the generated classes in its own
+ * shuffled order;</li>
+ * <li>each thread checks a lint project of its own, all with one instance of each detector: the AST and byte-code
+ * backends of the location and socket detectors and the generic API detector. Each thread also inspects the
+ * provider arguments with a {@link StringDataFlowDetector}, whose results must stay unchanged by later
+ * inspections.</li>
+ * </ul>
+ * Prints the number of checks and exits with status 1 if any result differs from the single-threaded one or a
+ * thread fails.
+ *
+ * Arguments are the number of threads (default twice the processors, at least {@value #MIN_THREADS}) and of rounds
+ * per thread (default 50).
+ */
+public final class ConcurrencyCheck {
+
+    private static final int CLASSES = 64;
+
+    private static final int OWNERS = 8;
+
+    private static final int HIERARCHY_DEPTH = 4;
+
+    private static final int SOURCE_METHODS = 8;
+
+    private static final int TARGET_SDK = 23;
+
+    private static final int MIN_THREADS = 4;
+
+    private final int threads;
+
+    private final int rounds;
+
+    private final AtomicInteger mismatches = new AtomicInteger();
+
+    private final AtomicInteger checks = new AtomicInteger();
+
+    private ConcurrencyCheck(int threads, int rounds) {
+        this.threads = threads;
+        this.rounds = rounds;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0])
+                : Math.max(MIN_THREADS, Runtime.getRuntime().availableProcessors() * 2);
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+
+        ConcurrencyCheck check = new ConcurrencyCheck(threads, rounds);
+        int failures = check.checkSharedChecker() + check.checkLintDetectors();
+
+        System.out.println(failures == 0 ? "all results match" : failures + " result(s) differ");
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    /**
+     * @return number of classes whose findings differed from the single-threaded ones, or threads that failed
+     */
+    private int checkSharedChecker() throws Exception {
+        final Map<String, ClassNode> classes = new LinkedHashMap<>();
+        for (int i = 0; i < CLASSES; ++ i) {
+            ClassNode node = i % 2 == 0
+                    ? GeneratedClasses.locationRequests("com/example/Location" + i, 4 + i % 8, 2, i % 4 == 0).node
+                    : GeneratedClasses.networkCalls("com/example/Network" + i, 16 + i % 16, OWNERS, 5).node;
+            classes.put(node.name, node);
+        }
+
+        final Map<String, String> superClasses = GeneratedClasses.networkSuperClasses(OWNERS, HIERARCHY_DEPTH);
+        BytecodeChecker.ClassHierarchy hierarchy = new BytecodeChecker.ClassHierarchy() {
+            @Override
+            public String getSuperClass(String internalName) {
+                return superClasses.get(internalName);
+            }
+
+            @Override
+            public ClassNode findClass(String internalName) {
+                return classes.get(internalName);
+            }
+        };
+
+        // the expected findings, from a checker only used by this thread
+        final Map<String, List<String>> expected = new HashMap<>();
+        BytecodeChecker alone = new BytecodeChecker(hierarchy, TARGET_SDK);
+        for (ClassNode node : classes.values()) {
+            expected.put(node.name, render(alone.check(node)));
+        }
+
+        final BytecodeChecker shared = new BytecodeChecker(hierarchy, TARGET_SDK);
+        final List<ClassNode> nodes = new ArrayList<>(classes.values());
+        int failures = run("shared byte-code checker", new Worker() {
+            @Override
+            public int run(int thread) throws Exception {
+                List<ClassNode> order = new ArrayList<>(nodes);
+                Random random = new Random(thread);
+                int failures = 0;
+
+                for (int round = 0; round < rounds; ++ round) {
+                    Collections.shuffle(order, random);
+                    for (ClassNode node : order) {
+                        failures += compare(node.name, expected.get(node.name), render(shared.check(node)));
+                    }
+                }
+
+                return failures;
+            }
+        });
+
+        return failures;
+    }
+
+    /**
+     * @return number of rounds whose results differed from the single-threaded ones, or threads that failed
+     */
+    private int checkLintDetectors() throws Exception {
+        final ProjectRun expected = new ProjectRun();
+        try {
+            expected.run(new Detectors());
+        } finally {
+            expected.dispose();
+        }
+
+        final Detectors shared = new Detectors();
+        return run("shared lint detectors", new Worker() {
+            @Override
+            public int run(int thread) throws Exception {
+                ProjectRun project = new ProjectRun();
+                int failures = 0;
+
+                try {
+                    for (int round = 0; round < rounds; ++ round) {
+                        project.run(shared);
+                        failures += compare("reports", Collections.singletonList(expected.reports),
+                                Collections.singletonList(project.reports));
+                        failures += compare("providers", expected.providers, project.providers);
+                    }
+                } finally {
+                    project.dispose();
+                }
+
+                return failures;
+            }
+        });
+    }
+
+    /** One instance of each detector, as lint creates them for a run */
+    private static final class Detectors {
+        final LocationUsageDetectorAst locationAst = new LocationUsageDetectorAst();
+        final SocketUsageDetectorAst socketAst = new SocketUsageDetectorAst();
+        final LocationUsageDetectorBytecode locationBytecode = new LocationUsageDetectorBytecode();
+        final SocketUsageDetectorBytecode socketBytecode = new SocketUsageDetectorBytecode();
+        final ApiUsageDetectorBytecode api = new ApiUsageDetectorBytecode();
+    }
+
+    /**
+     * Checks a lint project of generated sources and classes with the given detectors, as a lint run would.
+     */
+    private static final class ProjectRun {
+        private final LintFixture fixture;
+
+        private final JavaContext javaContext;
+
+        private final List<MethodInvocation> locationCalls = new ArrayList<>();
+
+        private final List<Expression> providerArguments = new ArrayList<>();
+
+        private final List<ClassContext> classContexts = new ArrayList<>();
+
+        /** reports of the last run */
+        private int reports;
+
+        /** possible values of each provider argument of the last run, in order */
+        private final List<String> providers = new ArrayList<>();
+
+        ProjectRun() throws Exception {
+            Map<String, String> sources = GeneratedSources.requests(SOURCE_METHODS);
+            fixture = new LintFixture(sources);
+            fixture.client.superClasses.putAll(GeneratedClasses.networkSuperClasses(OWNERS, HIERARCHY_DEPTH));
+            javaContext = fixture.parse(sources.keySet()).get(0);
+
+            final Set<String> names = new HashSet<>(LocationRules.getApplicableMethodNames());
+            javaContext.getCompilationUnit().accept(new ForwardingAstVisitor() {
+                @Override
+                public boolean visitMethodInvocation(MethodInvocation node) {
+                    if (names.contains(node.astName().astValue())) {
+                        locationCalls.add(node);
+                        providerArguments.add(node.astArguments().first());
+                    }
+
+                    return false;
+                }
+            });
+
+            classContexts.add(fixture.createClassContext(GeneratedClasses.locationRequests("com/example/Location", 8,
+                    2, true)));
+            classContexts.add(fixture.createClassContext(GeneratedClasses.networkCalls("com/example/Network", 32,
+                    OWNERS, 5)));
+        }
+
+        void run(Detectors detectors) {
+            int reportsBefore = fixture.client.reports;
+
+            LocationUsageDetectorAst locationAst = detectors.locationAst;
+            SocketUsageDetectorAst socketAst = detectors.socketAst;
+            locationAst.beforeCheckProject(javaContext);
+            socketAst.beforeCheckProject(javaContext);
+            for (MethodInvocation call : locationCalls) {
+                locationAst.visitMethod(javaContext, null, call);
+            }
+
+            AstVisitor visitor = socketAst.createJavaVisitor(javaContext);
+            if (visitor != null) {
+                javaContext.getCompilationUnit().accept(visitor);
+            }
+
+            locationAst.afterCheckFile(javaContext);
+            socketAst.afterCheckFile(javaContext);
+            locationAst.afterCheckProject(javaContext);
+            socketAst.afterCheckProject(javaContext);
+
+            LocationUsageDetectorBytecode locationBytecode = detectors.locationBytecode;
+            SocketUsageDetectorBytecode socketBytecode = detectors.socketBytecode;
+            ApiUsageDetectorBytecode api = detectors.api;
+            locationBytecode.beforeCheckProject(javaContext);
+            socketBytecode.beforeCheckProject(javaContext);
+            api.beforeCheckProject(javaContext);
+            for (ClassContext context : classContexts) {
+                checkCalls(context, detectors);
+                locationBytecode.afterCheckFile(context);
+                socketBytecode.afterCheckFile(context);
+                api.afterCheckFile(context);
+            }
+
+            locationBytecode.afterCheckProject(javaContext);
+            socketBytecode.afterCheckProject(javaContext);
+            api.afterCheckProject(javaContext);
+            reports = fixture.client.reports - reportsBefore;
+
+            // results handed out earlier must not change by later inspections
+            StringDataFlowDetector detector = new StringDataFlowDetector(javaContext);
+            List<List<String>> results = new ArrayList<>();
+            providers.clear();
+            for (Expression argument : providerArguments) {
+                detector.startInspectionOnExpression(argument);
+                results.add(detector.getResults());
+                providers.add(detector.getResults().toString());
+            }
+
+            for (int i = 0; i < results.size(); ++ i) {
+                if (!results.get(i).toString().equals(providers.get(i))) {
+                    throw new IllegalStateException("results of inspection " + i + " changed to " + results.get(i));
+                }
+            }
+        }
+
+        private static void checkCalls(ClassContext context, Detectors detectors) {
+            ClassNode node = context.getClassNode();
+            List<String> locationNames = detectors.locationBytecode.getApplicableCallNames();
+            List<String> socketNames = detectors.socketBytecode.getApplicableCallNames();
+            List<String> apiNames = detectors.api.getApplicableCallNames();
+
+            for (MethodNode method : node.methods) {
+                for (Object instruction : method.instructions.toArray()) {
+                    if (!(instruction instanceof MethodInsnNode)) {
+                        continue;
+                    }
+
+                    MethodInsnNode call = (MethodInsnNode) instruction;
+                    if (locationNames.contains(call.name)) {
+                        detectors.locationBytecode.checkCall(context, node, method, call);
+                    }
+
+                    if (socketNames.contains(call.name)) {
+                        detectors.socketBytecode.checkCall(context, node, method, call);
+                    }
+
+                    if (apiNames.contains(call.name)) {
+                        detectors.api.checkCall(context, node, method, call);
+                    }
+                }
+            }
+        }
+
+        void dispose() {
+            fixture.dispose();
+        }
+    }
+
+    /** Work of one thread */
+    private interface Worker {
+        /**
+         * @param thread index of the thread
+         * @return number of mismatches
+         */
+        int run(int thread) throws Exception;
+    }
+
+    /**
+     * Runs the worker on all threads at once, released together by a latch.
+     *
+     * @return number of mismatches plus failed threads
+     */
+    private int run(String name, final Worker worker) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> futures = new ArrayList<>();
+        int checksBefore = checks.get();
+
+        for (int i = 0; i < threads; ++ i) {
+            final int thread = i;
+            futures.add(executor.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    start.await();
+                    return worker.run(thread);
+                }
+            }));
+        }
+
+        start.countDown();
+        int failures = 0;
+        for (Future<Integer> future : futures) {
+            try {
+                failures += future.get();
+            } catch (ExecutionException e) {
+                System.out.println(name + ": thread failed");
+                e.getCause().printStackTrace(System.out);
+                ++ failures;
+            }
+        }
+
+        executor.shutdown();
+        System.out.println(String.format(Locale.ROOT, "%-26s %d threads, %d checks %s", name, threads,
+                checks.get() - checksBefore, failures == 0 ? "" : "FAILED: " + failures + " mismatch(es)"));
+        return failures;
+    }
+
+    private int compare(String subject, List<?> expected, List<?> actual) {
+        checks.incrementAndGet();
+        if (expected.equals(actual)) {
+            return 0;
+        }
+
+        // only the first few are printed, the count tells the rest
+        if (mismatches.incrementAndGet() <= 10) {
+            System.out.println(subject + ": expected " + expected + " but was " + actual);
+        }
+
+        return 1;
+    }
+
+    private static List<String> render(List<Finding> findings) {
+        List<String> rendered = new ArrayList<>();
+        for (Finding finding : findings) {
+            rendered.add(finding.getIssueId() + " " + finding.getClassName() + "." + finding.getMethodName()
+                    + finding.getMethodDesc() + ":" + finding.getLine() + " " + finding.getCalledMethod() + " "
+                    + finding.getPermission() + " " + finding.getProviders());
+        }
+
+        return rendered;
+    }
+}
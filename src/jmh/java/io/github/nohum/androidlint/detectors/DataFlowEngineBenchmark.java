@@ -0,0 +1,92 @@
+package io.github.nohum.androidlint.detectors;
+
+import com.android.tools.lint.checks.ControlFlowGraph;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.analysis.AnalyzerException;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolves the provider arguments of all request calls of a generated method with both byte-code engines,
+ * as {@link LocationUsageDetectorBytecode} does for each method.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DataFlowEngineBenchmark {
+
+    /** number of request calls, each preceded by a branch unless {@link #branches} is false */
+    @Param({"4", "32"})
+    public int calls;
+
+    /** false for a straight-line method, which {@link StringDataFlowGraph} scans without building a graph */
+    @Param({"true", "false"})
+    public boolean branches;
+
+    /** number of further values on the stack at each request, which every state of the method has to carry */
+    @Param({"0", "16"})
+    public int stackDepth;
+
+    private ClassNode classNode;
+
+    private MethodNode method;
+
+    private Map<MethodInsnNode, Integer> requestCalls;
+
+    private ReturnValueSummaries summaries;
+
+    @Setup
+    public void setUp() {
+        GeneratedClasses.GeneratedClass generated = GeneratedClasses.locationRequests("com/example/Requests", calls,
+                stackDepth, branches);
+        classNode = generated.node;
+        method = generated.getMethod("request");
+
+        requestCalls = new IdentityHashMap<>();
+        for (MethodInsnNode call : generated.getCalls("request")) {
+            if (GeneratedClasses.LOCATION_MANAGER.equals(call.owner)) {
+                requestCalls.put(call, 0);
+            }
+        }
+
+        summaries = new ReturnValueSummaries(new ReturnValueSummaries.ClassProvider() {
+            @Override
+            public ClassNode findClass(String internalName) {
+                return null;
+            }
+        }, AnalysisOptions.getSummaryCacheSize());
+    }
+
+    @Benchmark
+    public int controlFlowGraph() throws AnalyzerException {
+        StringDataFlowGraph graph = new StringDataFlowGraph(requestCalls);
+        graph.setReturnValueSummaries(summaries);
+        if (!StringDataFlowGraph.isStraightLine(method)) {
+            ControlFlowGraph.create(graph, classNode, method);
+        }
+        graph.analyze(method);
+        return countProviders(graph);
+    }
+
+    @Benchmark
+    public int sourceFrames() throws AnalyzerException {
+        return countProviders(new SourceFrameAnalysis(classNode.name, method, requestCalls, summaries));
+    }
+
+    private int countProviders(ProviderAnalysis analysis) {
+        int providers = 0;
+        for (MethodInsnNode call : requestCalls.keySet()) {
+            providers += analysis.getPossibleProviders(call).size();
+        }
+
+        return providers;
+    }
+}
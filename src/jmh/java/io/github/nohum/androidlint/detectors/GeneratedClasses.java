@@ -0,0 +1,218 @@
+package io.github.nohum.androidlint.detectors;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.util.*;
+
+/**
+ * Byte code of representative app classes for the benchmarks, generated with ASM.
+ */
+final class GeneratedClasses implements Opcodes {
+
+    static final String LOCATION_MANAGER = "android/location/LocationManager";
+    static final String LOCATION_LISTENER = "android/location/LocationListener";
+    static final String REQUEST_LOCATION_UPDATES_DESC = "(Ljava/lang/String;JFL" + LOCATION_LISTENER + ";)V";
+
+    static final String NETWORK_PACKAGE = "com/example/net/";
+
+    /**
+     * A generated class, kept as bytes (e.g. for the findings cache key) and as tree.
+     */
+    static final class GeneratedClass {
+        final byte[] bytes;
+        final ClassNode node;
+
+        GeneratedClass(byte[] bytes) {
+            this.bytes = bytes;
+            this.node = new ClassNode();
+            new ClassReader(bytes).accept(node, 0);
+        }
+
+        MethodNode getMethod(String name) {
+            for (Object method : node.methods) {
+                if (((MethodNode) method).name.equals(name)) {
+                    return (MethodNode) method;
+                }
+            }
+
+            throw new IllegalArgumentException(name);
+        }
+
+        List<MethodInsnNode> getCalls(String methodName) {
+            List<MethodInsnNode> calls = new ArrayList<>();
+            for (AbstractInsnNode instruction = getMethod(methodName).instructions.getFirst(); instruction != null;
+                    instruction = instruction.getNext()) {
+                if (instruction instanceof MethodInsnNode) {
+                    calls.add((MethodInsnNode) instruction);
+                }
+            }
+
+            return calls;
+        }
+    }
+
+    private GeneratedClasses() {
+    }
+
+    /**
+     * A class whose method {@code request} performs the given number of {@code requestLocationUpdates} calls.
+     * Each provider argument is chosen by a branch ({@code flags[i] ? "gps" : "network"}) stored in a local
+     * variable, so the data-flow engines have to merge at every call.
+     */
+    static GeneratedClass locationRequests(String name, int calls) {
+        return locationRequests(name, calls, 0);
+    }
+
+    /**
+     * Like {@link #locationRequests(String, int)}, but each request happens with the given number of further
+     * strings on the stack, which are passed to a static {@code sink} method afterwards.
+     */
+    static GeneratedClass locationRequests(String name, int calls, int stackDepth) {
+        return locationRequests(name, calls, stackDepth, true);
+    }
+
+    /**
+     * Like {@link #locationRequests(String, int, int)}, but without branches if {@code branches} is false: every
+     * provider is {@code "gps"} then and the method is straight-line.
+     */
+    static GeneratedClass locationRequests(String name, int calls, int stackDepth, boolean branches) {
+        ClassWriter writer = createClass(name, "java/lang/Object");
+        MethodVisitor mv = writer.visitMethod(ACC_PUBLIC, "request",
+                "(L" + LOCATION_MANAGER + ";L" + LOCATION_LISTENER + ";[Z)V", null, null);
+        mv.visitCode();
+
+        StringBuilder sinkDesc = new StringBuilder("(");
+        for (int i = 0; i < stackDepth; ++ i) {
+            sinkDesc.append("Ljava/lang/String;");
+        }
+        sinkDesc.append(")V");
+
+        for (int i = 0; i < calls; ++ i) {
+            Label otherwise = new Label();
+            Label end = new Label();
+
+            for (int j = 0; j < stackDepth; ++ j) {
+                mv.visitLdcInsn("s" + j);
+            }
+
+            if (branches) {
+                mv.visitVarInsn(ALOAD, 3);
+                mv.visitLdcInsn(i);
+                mv.visitInsn(BALOAD);
+                mv.visitJumpInsn(IFEQ, otherwise);
+                mv.visitLdcInsn("gps");
+                mv.visitVarInsn(ASTORE, 4);
+                mv.visitJumpInsn(GOTO, end);
+                mv.visitLabel(otherwise);
+                mv.visitLdcInsn("network");
+                mv.visitVarInsn(ASTORE, 4);
+                mv.visitLabel(end);
+            } else {
+                mv.visitLdcInsn("gps");
+                mv.visitVarInsn(ASTORE, 4);
+            }
+
+            mv.visitVarInsn(ALOAD, 1);
+            mv.visitVarInsn(ALOAD, 4);
+            mv.visitInsn(LCONST_0);
+            mv.visitInsn(FCONST_0);
+            mv.visitVarInsn(ALOAD, 2);
+            mv.visitMethodInsn(INVOKEVIRTUAL, LOCATION_MANAGER, "requestLocationUpdates",
+                    REQUEST_LOCATION_UPDATES_DESC, false);
+
+            if (stackDepth > 0) {
+                mv.visitMethodInsn(INVOKESTATIC, name, "sink", sinkDesc.toString(), false);
+            }
+        }
+
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        return finish(writer);
+    }
+
+    /**
+     * A class whose method {@code run} performs the given number of calls named like the ones the socket detector
+     * watches. Most of them go to unrelated owners ({@code Executor.execute} and app classes), every
+     * {@code socketEvery}-th one to {@code java/net/Socket.connect}. App classes {@code Conn0} to
+     * {@code Conn<owners - 1>} are called in turn, see {@link #networkSuperClasses} for their hierarchy.
+     */
+    static GeneratedClass networkCalls(String name, int calls, int owners, int socketEvery) {
+        ClassWriter writer = createClass(name, "java/lang/Object");
+        MethodVisitor mv = writer.visitMethod(ACC_PUBLIC, "run",
+                "(Ljava/util/concurrent/Executor;Ljava/lang/Runnable;Ljava/net/Socket;Ljava/net/SocketAddress;)V",
+                null, null);
+        mv.visitCode();
+
+        for (int i = 0; i < calls; ++ i) {
+            if (socketEvery > 0 && i % socketEvery == 0) {
+                mv.visitVarInsn(ALOAD, 3);
+                mv.visitVarInsn(ALOAD, 4);
+                mv.visitMethodInsn(INVOKEVIRTUAL, "java/net/Socket", "connect", "(Ljava/net/SocketAddress;)V", false);
+            } else if (i % 2 == 0) {
+                mv.visitVarInsn(ALOAD, 1);
+                mv.visitVarInsn(ALOAD, 2);
+                mv.visitMethodInsn(INVOKEINTERFACE, "java/util/concurrent/Executor", "execute",
+                        "(Ljava/lang/Runnable;)V", true);
+            } else {
+                String owner = NETWORK_PACKAGE + "Conn" + (i % owners);
+                mv.visitTypeInsn(NEW, owner);
+                mv.visitInsn(DUP);
+                mv.visitMethodInsn(INVOKESPECIAL, owner, "<init>", "()V", false);
+                mv.visitMethodInsn(INVOKEVIRTUAL, owner, "connect", "()V", false);
+            }
+        }
+
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        return finish(writer);
+    }
+
+    /**
+     * Superclasses of the app classes called by {@link #networkCalls}: {@code Conn0} extends {@code Socket} through
+     * a chain of the given depth, all others extend {@code Object} through such a chain.
+     */
+    static Map<String, String> networkSuperClasses(int owners, int depth) {
+        Map<String, String> superClasses = new HashMap<>();
+        for (int i = 0; i < owners; ++ i) {
+            String current = NETWORK_PACKAGE + "Conn" + i;
+            for (int level = 0; level < depth; ++ level) {
+                String base = NETWORK_PACKAGE + "Conn" + i + "Base" + level;
+                superClasses.put(current, base);
+                current = base;
+            }
+
+            superClasses.put(current, i == 0 ? "java/net/Socket" : "java/lang/Object");
+        }
+
+        return superClasses;
+    }
+
+    static ClassWriter createClass(String name, String superName) {
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        writer.visit(V1_6, ACC_PUBLIC, name, null, superName, null);
+
+        MethodVisitor mv = writer.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitMethodInsn(INVOKESPECIAL, superName, "<init>", "()V", false);
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        return writer;
+    }
+
+    static GeneratedClass finish(ClassWriter writer) {
+        writer.visitEnd();
+        return new GeneratedClass(writer.toByteArray());
+    }
+}
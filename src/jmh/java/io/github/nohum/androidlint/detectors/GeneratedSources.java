@@ -0,0 +1,87 @@
+package io.github.nohum.androidlint.detectors;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Java sources of representative app classes for the benchmarks, together with minimal platform classes so the
+ * calls can be resolved without an SDK.
+ */
+final class GeneratedSources {
+
+    static final String REQUESTS_PATH = "com/example/Requests.java";
+
+    private static final String LOCATION_MANAGER = "package android.location;\n"
+            + "public class LocationManager {\n"
+            + "    public static final String GPS_PROVIDER = \"gps\";\n"
+            + "    public static final String NETWORK_PROVIDER = \"network\";\n"
+            + "    public static final String PASSIVE_PROVIDER = \"passive\";\n"
+            + "    public void requestLocationUpdates(String provider, long minTime, float minDistance,\n"
+            + "            LocationListener listener) {}\n"
+            + "    public boolean isProviderEnabled(String provider) { return false; }\n"
+            + "}\n";
+
+    private static final String LOCATION_LISTENER = "package android.location;\n"
+            + "public interface LocationListener {}\n";
+
+    private GeneratedSources() {
+    }
+
+    /**
+     * Sources of a class with the given number of methods requesting location updates and connecting sockets.
+     * The providers come from locals, conditionals, fields and helper methods calling each other.
+     *
+     * @return sources by path, the generated class at {@link #REQUESTS_PATH}
+     */
+    static Map<String, String> requests(int methods) {
+        StringBuilder source = new StringBuilder()
+                .append("package com.example;\n\n")
+                .append("import android.location.LocationListener;\n")
+                .append("import android.location.LocationManager;\n")
+                .append("import java.net.InetSocketAddress;\n")
+                .append("import java.net.Socket;\n\n")
+                .append("public class Requests {\n")
+                .append("    private static final String FIELD_PROVIDER = LocationManager.GPS_PROVIDER;\n\n")
+                .append("    private String provider(boolean fine) {\n")
+                .append("        if (fine) {\n")
+                .append("            return \"gps\";\n")
+                .append("        }\n")
+                .append("        return LocationManager.NETWORK_PROVIDER;\n")
+                .append("    }\n\n")
+                .append("    private String indirect(boolean fine) {\n")
+                .append("        return provider(!fine);\n")
+                .append("    }\n");
+
+        for (int i = 0; i < methods; ++ i) {
+            source.append('\n')
+                    .append("    void request").append(i).append("(LocationManager lm, LocationListener l, boolean b) {\n")
+                    .append("        String p = b ? \"gps\" : \"network\";\n")
+                    .append("        String q = p;\n")
+                    .append("        if (b) {\n")
+                    .append("            q = FIELD_PROVIDER;\n")
+                    .append("        }\n")
+                    .append("        lm.requestLocationUpdates(q, 0, 0, l);\n")
+                    .append("        lm.requestLocationUpdates(indirect(b), 0, 0, l);\n")
+                    .append("        lm.isProviderEnabled(LocationManager.PASSIVE_PROVIDER);\n")
+                    .append("    }\n\n")
+                    .append("    void connect").append(i).append("(Socket s) throws Exception {\n")
+                    .append("        Socket t = s;\n")
+                    .append("        t.connect(new InetSocketAddress(\"example.com\", 80));\n")
+                    .append("    }\n");
+        }
+
+        source.append("}\n");
+        return withPlatform(REQUESTS_PATH, source.toString());
+    }
+
+    /**
+     * @return the given source followed by the platform classes it may use, by path
+     */
+    static Map<String, String> withPlatform(String path, String source) {
+        Map<String, String> sources = new LinkedHashMap<>();
+        sources.put(path, source);
+        sources.put("android/location/LocationManager.java", LOCATION_MANAGER);
+        sources.put("android/location/LocationListener.java", LOCATION_LISTENER);
+        return sources;
+    }
+}
@@ -0,0 +1,139 @@
+package io.github.nohum.androidlint.detectors;
+
+import com.android.annotations.NonNull;
+import com.android.tools.lint.EcjParser;
+import com.android.tools.lint.LintCliClient;
+import com.android.tools.lint.client.api.LintDriver;
+import com.android.tools.lint.detector.api.*;
+import io.github.nohum.androidlint.ExtensionIssueRegistry;
+import lombok.ast.Node;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+/**
+ * A lint project in a temporary directory, with a client that only counts reports. Java sources are parsed and
+ * resolved by the ECJ based parser of the lint command line client, as during a real lint run. The contexts
+ * count reports without the suppression checks, those need the state of a running driver.
+ */
+final class LintFixture {
+
+    private static final String MANIFEST = "<manifest xmlns:android=\"http://schemas.android.com/apk/res/android\"\n"
+            + "    package=\"com.example\">\n"
+            + "    <uses-sdk android:minSdkVersion=\"15\" android:targetSdkVersion=\"19\" />\n"
+            + "</manifest>\n";
+
+    /**
+     * Counts reports instead of collecting them and serves superclasses of generated classes.
+     */
+    static final class BenchmarkClient extends LintCliClient {
+        final Map<String, String> superClasses = new HashMap<>();
+        int reports;
+
+        @Override
+        public void report(@NonNull Context context, @NonNull Issue issue, @NonNull Severity severity,
+                           @NonNull Location location, @NonNull String message, @NonNull TextFormat format) {
+            ++ reports;
+        }
+
+        @Override
+        public void log(Severity severity, Throwable exception, String format, Object... args) {
+        }
+
+        @Override
+        public String getSuperClass(Project project, String name) {
+            return superClasses.get(name);
+        }
+    }
+
+    final BenchmarkClient client = new BenchmarkClient();
+    final LintDriver driver = new LintDriver(new ExtensionIssueRegistry(), client);
+    final File dir;
+    final Project project;
+
+    private final EcjParser parser;
+
+    /**
+     * @param sources Java sources by path relative to {@code src}
+     */
+    LintFixture(Map<String, String> sources) throws IOException {
+        dir = Files.createTempDirectory("lint-benchmark").toFile();
+        write(new File(dir, "AndroidManifest.xml"), MANIFEST);
+        for (Map.Entry<String, String> source : sources.entrySet()) {
+            write(new File(dir, "src/" + source.getKey()), source.getValue());
+        }
+
+        driver.setScope(Scope.ALL);
+        project = client.getProject(dir, dir);
+        parser = new EcjParser(client, project);
+    }
+
+    /**
+     * Parses all given sources together, hence references between them are resolved.
+     *
+     * @return contexts holding the compilation units, in the order of the paths
+     */
+    List<JavaContext> parse(Collection<String> paths) {
+        List<JavaContext> contexts = new ArrayList<>();
+        for (String path : paths) {
+            contexts.add(new JavaContext(driver, project, project, new File(dir, "src/" + path), parser) {
+                @Override
+                public void report(@NonNull Issue issue, Node scope, Location location, @NonNull String message) {
+                    ++ client.reports;
+                }
+            });
+        }
+
+        parser.prepareJavaParse(contexts);
+        for (JavaContext context : contexts) {
+            Node unit = parser.parseJava(context);
+            if (unit == null) {
+                throw new IllegalStateException("could not parse " + context.file);
+            }
+
+            context.setCompilationUnit(unit);
+        }
+
+        return contexts;
+    }
+
+    ClassContext createClassContext(GeneratedClasses.GeneratedClass generated) {
+        ClassNode node = generated.node;
+        File file = new File(dir, "bin/classes/" + node.name + ".class");
+        return new ClassContext(driver, project, project, file, null, new File(dir, "bin/classes"), generated.bytes,
+                node, false, null) {
+            @Override
+            public void report(@NonNull Issue issue, MethodNode method, AbstractInsnNode instruction,
+                               @NonNull Location location, @NonNull String message) {
+                ++ client.reports;
+            }
+        };
+    }
+
+    void dispose() {
+        parser.dispose();
+        delete(dir);
+    }
+
+    private static void write(File file, String contents) throws IOException {
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+
+        file.delete();
+    }
+}
@@ -0,0 +1,166 @@
+package io.github.nohum.androidlint.detectors;
+
+import com.android.tools.lint.checks.ControlFlowGraph;
+import com.android.tools.lint.detector.api.JavaContext;
+import lombok.ast.Expression;
+import lombok.ast.ForwardingAstVisitor;
+import lombok.ast.MethodInvocation;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.analysis.AnalyzerException;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the analyses on the shapes of the {@link PathologicalCorpus}. Summaries are built anew for every
+ * invocation, so helper methods are analyzed each time. {@link ScalingCheck} uses the same setup and counts the
+ * work of the analyses with a {@link #budget}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PathologicalBenchmark {
+
+    /** name of a {@link PathologicalCorpus.Shape} */
+    @Param({"DIAMONDS", "NESTED_LOOPS", "TRY_CATCH", "CALL_CHAIN", "MUTUAL_RECURSION"})
+    public String shape;
+
+    @Param({"16", "64", "256"})
+    public int n;
+
+    private LintFixture fixture;
+
+    private ClassNode classNode;
+
+    private MethodNode method;
+
+    private Map<MethodInsnNode, Integer> requestCalls;
+
+    private JavaContext context;
+
+    private List<Expression> providerArguments;
+
+    /** consumed by the analyses if set, the benchmarks run without one */
+    AnalysisBudget budget;
+
+    /** nodes visited by the last invocation according to the {@link #budget}, plus the graph construction */
+    long visitedNodes;
+
+    @Setup
+    public void setUp() throws IOException {
+        PathologicalCorpus.Shape shape = PathologicalCorpus.Shape.valueOf(this.shape);
+        GeneratedClasses.GeneratedClass generated = PathologicalCorpus.bytecode(shape, n);
+        classNode = generated.node;
+        method = generated.getMethod(PathologicalCorpus.METHOD_NAME);
+
+        requestCalls = new IdentityHashMap<>();
+        for (MethodInsnNode call : generated.getCalls(PathologicalCorpus.METHOD_NAME)) {
+            if (GeneratedClasses.LOCATION_MANAGER.equals(call.owner)) {
+                requestCalls.put(call, 0);
+            }
+        }
+
+        Map<String, String> sources = PathologicalCorpus.source(shape, n);
+        fixture = new LintFixture(sources);
+        context = fixture.parse(sources.keySet()).get(0);
+
+        providerArguments = new ArrayList<>();
+        context.getCompilationUnit().accept(new ForwardingAstVisitor() {
+            @Override
+            public boolean visitMethodInvocation(MethodInvocation node) {
+                if ("requestLocationUpdates".equals(node.astName().astValue())) {
+                    providerArguments.add(node.astArguments().first());
+                }
+
+                return false;
+            }
+        });
+    }
+
+    @TearDown
+    public void tearDown() {
+        fixture.dispose();
+    }
+
+    @Benchmark
+    public int controlFlowGraph() throws AnalyzerException {
+        resetBudget();
+        StringDataFlowGraph graph = new StringDataFlowGraph(requestCalls);
+        graph.setReturnValueSummaries(createSummaries());
+        graph.setBudget(budget);
+        if (!StringDataFlowGraph.isStraightLine(method)) {
+            ControlFlowGraph.create(graph, classNode, method);
+        }
+        graph.analyze(method);
+
+        int providers = countProviders(graph);
+        visitedNodes = graph.getWalkedRangeInstructions() + (budget == null ? 0 : budget.getVisitedNodes());
+        return providers;
+    }
+
+    @Benchmark
+    public int sourceFrames() throws AnalyzerException {
+        resetBudget();
+        int providers = countProviders(new SourceFrameAnalysis(classNode.name, method, requestCalls,
+                createSummaries(), budget));
+        visitedNodes = budget == null ? 0 : budget.getVisitedNodes();
+        return providers;
+    }
+
+    @Benchmark
+    public int startInspectionOnExpression() {
+        StringDataFlowDetector detector = new StringDataFlowDetector(context);
+        detector.setBudget(budget);
+        visitedNodes = 0;
+
+        // the budget is reset per call site, as by the detector
+        int results = 0;
+        for (Expression argument : providerArguments) {
+            if (budget != null) {
+                budget.reset();
+            }
+
+            detector.startInspectionOnExpression(argument);
+            results += detector.getResults().size();
+            visitedNodes += budget == null ? 0 : budget.getVisitedNodes();
+        }
+
+        return results;
+    }
+
+    /**
+     * Resets the budget with one share per request call, as the byte-code detectors do.
+     */
+    private void resetBudget() {
+        if (budget != null) {
+            budget.reset(requestCalls.size());
+        }
+    }
+
+    private ReturnValueSummaries createSummaries() {
+        ReturnValueSummaries summaries = new ReturnValueSummaries(new ReturnValueSummaries.ClassProvider() {
+            @Override
+            public ClassNode findClass(String internalName) {
+                return internalName.equals(classNode.name) ? classNode : null;
+            }
+        }, AnalysisOptions.getSummaryCacheSize());
+        summaries.setBudget(budget);
+        return summaries;
+    }
+
+    private int countProviders(ProviderAnalysis analysis) {
+        int providers = 0;
+        for (MethodInsnNode call : requestCalls.keySet()) {
+            providers += analysis.getPossibleProviders(call).size();
+        }
+
+        return providers;
+    }
+}
@@ -0,0 +1,344 @@
+package io.github.nohum.androidlint.detectors;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.util.Map;
+
+/**
+ * Reproducible inputs exposing the scaling limits of the analyses. Every shape is generated with a size
+ * {@code n} as byte code and as the equivalent Java source. The analyzed method is always
+ * {@code request(LocationManager lm, LocationListener l, boolean[] flags)} of {@link #CLASS_NAME}, helpers are
+ * named {@code provider0} to {@code provider<n - 1>}.
+ */
+final class PathologicalCorpus implements Opcodes {
+
+    static final String CLASS_NAME = "com/example/Pathological";
+    static final String SOURCE_PATH = CLASS_NAME + ".java";
+    static final String METHOD_NAME = "request";
+
+    private static final String METHOD_DESC = "(L" + GeneratedClasses.LOCATION_MANAGER + ";L"
+            + GeneratedClasses.LOCATION_LISTENER + ";[Z)V";
+    private static final String PROVIDER_DESC = "(Z)Ljava/lang/String;";
+
+    private static final String SECURITY_EXCEPTION = "java/lang/SecurityException";
+
+    enum Shape {
+        /** n sequential if/else diamonds, each choosing the provider of one request */
+        DIAMONDS,
+        /** n nested loops around a single request */
+        NESTED_LOOPS,
+        /** a try region spanning n requests, each in its own try region as well */
+        TRY_CATCH,
+        /** the provider is returned through a chain of n helper methods */
+        CALL_CHAIN,
+        /** n helper methods calling each other in a cycle */
+        MUTUAL_RECURSION
+    }
+
+    private PathologicalCorpus() {
+    }
+
+    static GeneratedClasses.GeneratedClass bytecode(Shape shape, int n) {
+        ClassWriter writer = GeneratedClasses.createClass(CLASS_NAME, "java/lang/Object");
+        MethodVisitor mv = writer.visitMethod(ACC_PUBLIC, METHOD_NAME, METHOD_DESC, null, null);
+        mv.visitCode();
+
+        switch (shape) {
+            case DIAMONDS:
+                for (int i = 0; i < n; ++ i) {
+                    visitRequest(mv, i);
+                }
+                break;
+
+            case NESTED_LOOPS:
+                visitNestedLoops(mv, n);
+                break;
+
+            case TRY_CATCH:
+                visitTryCatch(mv, n);
+                break;
+
+            case CALL_CHAIN:
+            case MUTUAL_RECURSION:
+                visitHelperRequest(mv);
+                break;
+        }
+
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        if (shape == Shape.CALL_CHAIN) {
+            for (int i = 0; i < n; ++ i) {
+                visitChainProvider(writer, i, n);
+            }
+        } else if (shape == Shape.MUTUAL_RECURSION) {
+            for (int i = 0; i < n; ++ i) {
+                visitRecursiveProvider(writer, i, n);
+            }
+        }
+
+        return GeneratedClasses.finish(writer);
+    }
+
+    /**
+     * @return sources by path, the generated class at {@link #SOURCE_PATH}
+     */
+    static Map<String, String> source(Shape shape, int n) {
+        StringBuilder source = new StringBuilder()
+                .append("package com.example;\n\n")
+                .append("import android.location.LocationListener;\n")
+                .append("import android.location.LocationManager;\n\n")
+                .append("public class Pathological {\n\n")
+                .append("    public void request(LocationManager lm, LocationListener l, boolean[] flags) {\n");
+
+        switch (shape) {
+            case DIAMONDS:
+                for (int i = 0; i < n; ++ i) {
+                    appendRequest(source, 2, ternary(i));
+                }
+                break;
+
+            case NESTED_LOOPS:
+                for (int i = 0; i < n; ++ i) {
+                    indent(source, 2 + i).append("for (int i").append(i).append(" = 0; i").append(i)
+                            .append(" < flags.length; ++ i").append(i).append(") {\n");
+                }
+                appendRequest(source, 2 + n, ternary(0));
+                for (int i = n - 1; i >= 0; -- i) {
+                    indent(source, 2 + i).append("}\n");
+                }
+                break;
+
+            case TRY_CATCH:
+                indent(source, 2).append("try {\n");
+                for (int i = 0; i < n; ++ i) {
+                    indent(source, 3).append("try {\n");
+                    appendRequest(source, 4, ternary(i));
+                    indent(source, 3).append("} catch (SecurityException e) {\n");
+                    appendRequest(source, 4, "LocationManager.PASSIVE_PROVIDER");
+                    indent(source, 3).append("}\n");
+                }
+                indent(source, 2).append("} catch (SecurityException e) {\n");
+                appendRequest(source, 3, "LocationManager.PASSIVE_PROVIDER");
+                indent(source, 2).append("}\n");
+                break;
+
+            case CALL_CHAIN:
+            case MUTUAL_RECURSION:
+                appendRequest(source, 2, "provider0(flags[0])");
+                break;
+        }
+
+        source.append("    }\n");
+
+        for (int i = 0; shape == Shape.CALL_CHAIN && i < n; ++ i) {
+            source.append("\n    private String provider").append(i).append("(boolean b) {\n");
+            if (i < n - 1) {
+                source.append("        return provider").append(i + 1).append("(b);\n");
+            } else {
+                source.append("        return b ? \"gps\" : \"network\";\n");
+            }
+            source.append("    }\n");
+        }
+
+        for (int i = 0; shape == Shape.MUTUAL_RECURSION && i < n; ++ i) {
+            source.append("\n    private String provider").append(i).append("(boolean b) {\n")
+                    .append("        return b ? provider").append((i + 1) % n).append("(false) : \"")
+                    .append(recursiveProvider(i)).append("\";\n")
+                    .append("    }\n");
+        }
+
+        source.append("}\n");
+        return GeneratedSources.withPlatform(SOURCE_PATH, source.toString());
+    }
+
+    private static String ternary(int flag) {
+        return "flags[" + flag + "] ? \"gps\" : \"network\"";
+    }
+
+    private static String recursiveProvider(int i) {
+        return i % 2 == 0 ? "gps" : "network";
+    }
+
+    private static StringBuilder indent(StringBuilder source, int level) {
+        for (int i = 0; i < level; ++ i) {
+            source.append("    ");
+        }
+
+        return source;
+    }
+
+    private static void appendRequest(StringBuilder source, int level, String provider) {
+        indent(source, level).append("lm.requestLocationUpdates(").append(provider).append(", 0, 0, l);\n");
+    }
+
+    /**
+     * {@code lm.requestLocationUpdates(flags[flag] ? "gps" : "network", 0, 0, l)}
+     */
+    private static void visitRequest(MethodVisitor mv, int flag) {
+        Label otherwise = new Label();
+        Label end = new Label();
+
+        mv.visitVarInsn(ALOAD, 1);
+        visitFlag(mv, flag);
+        mv.visitJumpInsn(IFEQ, otherwise);
+        mv.visitLdcInsn("gps");
+        mv.visitJumpInsn(GOTO, end);
+        mv.visitLabel(otherwise);
+        mv.visitLdcInsn("network");
+        mv.visitLabel(end);
+        visitRequestCall(mv);
+    }
+
+    /**
+     * {@code lm.requestLocationUpdates("passive", 0, 0, l)}
+     */
+    private static void visitPassiveRequest(MethodVisitor mv) {
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitLdcInsn("passive");
+        visitRequestCall(mv);
+    }
+
+    /**
+     * {@code lm.requestLocationUpdates(provider0(flags[0]), 0, 0, l)}
+     */
+    private static void visitHelperRequest(MethodVisitor mv) {
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitVarInsn(ALOAD, 0);
+        visitFlag(mv, 0);
+        mv.visitMethodInsn(INVOKEVIRTUAL, CLASS_NAME, "provider0", PROVIDER_DESC, false);
+        visitRequestCall(mv);
+    }
+
+    private static void visitFlag(MethodVisitor mv, int flag) {
+        mv.visitVarInsn(ALOAD, 3);
+        mv.visitLdcInsn(flag);
+        mv.visitInsn(BALOAD);
+    }
+
+    private static void visitRequestCall(MethodVisitor mv) {
+        mv.visitInsn(LCONST_0);
+        mv.visitInsn(FCONST_0);
+        mv.visitVarInsn(ALOAD, 2);
+        mv.visitMethodInsn(INVOKEVIRTUAL, GeneratedClasses.LOCATION_MANAGER, "requestLocationUpdates",
+                GeneratedClasses.REQUEST_LOCATION_UPDATES_DESC, false);
+    }
+
+    /**
+     * The loop counters are stored in the locals following the parameters.
+     */
+    private static void visitNestedLoops(MethodVisitor mv, int n) {
+        Label[] heads = new Label[n];
+        Label[] exits = new Label[n];
+
+        for (int i = 0; i < n; ++ i) {
+            heads[i] = new Label();
+            exits[i] = new Label();
+
+            mv.visitInsn(ICONST_0);
+            mv.visitVarInsn(ISTORE, 4 + i);
+            mv.visitLabel(heads[i]);
+            mv.visitVarInsn(ILOAD, 4 + i);
+            mv.visitVarInsn(ALOAD, 3);
+            mv.visitInsn(ARRAYLENGTH);
+            mv.visitJumpInsn(IF_ICMPGE, exits[i]);
+        }
+
+        visitRequest(mv, 0);
+
+        for (int i = n - 1; i >= 0; -- i) {
+            mv.visitIincInsn(4 + i, 1);
+            mv.visitJumpInsn(GOTO, heads[i]);
+            mv.visitLabel(exits[i]);
+        }
+    }
+
+    /**
+     * Try blocks have to be visited before their labels, the inner ones first as they take precedence.
+     */
+    private static void visitTryCatch(MethodVisitor mv, int n) {
+        Label[] starts = new Label[n];
+        Label[] ends = new Label[n];
+        Label[] handlers = new Label[n];
+        for (int i = 0; i < n; ++ i) {
+            starts[i] = new Label();
+            ends[i] = new Label();
+            handlers[i] = new Label();
+            mv.visitTryCatchBlock(starts[i], ends[i], handlers[i], SECURITY_EXCEPTION);
+        }
+
+        Label outerStart = new Label();
+        Label outerEnd = new Label();
+        Label outerHandler = new Label();
+        Label done = new Label();
+        mv.visitTryCatchBlock(outerStart, outerEnd, outerHandler, SECURITY_EXCEPTION);
+
+        mv.visitLabel(outerStart);
+        for (int i = 0; i < n; ++ i) {
+            Label next = new Label();
+
+            mv.visitLabel(starts[i]);
+            visitRequest(mv, i);
+            mv.visitLabel(ends[i]);
+            mv.visitJumpInsn(GOTO, next);
+            mv.visitLabel(handlers[i]);
+            mv.visitInsn(POP);
+            visitPassiveRequest(mv);
+            mv.visitLabel(next);
+        }
+        mv.visitLabel(outerEnd);
+        mv.visitJumpInsn(GOTO, done);
+
+        mv.visitLabel(outerHandler);
+        mv.visitInsn(POP);
+        visitPassiveRequest(mv);
+        mv.visitLabel(done);
+    }
+
+    private static void visitChainProvider(ClassWriter writer, int i, int n) {
+        MethodVisitor mv = writer.visitMethod(ACC_PRIVATE, "provider" + i, PROVIDER_DESC, null, null);
+        mv.visitCode();
+
+        if (i < n - 1) {
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitVarInsn(ILOAD, 1);
+            mv.visitMethodInsn(INVOKEVIRTUAL, CLASS_NAME, "provider" + (i + 1), PROVIDER_DESC, false);
+            mv.visitInsn(ARETURN);
+        } else {
+            Label otherwise = new Label();
+            mv.visitVarInsn(ILOAD, 1);
+            mv.visitJumpInsn(IFEQ, otherwise);
+            mv.visitLdcInsn("gps");
+            mv.visitInsn(ARETURN);
+            mv.visitLabel(otherwise);
+            mv.visitLdcInsn("network");
+            mv.visitInsn(ARETURN);
+        }
+
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    private static void visitRecursiveProvider(ClassWriter writer, int i, int n) {
+        MethodVisitor mv = writer.visitMethod(ACC_PRIVATE, "provider" + i, PROVIDER_DESC, null, null);
+        mv.visitCode();
+
+        Label otherwise = new Label();
+        mv.visitVarInsn(ILOAD, 1);
+        mv.visitJumpInsn(IFEQ, otherwise);
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitInsn(ICONST_0);
+        mv.visitMethodInsn(INVOKEVIRTUAL, CLASS_NAME, "provider" + ((i + 1) % n), PROVIDER_DESC, false);
+        mv.visitInsn(ARETURN);
+        mv.visitLabel(otherwise);
+        mv.visitLdcInsn(recursiveProvider(i));
+        mv.visitInsn(ARETURN);
+
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+}
@@ -0,0 +1,75 @@
+package io.github.nohum.androidlint.detectors;
+
+import com.android.tools.lint.detector.api.Issue;
+import io.github.nohum.androidlint.report.ReportFormat;
+import io.github.nohum.androidlint.report.ReportWriter;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams findings into a report that stays open for the whole trial, so millions of findings are written to the
+ * same report. The allocation per finding must not grow with the number written before, i.e. the writers keep
+ * nothing of the findings.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ReportWriterBenchmark {
+
+    private static final List<Issue> ISSUES = Arrays.asList(LocationUsageDetector.ISSUE, SocketUsageDetector.ISSUE);
+
+    @Param({"TEXT", "JSON", "SARIF"})
+    public ReportFormat format;
+
+    @Param({"false", "true"})
+    public boolean gzip;
+
+    private ReportWriter writer;
+
+    private Finding finding;
+
+    private int line;
+
+    @Setup
+    public void setUp() throws IOException {
+        OutputStream sink = new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        };
+        if (gzip) {
+            sink = new GZIPOutputStream(sink, 64 * 1024);
+        }
+
+        writer = format.create(new BufferedWriter(new OutputStreamWriter(sink, StandardCharsets.UTF_8)), ISSUES);
+        finding = new Finding(LocationUsageDetector.ISSUE.getId(), "com/example/Location", "Location.java", "run",
+                "()V", 42, "requestLocationUpdates", LocationRules.FINE_LOCATION_PERMISSION,
+                Arrays.asList("gps", "network"), "Call to `requestLocationUpdates` requires "
+                + "`android.permission.ACCESS_FINE_LOCATION`");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        writer.finish();
+        writer.close();
+    }
+
+    @Benchmark
+    public int write() throws IOException {
+        writer.write("sdk.aar!/classes.jar!/com/example/Location.class", finding);
+        return ++ line;
+    }
+}
@@ -0,0 +1,118 @@
+package io.github.nohum.androidlint.detectors;
+
+import java.util.Locale;
+
+/**
+ * Checks that the work of the analyses stays within a bound as the shapes of the {@link PathologicalCorpus} grow:
+ * from one size to the next, the number of nodes visited may grow at most quadratically in the size. The nodes are
+ * counted by an {@link AnalysisBudget} without a node or time limit, plus the instructions walked to build the
+ * control flow graph, hence the check gives the same result on every run, however busy the machine is. Prints the
+ * counts and exits with status 1 if a bound is exceeded.
+ *
+ * Arguments are the sizes to check, ascending (default 16, 64 and 256).
+ */
+public final class ScalingCheck {
+
+    private static final double MAX_EXPONENT = 2.0;
+
+    private enum Analysis {
+        CONTROL_FLOW_GRAPH {
+            @Override
+            int run(PathologicalBenchmark benchmark) throws Exception {
+                return benchmark.controlFlowGraph();
+            }
+        },
+        SOURCE_FRAMES {
+            @Override
+            int run(PathologicalBenchmark benchmark) throws Exception {
+                return benchmark.sourceFrames();
+            }
+        },
+        AST {
+            @Override
+            int run(PathologicalBenchmark benchmark) throws Exception {
+                return benchmark.startInspectionOnExpression();
+            }
+        };
+
+        abstract int run(PathologicalBenchmark benchmark) throws Exception;
+    }
+
+    private ScalingCheck() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int[] sizes = {16, 64, 256};
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; ++ i) {
+                sizes[i] = Integer.parseInt(args[i]);
+            }
+        }
+
+        int failures = 0;
+        for (PathologicalCorpus.Shape shape : PathologicalCorpus.Shape.values()) {
+            for (Analysis analysis : Analysis.values()) {
+                failures += check(shape, analysis, sizes);
+            }
+        }
+
+        System.out.println(failures == 0 ? "all within bounds" : failures + " bound(s) exceeded");
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    private static int check(PathologicalCorpus.Shape shape, Analysis analysis, int[] sizes) throws Exception {
+        int failures = 0;
+        long previous = 0;
+
+        for (int i = 0; i < sizes.length; ++ i) {
+            String problem = null;
+            long nodes;
+            try {
+                nodes = measure(shape, analysis, sizes[i]);
+            } catch (StackOverflowError e) {
+                nodes = Long.MAX_VALUE;
+                problem = "stack overflow";
+            }
+
+            if (problem == null && i > 0) {
+                double bound = Math.pow((double) sizes[i] / sizes[i - 1], MAX_EXPONENT);
+                double growth = (double) Math.max(nodes, 1) / Math.max(previous, 1);
+                if (growth > bound) {
+                    problem = String.format(Locale.ROOT, "grew %.1fx, bound %.1fx", growth, bound);
+                }
+            }
+
+            System.out.println(String.format(Locale.ROOT, "%-16s %-18s n=%-5d %12s nodes %s", shape, analysis,
+                    sizes[i], nodes == Long.MAX_VALUE ? "-" : String.valueOf(nodes),
+                    problem == null ? "" : "FAILED: " + problem));
+
+            if (problem != null) {
+                ++ failures;
+                break;
+            }
+
+            previous = nodes;
+        }
+
+        return failures;
+    }
+
+    /**
+     * @return the number of nodes visited by one analysis, with the depth bounded as configured
+     */
+    private static long measure(PathologicalCorpus.Shape shape, Analysis analysis, int n) throws Exception {
+        PathologicalBenchmark benchmark = new PathologicalBenchmark();
+        benchmark.shape = shape.name();
+        benchmark.n = n;
+        benchmark.budget = new AnalysisBudget(Integer.MAX_VALUE, AnalysisOptions.getMaxDepth(), 0);
+        benchmark.setUp();
+
+        try {
+            analysis.run(benchmark);
+            return benchmark.visitedNodes;
+        } finally {
+            benchmark.tearDown();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package io.github.nohum.androidlint.detectors;
+
+import com.android.tools.lint.detector.api.ClassContext;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dispatches all calls of a generated class to {@link SocketUsageDetectorBytecode#checkCall}, the way lint does
+ * for calls with an applicable name. Most calls go to unrelated owners with watched names.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SocketDetectorBenchmark {
+
+    private static final int CALLS = 256;
+    private static final int OWNERS = 16;
+    private static final int HIERARCHY_DEPTH = 4;
+
+    /** every n-th call goes to Socket.connect, 0 for none */
+    @Param({"0", "16"})
+    public int socketEvery;
+
+    private LintFixture fixture;
+
+    private GeneratedClasses.GeneratedClass generated;
+
+    private ClassContext context;
+
+    private MethodNode method;
+
+    /** calls with a name the detector applies to, as lint dispatches them */
+    private List<MethodInsnNode> calls;
+
+    private SocketUsageDetectorBytecode detector;
+
+    @Setup
+    public void setUp() throws IOException {
+        fixture = new LintFixture(Collections.<String, String>emptyMap());
+        fixture.client.superClasses.putAll(GeneratedClasses.networkSuperClasses(OWNERS, HIERARCHY_DEPTH));
+
+        generated = GeneratedClasses.networkCalls("com/example/Network", CALLS, OWNERS, socketEvery);
+        context = fixture.createClassContext(generated);
+        method = generated.getMethod("run");
+        detector = createDetector();
+
+        Set<String> callNames = new HashSet<>(detector.getApplicableCallNames());
+        calls = new ArrayList<>();
+        for (MethodInsnNode call : generated.getCalls("run")) {
+            if (callNames.contains(call.name)) {
+                calls.add(call);
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        fixture.dispose();
+    }
+
+    /**
+     * One class of a project whose other classes have been checked before, hence the owners are known.
+     */
+    @Benchmark
+    public int checkClass() {
+        return check(detector);
+    }
+
+    /**
+     * The first class of a project, all owners and their superclasses are looked up.
+     */
+    @Benchmark
+    public int checkFirstClass() {
+        return check(createDetector());
+    }
+
+    private SocketUsageDetectorBytecode createDetector() {
+        SocketUsageDetectorBytecode detector = new SocketUsageDetectorBytecode();
+        detector.beforeCheckProject(context);
+        return detector;
+    }
+
+    private int check(SocketUsageDetectorBytecode detector) {
+        int reports = fixture.client.reports;
+
+        detector.beforeCheckFile(context);
+        for (MethodInsnNode call : calls) {
+            detector.checkCall(context, generated.node, method, call);
+        }
+        detector.afterCheckFile(context);
+
+        return fixture.client.reports - reports;
+    }
+}
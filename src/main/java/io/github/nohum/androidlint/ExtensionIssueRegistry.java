@@ -19,10 +19,14 @@ public class ExtensionIssueRegistry extends IssueRegistry {
     @Override
     public List<Issue> getIssues() {
         List<Issue> issues = new ArrayList<Issue>();
+        issues.add(LocationUsageDetector.ISSUE);
+        issues.add(SocketUsageDetector.ISSUE);
+        // backends of the detectors above, disabled by default
         issues.add(LocationUsageDetectorAst.ISSUE);
         issues.add(LocationUsageDetectorBytecode.ISSUE);
         issues.add(SocketUsageDetectorAst.ISSUE);
         issues.add(SocketUsageDetectorBytecode.ISSUE);
+        issues.add(ApiUsageDetectorBytecode.ISSUE);
 
         return Collections.unmodifiableList(issues);
     }
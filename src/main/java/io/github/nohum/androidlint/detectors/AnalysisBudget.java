@@ -0,0 +1,138 @@
+package io.github.nohum.androidlint.detectors;
+
+/**
+ * Bounds the work of the data-flow analysis of one call site: the number of visited nodes, the depth of nested
+ * method and variable lookups and the wall time. The byte-code engines analyze all call sites of a method at once,
+ * with a {@link #reset(int) share} of nodes and time for each of them. Once a bound is hit, the budget stays
+ * exhausted until it is reset; the analyses then stop and their result is unknown, like for any value they can not
+ * follow.
+ * <p>
+ * The detector owning a budget resets it before each analysis, the analyses and the {@link ReturnValueSummaries}
+ * they call consume it.
+ */
+public final class AnalysisBudget {
+
+    private static final Trace TRACE = Trace.forClass(AnalysisBudget.class);
+
+    /** the clock is only read every that many nodes, as it is expensive compared to visiting a node */
+    private static final int CLOCK_INTERVAL = 64;
+
+    private final int maxNodes;
+
+    private final int maxDepth;
+
+    private final long maxNanos;
+
+    private int nodes;
+
+    /** node bound of the current analysis, {@link #maxNodes} for each share */
+    private long nodeLimit;
+
+    private int depth;
+
+    private long deadline;
+
+    private boolean exhausted;
+
+    /**
+     * @param maxMillis 0 for no time limit
+     */
+    public AnalysisBudget(int maxNodes, int maxDepth, long maxMillis) {
+        this.maxNodes = maxNodes;
+        this.maxDepth = maxDepth;
+        this.maxNanos = maxMillis * 1000000L;
+    }
+
+    /**
+     * @return a budget with the bounds configured by {@link AnalysisOptions}
+     */
+    public static AnalysisBudget fromOptions() {
+        return new AnalysisBudget(AnalysisOptions.getMaxNodes(), AnalysisOptions.getMaxDepth(),
+                AnalysisOptions.getMaxMillis());
+    }
+
+    /**
+     * Starts a new analysis of one call site with the full budget.
+     */
+    public void reset() {
+        reset(1);
+    }
+
+    /**
+     * Starts a new analysis of the given number of call sites at once, each with the nodes and time of a full
+     * budget. The depth is bounded as for one call site.
+     */
+    public void reset(int shares) {
+        int calls = Math.max(shares, 1);
+        nodes = 0;
+        nodeLimit = (long) maxNodes * calls;
+        depth = 0;
+        exhausted = false;
+        deadline = maxNanos > 0 ? System.nanoTime() + maxNanos * calls : 0;
+    }
+
+    /**
+     * @return false if the budget is exhausted, the analysis must stop then
+     */
+    public boolean visitNode() {
+        if (exhausted) {
+            return false;
+        }
+
+        ++ nodes;
+        if (nodes > nodeLimit || nodes % CLOCK_INTERVAL == 0 && isPastDeadline()) {
+            exhaust();
+        }
+
+        return !exhausted;
+    }
+
+    /**
+     * Enters a nested lookup, which has to be left with {@link #exit} if (and only if) true is returned.
+     *
+     * @return false if the budget is exhausted, the lookup must not be done then
+     */
+    public boolean enter() {
+        if (exhausted) {
+            return false;
+        }
+
+        if (depth >= maxDepth || isPastDeadline()) {
+            exhaust();
+            return false;
+        }
+
+        ++ depth;
+        return true;
+    }
+
+    public void exit() {
+        -- depth;
+    }
+
+    public boolean isExhausted() {
+        return exhausted;
+    }
+
+    /**
+     * @return number of nodes visited since the last reset, a measure of the work that does not depend on timing
+     */
+    public int getVisitedNodes() {
+        return nodes;
+    }
+
+    /**
+     * Stops the analysis, the trace leading to it is dumped.
+     */
+    private void exhaust() {
+        exhausted = true;
+        if (Trace.ENABLED) {
+            TRACE.event("exhausted after %d nodes at depth %d", nodes, depth);
+            Trace.dump("budget exhausted");
+        }
+    }
+
+    private boolean isPastDeadline() {
+        return deadline != 0 && System.nanoTime() - deadline > 0;
+    }
+}
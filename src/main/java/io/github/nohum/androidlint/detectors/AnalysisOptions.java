@@ -0,0 +1,137 @@
+package io.github.nohum.androidlint.detectors;
+
+import java.util.Locale;
+
+/**
+ * Runtime options of the detectors. As lint offers no way to configure custom rules, these are read
+ * from system properties, e.g. {@code -Dio.github.nohum.androidlint.providerEngine=frames}.
+ */
+public final class AnalysisOptions {
+
+    private static final String PREFIX = "io.github.nohum.androidlint.";
+
+    /** Engine used by the byte-code detectors to resolve location provider arguments */
+    public enum ProviderEngine {
+        /** {@link StringDataFlowGraph}, based on the lint ControlFlowGraph */
+        CONTROL_FLOW_GRAPH,
+        /** {@link SourceFrameAnalysis}, based on the ASM analyzer */
+        SOURCE_FRAMES
+    }
+
+    /** Backend used by the unified detectors for a module */
+    public enum Backend {
+        /** byte-code for modules with class files, the AST for all others */
+        AUTO,
+        AST,
+        BYTECODE
+    }
+
+    private AnalysisOptions() {
+    }
+
+    public static ProviderEngine getProviderEngine() {
+        String value = getString("providerEngine", "cfg");
+        if ("frames".equals(value)) {
+            return ProviderEngine.SOURCE_FRAMES;
+        }
+
+        return ProviderEngine.CONTROL_FLOW_GRAPH;
+    }
+
+    public static Backend getBackend() {
+        String value = getString("backend", "auto");
+        if ("ast".equals(value)) {
+            return Backend.AST;
+        }
+
+        if ("bytecode".equals(value)) {
+            return Backend.BYTECODE;
+        }
+
+        return Backend.AUTO;
+    }
+
+    /**
+     * @return maximum number of method return value summaries kept by the byte-code detectors
+     */
+    public static int getSummaryCacheSize() {
+        return getInt("summaryCacheSize", 4096);
+    }
+
+    /**
+     * @return whether the byte-code detectors replay findings of unchanged classes from the build directory
+     */
+    public static boolean isFindingsCacheEnabled() {
+        return !"false".equals(getString("findingsCache", "true"));
+    }
+
+    /**
+     * @return maximum number of nodes a data-flow analysis of one call site may visit
+     */
+    public static int getMaxNodes() {
+        return getInt("maxNodes", 50000);
+    }
+
+    /**
+     * @return maximum depth of the method and variable lookups nested in a data-flow analysis
+     */
+    public static int getMaxDepth() {
+        return getInt("maxDepth", 64);
+    }
+
+    /**
+     * @return maximum wall time of a data-flow analysis of one call site in milliseconds, 0 for none
+     */
+    public static int getMaxMillis() {
+        return getInt("maxMillis", 1000);
+    }
+
+    /**
+     * @return whether the detectors time themselves and write their counters to the build directory
+     */
+    public static boolean isStatisticsEnabled() {
+        return "true".equals(getString("statistics", "false"));
+    }
+
+    /**
+     * @return file the location and socket detectors stream their findings to, as given (not lower-cased), null
+     *         for none
+     */
+    public static String getReportFile() {
+        String value = System.getProperty(PREFIX + "report");
+        return value == null || value.trim().isEmpty() ? null : value.trim();
+    }
+
+    /**
+     * @return file the {@link Trace} of the detectors and analyses is appended to, as given (not lower-cased), null
+     *         if tracing is off
+     */
+    public static String getTraceFile() {
+        String value = System.getProperty(PREFIX + "trace");
+        return value == null || value.trim().isEmpty() ? null : value.trim();
+    }
+
+    /**
+     * @return number of the most recent {@link Trace} events kept
+     */
+    public static int getTraceBufferSize() {
+        return Math.max(1, getInt("traceBufferSize", 4096));
+    }
+
+    private static int getInt(String name, int defaultValue) {
+        try {
+            return Integer.parseInt(getString(name, String.valueOf(defaultValue)));
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private static String getString(String name, String defaultValue) {
+        String value = System.getProperty(PREFIX + name);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+
+        return value.trim().toLowerCase(Locale.US);
+    }
+}
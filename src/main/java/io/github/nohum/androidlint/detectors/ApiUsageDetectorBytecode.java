@@ -0,0 +1,178 @@
+package io.github.nohum.androidlint.detectors;
+
+import com.android.annotations.NonNull;
+import com.android.tools.lint.client.api.LintDriver;
+import com.android.tools.lint.detector.api.*;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.util.*;
+
+/**
+ * Generic detector that checks calls against the {@link PermissionApiIndex}. If the app does not possess any of
+ * the permissions a called method requires, an issue will be reported.
+ */
+public class ApiUsageDetectorBytecode extends Detector implements Detector.ClassScanner {
+
+    public static final Issue ISSUE = Issue.create(
+            "ApiUsageWithoutPermissionBytecode",
+            "Permission-guarded API is used without proper permission",
+            "Many APIs (camera, contacts, SMS, Bluetooth, network state and more) can only be used if the " +
+            "corresponding permission has been acquired in the manifest. Otherwise the call fails with a " +
+            "`SecurityException` at runtime.",
+            Category.CORRECTNESS,
+            8,
+            Severity.ERROR,
+            new Implementation(ApiUsageDetectorBytecode.class, EnumSet.of(Scope.CLASS_FILE)));
+
+    private final PermissionApiIndex index = PermissionApiIndex.getDefault();
+
+    /** State of each project being checked */
+    private final ProjectStates<ProjectState> states = new ProjectStates<>();
+
+    /**
+     * Permissions and superclass chains of the project being checked, only used by the thread checking it.
+     */
+    private final class ProjectState {
+        private final ManifestPermissions permissions;
+
+        /**
+         * Maps classes (internal names) to their nearest superclass that owns guarded methods, or to themselves if
+         * there is none. Filled on demand like the network base classes of {@link NetworkSinks}.
+         */
+        private final Map<String, String> guardedBaseClasses = new HashMap<>();
+
+        /** Tells whether a class calls any guarded class at all */
+        private final ClassRelevanceFilter relevanceFilter;
+
+        private final DetectorStatistics statistics;
+
+        ProjectState(Context context) {
+            permissions = ManifestPermissions.get(context);
+
+            final LintDriver driver = context.getDriver();
+            relevanceFilter = new ClassRelevanceFilter(index.getMethodNames(),
+                    new ClassRelevanceFilter.OwnerMatcher() {
+                        @Override
+                        public boolean isWatched(String owner, int opcode) {
+                            return index.containsOwner(owner) || opcode == Opcodes.INVOKEVIRTUAL
+                                    && index.containsOwner(getGuardedBaseClass(ProjectState.this, owner, driver));
+                        }
+                    });
+
+            statistics = DetectorStatistics.start(context, ApiUsageDetectorBytecode.this);
+        }
+    }
+
+    @Override
+    public void beforeCheckProject(@NonNull Context context) {
+        states.start(context, new ProjectState(context));
+    }
+
+    @Override
+    public void afterCheckProject(@NonNull Context context) {
+        states.finish(context).statistics.finish(context);
+    }
+
+    @Override
+    public void afterCheckFile(@NonNull Context context) {
+        states.get(context).relevanceFilter.reset();
+    }
+
+    @Override
+    public List<String> getApplicableCallNames() {
+        return new ArrayList<>(index.getMethodNames());
+    }
+
+    @Override
+    public void checkCall(@NonNull ClassContext context, @NonNull ClassNode classNode, @NonNull MethodNode method,
+                          @NonNull MethodInsnNode call) {
+        ProjectState state = states.get(context);
+        state.statistics.increment(DetectorStatistics.Counter.CALLS_DISPATCHED);
+
+        long started = state.statistics.startTimer();
+        try {
+            checkGuardedCall(state, context, classNode, method, call);
+        } finally {
+            state.statistics.stopTimer(started);
+        }
+    }
+
+    private void checkGuardedCall(ProjectState state, ClassContext context, ClassNode classNode, MethodNode method,
+                                  MethodInsnNode call) {
+        if (!state.relevanceFilter.isRelevant(classNode)) {
+            state.statistics.increment(DetectorStatistics.Counter.CALLS_FILTERED);
+            return;
+        }
+
+        String owner = call.owner;
+        if (call.getOpcode() == Opcodes.INVOKEVIRTUAL && !index.containsOwner(owner)) {
+            owner = getGuardedBaseClass(state, owner, context.getDriver());
+        }
+
+        int entry = index.findEntry(owner, call.name, call.desc);
+        if (entry < 0 || state.permissions.isAnyGranted(index.getPermissionIds(entry))) {
+            state.statistics.increment(DetectorStatistics.Counter.CALLS_FILTERED);
+            return;
+        }
+
+        String required = describe(index.getPermissions(entry));
+        context.report(ISSUE, method, call, context.getLocation(call),
+                String.format("Call to `%s` requires %s permission", call.name, required));
+    }
+
+    private String getGuardedBaseClass(ProjectState state, String originalOwner, LintDriver driver) {
+        Map<String, String> guardedBaseClasses = state.guardedBaseClasses;
+        String known = guardedBaseClasses.get(originalOwner);
+        if (known != null) {
+            return known;
+        }
+
+        List<String> chain = new ArrayList<>();
+        String baseClass = null;
+        String current = originalOwner;
+
+        while (current != null) {
+            chain.add(current);
+            String superClass = driver.getSuperClass(current);
+
+            if (superClass != null && index.containsOwner(superClass)) {
+                baseClass = superClass;
+                break;
+            }
+
+            known = superClass == null ? null : guardedBaseClasses.get(superClass);
+            if (known != null) {
+                baseClass = index.containsOwner(known) ? known : null;
+                break;
+            }
+
+            current = superClass;
+        }
+
+        for (String type : chain) {
+            guardedBaseClasses.put(type, baseClass != null ? baseClass : type);
+        }
+
+        return guardedBaseClasses.get(originalOwner);
+    }
+
+    private static String describe(String[] permissions) {
+        if (permissions.length == 1) {
+            return "`" + permissions[0] + "`";
+        }
+
+        StringBuilder builder = new StringBuilder("one of ");
+        for (int i = 0; i < permissions.length; ++ i) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+
+            builder.append('`').append(permissions[i]).append('`');
+        }
+
+        return builder.toString();
+    }
+}
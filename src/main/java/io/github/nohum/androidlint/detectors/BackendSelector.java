@@ -0,0 +1,78 @@
+package io.github.nohum.androidlint.detectors;
+
+import com.android.tools.lint.detector.api.Context;
+import com.android.tools.lint.detector.api.Detector;
+import com.android.tools.lint.detector.api.Implementation;
+import com.android.tools.lint.detector.api.Project;
+import com.android.tools.lint.detector.api.Scope;
+
+import java.io.File;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Chooses the backend of a unified detector for each module, so every call site is checked by one of them only:
+ * byte-code if lint checks class files and the module has any, the AST otherwise. The choice can be forced with
+ * {@link AnalysisOptions#getBackend()}. A selector lives for the check of one project.
+ */
+final class BackendSelector {
+
+    private final AnalysisOptions.Backend forced = AnalysisOptions.getBackend();
+
+    private final Map<Project, Boolean> modules = new HashMap<>();
+
+    /**
+     * @return the implementation of a unified detector, which runs on either of the scopes of its backends
+     */
+    static Implementation createImplementation(Class<? extends Detector> detectorClass, EnumSet<Scope> scope,
+                                               EnumSet<Scope> astScope, EnumSet<Scope> bytecodeScope) {
+        // built here rather than by the varargs of the constructor, which cannot create a generic array unchecked
+        @SuppressWarnings("unchecked")
+        EnumSet<Scope>[] analysisScopes = (EnumSet<Scope>[]) new EnumSet<?>[] {astScope, bytecodeScope};
+        return new Implementation(detectorClass, scope, analysisScopes);
+    }
+
+    /**
+     * @return whether the byte-code backend checks the module of the context
+     */
+    boolean usesBytecode(Context context) {
+        if (forced != AnalysisOptions.Backend.AUTO) {
+            return forced == AnalysisOptions.Backend.BYTECODE;
+        }
+
+        Project project = context.getProject();
+        Boolean bytecode = modules.get(project);
+        if (bytecode == null) {
+            bytecode = context.getScope().contains(Scope.CLASS_FILE) && hasClassFiles(project);
+            modules.put(project, bytecode);
+        }
+
+        return bytecode;
+    }
+
+    private static boolean hasClassFiles(Project project) {
+        for (File folder : project.getJavaClassFolders()) {
+            if (containsClassFile(folder)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean containsClassFile(File folder) {
+        File[] files = folder.listFiles();
+        if (files == null) {
+            return false;
+        }
+
+        for (File file : files) {
+            if (file.isDirectory() ? containsClassFile(file) : file.getName().endsWith(".class")) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
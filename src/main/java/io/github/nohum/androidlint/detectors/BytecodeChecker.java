@@ -0,0 +1,132 @@
+package io.github.nohum.androidlint.detectors;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.analysis.AnalyzerException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.android.tools.lint.detector.api.ClassContext.findLineNumber;
+
+/**
+ * Checks classes like the byte-code backends of the {@link LocationUsageDetector} and the
+ * {@link SocketUsageDetector}, outside of a lint run. There is no manifest, so no permission is granted and every
+ * call that needs one is reported.
+ * <p>
+ * A checker is thread-safe, so one checker may check the classes of a scan from many threads. The rules are
+ * immutable and shared; the caches walking the hierarchy and resolving providers are {@link State per thread}. The
+ * {@link ClassHierarchy} is shared between the threads, hence it must be thread-safe as well.
+ */
+public final class BytecodeChecker {
+
+    /**
+     * Looks up the classes the checked classes call and extend.
+     */
+    public interface ClassHierarchy extends ReturnValueSummaries.ClassProvider {
+        /**
+         * @return internal name of the superclass of the class, null if it is unknown
+         */
+        String getSuperClass(String internalName);
+    }
+
+    /**
+     * Caches of one thread, never shared.
+     */
+    private static final class State {
+        private final NetworkSinks sinks;
+
+        private final ProviderResolver providerResolver;
+
+        State(final ClassHierarchy hierarchy, LocationRules locationRules) {
+            sinks = new NetworkSinks(new NetworkSinks.SuperClassLookup() {
+                @Override
+                public String getSuperClass(String internalName) {
+                    return hierarchy.getSuperClass(internalName);
+                }
+            });
+            providerResolver = new ProviderResolver(locationRules, AnalysisOptions.getProviderEngine(),
+                    new ReturnValueSummaries(hierarchy, AnalysisOptions.getSummaryCacheSize()),
+                    AnalysisBudget.fromOptions(), DetectorStatistics.detached());
+        }
+    }
+
+    private final LocationRules locationRules;
+
+    private final List<String> locationCallNames = LocationRules.getApplicableMethodNames();
+
+    private final List<String> socketCallNames = SocketRules.getApplicableMethodNames();
+
+    private final ThreadLocal<State> states;
+
+    /**
+     * @param targetSdk target api level the location calls are checked for
+     */
+    public BytecodeChecker(final ClassHierarchy hierarchy, int targetSdk) {
+        locationRules = new LocationRules(false, false, targetSdk);
+        states = new ThreadLocal<State>() {
+            @Override
+            protected State initialValue() {
+                return new State(hierarchy, locationRules);
+            }
+        };
+    }
+
+    /**
+     * @return the findings of the class, in the order of its methods and instructions
+     * @throws AnalyzerException if the provider arguments of a method cannot be analyzed
+     */
+    public List<Finding> check(ClassNode classNode) throws AnalyzerException {
+        State state = states.get();
+        List<Finding> findings = new ArrayList<>();
+        try {
+            for (MethodNode method : classNode.methods) {
+                for (AbstractInsnNode instruction = method.instructions.getFirst(); instruction != null;
+                        instruction = instruction.getNext()) {
+                    if (instruction instanceof MethodInsnNode) {
+                        checkCall(state, classNode, method, (MethodInsnNode) instruction, findings);
+                    }
+                }
+            }
+        } finally {
+            state.providerResolver.reset();
+        }
+
+        return findings;
+    }
+
+    private void checkCall(State state, ClassNode classNode, MethodNode method, MethodInsnNode call,
+                           List<Finding> findings) throws AnalyzerException {
+        if (call.getOpcode() == Opcodes.INVOKEVIRTUAL && ProviderResolver.CLASS_LOCATION_MANAGER.equals(call.owner)
+                && locationCallNames.contains(call.name)) {
+            checkLocationCall(state, classNode, method, call, findings);
+        } else if (socketCallNames.contains(call.name) && state.sinks.isSink(call)) {
+            findings.add(new Finding(SocketUsageDetector.ISSUE.getId(), classNode.name, classNode.sourceFile,
+                    method.name, method.desc, findLineNumber(call), call.name, SocketRules.INTERNET_PERMISSION,
+                    Collections.<String>emptyList(), SocketRules.getMessage(call.name)));
+        }
+    }
+
+    private void checkLocationCall(State state, ClassNode classNode, MethodNode method, MethodInsnNode call,
+                                   List<Finding> findings) throws AnalyzerException {
+        List<String> providers = Collections.emptyList();
+        if (locationRules.needsProviders(call.name)) {
+            if (ProviderResolver.getProviderArgument(call) == -1) {
+                return;
+            }
+
+            providers = state.providerResolver.getProvidersOfCall(classNode, method, call);
+        }
+
+        String permission = locationRules.getMissingPermission(call.name, providers);
+        if (permission != null) {
+            findings.add(new Finding(LocationUsageDetector.ISSUE.getId(), classNode.name, classNode.sourceFile,
+                    method.name, method.desc, findLineNumber(call), call.name, permission, providers,
+                    locationRules.getMessage(call.name, permission)));
+        }
+    }
+}
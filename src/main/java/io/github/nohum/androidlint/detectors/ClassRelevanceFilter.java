@@ -0,0 +1,116 @@
+package io.github.nohum.androidlint.detectors;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tells whether a class calls methods of watched owners at all. The instructions of a class are scanned once, on
+ * the first request for it, so {@code checkCall} can return right away for the calls of irrelevant classes.
+ * Owners are only checked for calls with watched names and each owner is checked once per filter.
+ */
+class ClassRelevanceFilter {
+
+    interface OwnerMatcher {
+        /**
+         * @return true if calls of the given opcode to the given owner (internal name) may have to be reported
+         */
+        boolean isWatched(String owner, int opcode);
+    }
+
+    private final OwnerMatcher matcher;
+
+    private final Set<String> callNames;
+
+    /**
+     * Owners checked so far. Per invoke opcode, two bits of the value tell whether the owner has been checked
+     * and whether it is watched.
+     */
+    private final Map<String, Integer> owners = new HashMap<>();
+
+    private ClassNode lastClass;
+
+    private boolean lastClassRelevant;
+
+    private int scannedClasses;
+
+    private int relevantClasses;
+
+    ClassRelevanceFilter(Collection<String> callNames, OwnerMatcher matcher) {
+        this.callNames = new HashSet<>(callNames);
+        this.matcher = matcher;
+    }
+
+    boolean isRelevant(ClassNode classNode) {
+        if (classNode != lastClass) {
+            lastClass = classNode;
+            lastClassRelevant = scan(classNode);
+
+            ++ scannedClasses;
+            if (lastClassRelevant) {
+                ++ relevantClasses;
+            }
+        }
+
+        return lastClassRelevant;
+    }
+
+    /**
+     * Drops the last class, which keeps its byte code alive otherwise.
+     */
+    void reset() {
+        lastClass = null;
+    }
+
+    int getScannedClasses() {
+        return scannedClasses;
+    }
+
+    int getRelevantClasses() {
+        return relevantClasses;
+    }
+
+    private boolean scan(ClassNode classNode) {
+        for (MethodNode method : classNode.methods) {
+            for (AbstractInsnNode instruction = method.instructions.getFirst(); instruction != null;
+                    instruction = instruction.getNext()) {
+                if (!(instruction instanceof MethodInsnNode)) {
+                    continue;
+                }
+
+                MethodInsnNode call = (MethodInsnNode) instruction;
+                if (callNames.contains(call.name) && isWatched(call.owner, call.getOpcode())) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    private boolean isWatched(String owner, int opcode) {
+        int checkedBit = 1 << ((opcode - Opcodes.INVOKEVIRTUAL) * 2);
+        int watchedBit = checkedBit << 1;
+
+        Integer known = owners.get(owner);
+        int bits = known == null ? 0 : known;
+        if ((bits & checkedBit) == 0) {
+            bits |= checkedBit;
+            if (matcher.isWatched(owner, opcode)) {
+                bits |= watchedBit;
+            }
+
+            owners.put(owner, bits);
+        }
+
+        return (bits & watchedBit) != 0;
+    }
+}
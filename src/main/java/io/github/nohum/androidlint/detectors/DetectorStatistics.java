@@ -0,0 +1,206 @@
+package io.github.nohum.androidlint.detectors;
+
+import com.android.tools.lint.detector.api.Context;
+import com.android.tools.lint.detector.api.Detector;
+import com.android.tools.lint.detector.api.Project;
+import io.github.nohum.androidlint.report.JsonOutput;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * Counters and the cumulative wall time of one detector during the check of a project. The statistics of all
+ * detectors of a project are written to {@code lint-statistics.json} in its build directory whenever one of them
+ * finishes, if {@link AnalysisOptions#isStatisticsEnabled()}. Counting is cheap and always done, the timer only
+ * runs if the statistics are enabled.
+ * <p>
+ * A detector creates its statistics in {@code beforeCheckProject} with {@link #start} and calls {@link #finish}
+ * from {@code afterCheckProject}. Backends of a unified detector add to the statistics of it, see {@link #get}.
+ * Timed sections are enclosed by {@link #startTimer} and {@link #stopTimer}.
+ */
+public final class DetectorStatistics {
+
+    private static final String FILE_NAME = "lint-statistics.json";
+
+    public enum Counter {
+        /** calls or nodes lint handed to the detector */
+        CALLS_DISPATCHED("callsDispatched"),
+        /** dispatched calls dismissed before any analysis */
+        CALLS_FILTERED("callsFiltered"),
+        CFGS_BUILT("cfgsBuilt"),
+        /** methods without branches, evaluated by {@link StringDataFlowGraph} without building a CFG */
+        LINEAR_SCANS("linearScans"),
+        CFG_NODES_VISITED("cfgNodesVisited"),
+        /** nodes visited by the detector itself or by {@link StringDataFlowDetector} */
+        AST_NODES_VISITED("astNodesVisited"),
+        /** provider arguments found by the {@link LocalArgumentScan} */
+        PROVIDERS_SCANNED("providersScanned"),
+        /** provider arguments the scan could not find, which needed a data-flow analysis */
+        PROVIDERS_ANALYZED("providersAnalyzed"),
+        /** resolutions done by the parser, i.e. not served by a {@link ResolutionCache} */
+        RESOLVE_CALLS("resolveCalls"),
+        /** analyses stopped by their {@link AnalysisBudget}, their result is unknown */
+        BUDGETS_EXHAUSTED("budgetsExhausted");
+
+        private final String key;
+
+        Counter(String key) {
+            this.key = key;
+        }
+    }
+
+    /** statistics of the detectors of each main project, by detector name */
+    private static final Map<Project, Map<String, DetectorStatistics>> projects = new WeakHashMap<>();
+
+    private final boolean timed;
+
+    private final long[] counts = new long[Counter.values().length];
+
+    private long wallNanos;
+
+    private DetectorStatistics(boolean timed) {
+        this.timed = timed;
+    }
+
+    /**
+     * Creates the statistics of the given detector for the main project of the context, replacing the ones of a
+     * previous run.
+     */
+    public static DetectorStatistics start(Context context, Detector detector) {
+        DetectorStatistics statistics = new DetectorStatistics(AnalysisOptions.isStatisticsEnabled());
+
+        synchronized (projects) {
+            Map<String, DetectorStatistics> detectors = projects.get(context.getMainProject());
+            if (detectors == null) {
+                detectors = new TreeMap<>();
+                projects.put(context.getMainProject(), detectors);
+            }
+
+            detectors.put(detector.getClass().getSimpleName(), statistics);
+        }
+
+        return statistics;
+    }
+
+    /**
+     * @return the statistics of the given detector for the main project of the context, started if there are none
+     */
+    public static DetectorStatistics get(Context context, Detector detector) {
+        synchronized (projects) {
+            Map<String, DetectorStatistics> detectors = projects.get(context.getMainProject());
+            DetectorStatistics statistics = detectors == null ? null
+                    : detectors.get(detector.getClass().getSimpleName());
+            if (statistics != null) {
+                return statistics;
+            }
+        }
+
+        return start(context, detector);
+    }
+
+    /**
+     * @return untimed statistics that are not registered with any project, for checks outside of lint runs
+     */
+    public static DetectorStatistics detached() {
+        return new DetectorStatistics(false);
+    }
+
+    public void increment(Counter counter) {
+        ++ counts[counter.ordinal()];
+    }
+
+    public void add(Counter counter, long count) {
+        counts[counter.ordinal()] += count;
+    }
+
+    public long get(Counter counter) {
+        return counts[counter.ordinal()];
+    }
+
+    /**
+     * @return the start time to be passed to {@link #stopTimer}, 0 if the statistics are disabled
+     */
+    public long startTimer() {
+        return timed ? System.nanoTime() : 0;
+    }
+
+    public void stopTimer(long started) {
+        if (started != 0) {
+            wallNanos += System.nanoTime() - started;
+        }
+    }
+
+    public long getWallNanos() {
+        return wallNanos;
+    }
+
+    /**
+     * Writes the statistics of all detectors of the main project of the context that have been started so far.
+     */
+    public void finish(Context context) {
+        if (!timed) {
+            return;
+        }
+
+        Project main = context.getMainProject();
+        File buildDir = FindingsCache.getBuildDir(main);
+        if (buildDir == null) {
+            return;
+        }
+
+        Map<String, DetectorStatistics> detectors;
+        synchronized (projects) {
+            detectors = new TreeMap<>(projects.get(main));
+        }
+
+        File file = new File(buildDir, FILE_NAME);
+        try {
+            write(file, main.getName(), detectors);
+        } catch (IOException e) {
+            context.log(e, "could not write detector statistics %s", file);
+        }
+    }
+
+    private static void write(File file, String project, Map<String, DetectorStatistics> detectors)
+            throws IOException {
+        File folder = file.getParentFile();
+        if (!folder.isDirectory() && !folder.mkdirs()) {
+            throw new IOException("could not create " + folder);
+        }
+
+        File temp = new File(folder, file.getName() + ".tmp");
+        try (Writer out = new OutputStreamWriter(Files.newOutputStream(temp.toPath()), StandardCharsets.UTF_8)) {
+            out.write("{\n  \"project\": ");
+            JsonOutput.writeString(out, project);
+            out.write(",\n  \"detectors\": {");
+
+            String separator = "\n";
+            for (Map.Entry<String, DetectorStatistics> detector : detectors.entrySet()) {
+                DetectorStatistics statistics = detector.getValue();
+
+                out.write(separator + "    ");
+                JsonOutput.writeString(out, detector.getKey());
+                out.write(": {");
+                for (Counter counter : Counter.values()) {
+                    out.write("\n      ");
+                    JsonOutput.writeString(out, counter.key);
+                    out.write(": " + statistics.get(counter) + ",");
+                }
+                out.write("\n      \"wallTimeMillis\": " + statistics.wallNanos / 1000000 + "\n    }");
+
+                separator = ",\n";
+            }
+
+            out.write("\n  }\n}\n");
+        }
+
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+}
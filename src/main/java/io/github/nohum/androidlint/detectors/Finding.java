@@ -0,0 +1,106 @@
+package io.github.nohum.androidlint.detectors;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Call site reported by the {@link BytecodeChecker}, with what the lint detectors would report for it and the
+ * permission it misses.
+ */
+public final class Finding {
+
+    private final String issueId;
+
+    private final String className;
+
+    private final String sourceFile;
+
+    private final String methodName;
+
+    private final String methodDesc;
+
+    private final int line;
+
+    private final String calledMethod;
+
+    private final String permission;
+
+    private final List<String> providers;
+
+    private final String message;
+
+    Finding(String issueId, String className, String sourceFile, String methodName, String methodDesc, int line,
+            String calledMethod, String permission, List<String> providers, String message) {
+        this.issueId = issueId;
+        this.className = className;
+        this.sourceFile = sourceFile;
+        this.methodName = methodName;
+        this.methodDesc = methodDesc;
+        this.line = line;
+        this.calledMethod = calledMethod;
+        this.permission = permission;
+        this.providers = Collections.unmodifiableList(providers);
+        this.message = message;
+    }
+
+    /**
+     * @return id of the issue of the unified detector reporting the call
+     */
+    public String getIssueId() {
+        return issueId;
+    }
+
+    /**
+     * @return internal name of the class containing the call
+     */
+    public String getClassName() {
+        return className;
+    }
+
+    /**
+     * @return name of the source file of the class, null if the class does not record it
+     */
+    public String getSourceFile() {
+        return sourceFile;
+    }
+
+    public String getMethodName() {
+        return methodName;
+    }
+
+    public String getMethodDesc() {
+        return methodDesc;
+    }
+
+    /**
+     * @return line of the call in the source file, -1 if the class has no line numbers
+     */
+    public int getLine() {
+        return line;
+    }
+
+    /**
+     * @return name of the called method
+     */
+    public String getCalledMethod() {
+        return calledMethod;
+    }
+
+    /**
+     * @return the permission the call misses
+     */
+    public String getPermission() {
+        return permission;
+    }
+
+    /**
+     * @return possible provider arguments of a location call, empty if they are not needed or unknown
+     */
+    public List<String> getProviders() {
+        return providers;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+}
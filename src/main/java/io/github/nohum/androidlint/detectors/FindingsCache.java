@@ -0,0 +1,492 @@
+package io.github.nohum.androidlint.detectors;
+
+import com.android.builder.model.AndroidProject;
+import com.android.tools.lint.detector.api.ClassContext;
+import com.android.tools.lint.detector.api.Context;
+import com.android.tools.lint.detector.api.Issue;
+import com.android.tools.lint.detector.api.Location;
+import com.android.tools.lint.detector.api.Project;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * Findings of a byte-code detector from previous lint runs, stored in the build directory. Classes are identified
+ * by a hash of their byte code, the manifest permissions, the rule version and whatever else the detector's
+ * result depends on. For unchanged classes the findings are reported again instead of being computed.
+ * <p>
+ * The file holds a header ({@code magic, format version, entry count}), the sorted entry keys, the offsets of the
+ * entries and the entries themselves. It is read into memory and searched binary, so only the entries of the
+ * classes checked in a run are decoded. It is not mapped, as a mapped file can not be replaced on Windows until the
+ * mapping is garbage collected. On {@link #close}, the entries used or added in the run are written back.
+ * <p>
+ * A detector calls {@link #beginClass} and {@link #endClass} from {@code beforeCheckFile} and
+ * {@code afterCheckFile}. While {@link #isReplaying} it hands each call to {@link #replay}, otherwise it reports
+ * through {@link #report}, which records the finding. A disabled cache just passes the reports on. Both replayed
+ * and recorded findings are also written to the {@link FindingsReport}.
+ */
+public class FindingsCache {
+
+    private static final Trace TRACE = Trace.forClass(FindingsCache.class);
+
+    private static final String CACHE_FOLDER = "lint-cache";
+
+    private static final int MAGIC = 0x4c464331; // "LFC1"
+    private static final int FORMAT_VERSION = 2;
+    private static final int HEADER_SIZE = 12;
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * A reported issue, located by its method and the index of the instruction within it.
+     */
+    private static class Finding {
+        final String method;
+        final int instruction;
+        final String message;
+        final String permission;
+        final List<String> providers;
+
+        Finding(String method, int instruction, String message, String permission, List<String> providers) {
+            this.method = method;
+            this.instruction = instruction;
+            this.message = message;
+            this.permission = permission;
+            this.providers = providers;
+        }
+    }
+
+    private final File file;
+
+    /** Report the findings are streamed to */
+    private final FindingsReport report;
+
+    /** Hash of everything besides the class that findings depend on */
+    private final long fingerprint;
+
+    /** Contents of the cache file, null if there is none */
+    private ByteBuffer contents;
+
+    /** Number of entries in {@link #contents} */
+    private int storedCount;
+
+    /** Entries used or added in this run, written back on close */
+    private final SortedMap<Long, List<Finding>> liveEntries = new TreeMap<>();
+
+    private long currentKey;
+
+    /** Findings of the current class that are replayed, null if it is analyzed */
+    private Map<String, List<Finding>> replayed;
+
+    /** Findings of the current class that are reported, null if they can not be cached */
+    private List<Finding> recorded;
+
+    private int hits;
+
+    private int misses;
+
+    private FindingsCache(File file, FindingsReport report, long fingerprint) {
+        this.file = file;
+        this.report = report;
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * Opens the cache of the given detector for the main project of the context, or returns a disabled cache
+     * if {@link AnalysisOptions#isFindingsCacheEnabled()} is false or there is no build directory.
+     *
+     * @param ruleVersion has to be changed whenever the detector may report different findings for the same input
+     */
+    public static FindingsCache open(Context context, Issue issue, long ruleVersion) {
+        long fingerprint = ManifestPermissions.get(context).getPermissionFingerprint() * 31 + ruleVersion;
+
+        File buildDir = AnalysisOptions.isFindingsCacheEnabled() ? getBuildDir(context.getMainProject()) : null;
+        if (buildDir == null) {
+            return new FindingsCache(null, FindingsReport.open(context), fingerprint);
+        }
+
+        FindingsCache cache = new FindingsCache(new File(new File(buildDir, CACHE_FOLDER), issue.getId() + ".bin"),
+                FindingsReport.open(context), fingerprint);
+        try {
+            cache.read();
+        } catch (IOException | RuntimeException e) {
+            context.log(e, "could not read findings cache %s", cache.file);
+            cache.contents = null;
+            cache.storedCount = 0;
+        }
+
+        return cache;
+    }
+
+    /**
+     * @return the build directory of the project, null if it has none
+     */
+    static File getBuildDir(Project project) {
+        AndroidProject model = project.getGradleProjectModel();
+        if (model != null) {
+            return model.getBuildFolder();
+        }
+
+        // non-gradle projects put their class files there
+        File bin = new File(project.getDir(), "bin");
+        return bin.isDirectory() ? bin : null;
+    }
+
+    private void read() throws IOException {
+        if (!file.isFile()) {
+            return;
+        }
+
+        try (RandomAccessFile in = new RandomAccessFile(file, "r"); FileChannel channel = in.getChannel()) {
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                return;
+            }
+
+            contents = ByteBuffer.allocate((int) size);
+            while (contents.hasRemaining()) {
+                if (channel.read(contents) < 0) {
+                    throw new IOException("truncated findings cache");
+                }
+            }
+        }
+
+        if (contents.getInt(0) != MAGIC || contents.getInt(4) != FORMAT_VERSION) {
+            contents = null;
+            return;
+        }
+
+        storedCount = contents.getInt(8);
+        if (storedCount < 0 || HEADER_SIZE + storedCount * 12L > contents.capacity()) {
+            throw new IOException("truncated findings cache");
+        }
+    }
+
+    public boolean isEnabled() {
+        return file != null;
+    }
+
+    /**
+     * Looks up the findings of the given class.
+     *
+     * @param dependencies hash of the detector-specific state the findings of this class depend on, e.g. the
+     *                     superclasses of called classes
+     */
+    public void beginClass(ClassContext context, long dependencies) {
+        replayed = null;
+        recorded = null;
+
+        byte[] bytecode = context.getBytecode();
+        if (!isEnabled() || bytecode == null) {
+            return;
+        }
+
+        currentKey = getKey(bytecode, fingerprint * 31 + dependencies);
+        List<Finding> findings = find(currentKey);
+
+        if (findings == null) {
+            ++ misses;
+            recorded = new ArrayList<>();
+            return;
+        }
+
+        ++ hits;
+        liveEntries.put(currentKey, findings);
+        replayed = new HashMap<>();
+        for (Finding finding : findings) {
+            String location = finding.method + '#' + finding.instruction;
+            List<Finding> atLocation = replayed.get(location);
+            if (atLocation == null) {
+                atLocation = new ArrayList<>(1);
+                replayed.put(location, atLocation);
+            }
+
+            atLocation.add(finding);
+        }
+    }
+
+    /**
+     * Stores the findings of the current class, unless {@link #setUncacheable} has been called for it.
+     */
+    public void endClass() {
+        if (recorded != null) {
+            liveEntries.put(currentKey, recorded);
+        }
+
+        replayed = null;
+        recorded = null;
+    }
+
+    /**
+     * @return true if the findings of the current class are known, they have to be reported with {@link #replay}
+     */
+    public boolean isReplaying() {
+        return replayed != null;
+    }
+
+    /**
+     * Marks the findings of the current class as depending on state the key does not cover.
+     */
+    public void setUncacheable() {
+        recorded = null;
+    }
+
+    /**
+     * Reports the known findings of the given call.
+     */
+    public void replay(ClassContext context, Issue issue, MethodNode method, MethodInsnNode call) {
+        if (replayed.isEmpty()) {
+            return;
+        }
+
+        List<Finding> findings = replayed.get(method.name + method.desc + '#' + method.instructions.indexOf(call));
+        if (findings == null) {
+            return;
+        }
+
+        for (Finding finding : findings) {
+            deliver(context, issue, method, call, finding);
+        }
+    }
+
+    /**
+     * Reports and records a finding of the current class.
+     *
+     * @param permission the permission the call misses
+     * @param providers possible provider arguments of the call, empty if not needed or unknown
+     */
+    public void report(ClassContext context, Issue issue, MethodNode method, MethodInsnNode call, String message,
+                       String permission, List<String> providers) {
+        Finding finding = new Finding(method.name + method.desc, method.instructions.indexOf(call), message,
+                permission, providers);
+        if (recorded != null) {
+            recorded.add(finding);
+        }
+
+        deliver(context, issue, method, call, finding);
+    }
+
+    private void deliver(ClassContext context, Issue issue, MethodNode method, MethodInsnNode call,
+                         Finding finding) {
+        Location location = context.getLocation(call);
+        context.report(issue, method, call, location, finding.message);
+
+        report.add(context, issue, method, call, location, finding.permission, finding.providers, finding.message);
+    }
+
+    /**
+     * Writes the entries used or added in this run back to disk.
+     */
+    public void close(Context context) {
+        TRACE.event("findings cache %s: %d hits, %d misses", file, hits, misses);
+        report.close(context);
+
+        contents = null;
+        if (!isEnabled() || misses == 0 && liveEntries.size() == storedCount) {
+            return;
+        }
+
+        try {
+            write();
+        } catch (IOException e) {
+            context.log(e, "could not write findings cache %s", file);
+        }
+    }
+
+    public int getHits() {
+        return hits;
+    }
+
+    public int getMisses() {
+        return misses;
+    }
+
+    private List<Finding> find(long key) {
+        if (contents == null) {
+            return null;
+        }
+
+        int low = 0;
+        int high = storedCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midKey = contents.getLong(HEADER_SIZE + mid * 8);
+
+            if (midKey < key) {
+                low = mid + 1;
+            } else if (midKey > key) {
+                high = mid - 1;
+            } else {
+                return decode(contents.getInt(HEADER_SIZE + storedCount * 8 + mid * 4));
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @return the findings of the entry at the given offset, null if the entry is damaged and has to be analyzed
+     *         again
+     */
+    private List<Finding> decode(int offset) {
+        // the entries are not trusted: every offset and length is checked before it is used
+        if (offset < HEADER_SIZE + storedCount * 12L || offset > contents.capacity()) {
+            return null;
+        }
+
+        ByteBuffer buffer = contents.duplicate();
+        buffer.position(offset);
+
+        try {
+            int count = readCount(buffer);
+            if (count < 0) {
+                return null;
+            }
+
+            List<Finding> findings = new ArrayList<>(count);
+            for (int i = 0; i < count; ++ i) {
+                String method = readString(buffer);
+                int instruction = buffer.getInt();
+                String message = readString(buffer);
+                String permission = readString(buffer);
+
+                int providerCount = readCount(buffer);
+                if (method == null || message == null || permission == null || providerCount < 0) {
+                    return null;
+                }
+
+                List<String> providers = new ArrayList<>(providerCount);
+                for (int j = 0; j < providerCount; ++ j) {
+                    String provider = readString(buffer);
+                    if (provider == null) {
+                        return null;
+                    }
+
+                    providers.add(provider);
+                }
+
+                findings.add(new Finding(method, instruction, message, permission, providers));
+            }
+
+            return findings;
+        } catch (BufferUnderflowException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the next count, -1 if it is negative or more items than there are bytes left, each taking at least
+     *         4 bytes
+     */
+    private static int readCount(ByteBuffer buffer) {
+        int count = buffer.getInt();
+        return count < 0 || count > buffer.remaining() / 4 ? -1 : count;
+    }
+
+    /**
+     * @return the next string, null if its length is negative or exceeds the bytes left
+     */
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            return null;
+        }
+
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void write() throws IOException {
+        File folder = file.getParentFile();
+        if (!folder.isDirectory() && !folder.mkdirs()) {
+            throw new IOException("could not create " + folder);
+        }
+
+        // the entries are encoded first as their offsets precede them
+        List<byte[]> entries = new ArrayList<>(liveEntries.size());
+        for (List<Finding> findings : liveEntries.values()) {
+            entries.add(encode(findings));
+        }
+
+        File temp = new File(folder, file.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(entries.size());
+
+            for (Long key : liveEntries.keySet()) {
+                out.writeLong(key);
+            }
+
+            int offset = HEADER_SIZE + entries.size() * 12;
+            for (byte[] entry : entries) {
+                out.writeInt(offset);
+                offset += entry.length;
+            }
+
+            for (byte[] entry : entries) {
+                out.write(entry);
+            }
+        }
+
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static byte[] encode(List<Finding> findings) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        out.writeInt(findings.size());
+        for (Finding finding : findings) {
+            writeString(out, finding.method);
+            out.writeInt(finding.instruction);
+            writeString(out, finding.message);
+            writeString(out, finding.permission);
+
+            out.writeInt(finding.providers.size());
+            for (String provider : finding.providers) {
+                writeString(out, provider);
+            }
+        }
+
+        return bytes.toByteArray();
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * 64 bit FNV-1a hash of the byte code, combined with the given fingerprint.
+     */
+    static long getKey(byte[] bytecode, long fingerprint) {
+        long hash = FNV_OFFSET_BASIS;
+        for (byte b : bytecode) {
+            hash ^= b & 0xff;
+            hash *= FNV_PRIME;
+        }
+
+        hash ^= fingerprint;
+        hash *= FNV_PRIME;
+        return hash ^ (hash >>> 29);
+    }
+}
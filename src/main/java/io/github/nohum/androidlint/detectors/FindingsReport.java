@@ -0,0 +1,179 @@
+package io.github.nohum.androidlint.detectors;
+
+import com.android.tools.lint.detector.api.*;
+import io.github.nohum.androidlint.report.ReportFormat;
+import io.github.nohum.androidlint.report.ReportWriter;
+import lombok.ast.Node;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Streams the findings of the location and socket detectors of a lint run to the file given by
+ * {@link AnalysisOptions#getReportFile()}, in the format its name implies (see {@link ReportFormat#forFile}).
+ * Relative names are resolved against the build directory of the main project. Each finding is written when it is
+ * reported, including the missing permission and the resolved providers, so nothing is kept in memory. Findings
+ * that are suppressed or ignored by the lint configuration are left out.
+ * <p>
+ * The detectors of a main project share its report: each of them {@link #open opens} it before checking the
+ * project and {@link #close closes} it afterwards, the last one finishes the file.
+ */
+final class FindingsReport {
+
+    private static final List<Issue> ISSUES = Arrays.asList(LocationUsageDetector.ISSUE, SocketUsageDetector.ISSUE,
+            LocationUsageDetectorAst.ISSUE, LocationUsageDetectorBytecode.ISSUE, SocketUsageDetectorAst.ISSUE,
+            SocketUsageDetectorBytecode.ISSUE);
+
+    /** Report of a run without report file */
+    private static final FindingsReport NONE = new FindingsReport(null, null);
+
+    /** open reports of each main project */
+    private static final Map<Project, FindingsReport> projects = new HashMap<>();
+
+    /** null if no report is written */
+    private final ReportWriter writer;
+
+    private final File projectDir;
+
+    private int users;
+
+    private FindingsReport(ReportWriter writer, File projectDir) {
+        this.writer = writer;
+        this.projectDir = projectDir;
+    }
+
+    /**
+     * @return the report of the main project of the context, to be {@link #close closed} after checking it
+     */
+    static FindingsReport open(Context context) {
+        String name = AnalysisOptions.getReportFile();
+        if (name == null) {
+            return NONE;
+        }
+
+        synchronized (projects) {
+            Project main = context.getMainProject();
+            FindingsReport report = projects.get(main);
+            if (report == null) {
+                report = create(context, name);
+                if (report == NONE) {
+                    return NONE;
+                }
+
+                projects.put(main, report);
+            }
+
+            ++ report.users;
+            return report;
+        }
+    }
+
+    private static FindingsReport create(Context context, String name) {
+        Project main = context.getMainProject();
+        File file = new File(name);
+        if (!file.isAbsolute()) {
+            File buildDir = FindingsCache.getBuildDir(main);
+            file = new File(buildDir != null ? buildDir : main.getDir(), name);
+        }
+
+        try {
+            File folder = file.getParentFile();
+            if (folder != null && !folder.isDirectory() && !folder.mkdirs()) {
+                throw new IOException("could not create " + folder);
+            }
+
+            Path path = file.toPath();
+            return new FindingsReport(ReportFormat.forFile(path).create(path, ISSUES), main.getDir());
+        } catch (IOException e) {
+            context.log(e, "could not create report %s", file);
+            return NONE;
+        }
+    }
+
+    /**
+     * Writes a finding reported on a call in sources, unless it is suppressed.
+     *
+     * @param providers possible values of the provider argument, empty if not needed or unknown
+     */
+    void add(JavaContext context, Issue issue, Node call, Location location, String calledMethod, String permission,
+             List<String> providers, String message) {
+        if (writer != null && !context.getDriver().isSuppressed(context, issue, call)) {
+            write(context, issue, location, null, null, null, calledMethod, permission, providers, message);
+        }
+    }
+
+    /**
+     * Writes a finding reported on a call in byte code, unless it is suppressed.
+     *
+     * @param providers possible values of the provider argument, empty if not needed or unknown
+     */
+    void add(ClassContext context, Issue issue, MethodNode method, MethodInsnNode call, Location location,
+             String permission, List<String> providers, String message) {
+        ClassNode classNode = context.getClassNode();
+        if (writer != null && !context.getDriver().isSuppressed(issue, classNode, method, call)) {
+            write(context, issue, location, classNode.name, method.name, method.desc, call.name, permission,
+                    providers, message);
+        }
+    }
+
+    private void write(Context context, Issue issue, Location location, String className, String methodName,
+                       String methodDesc, String calledMethod, String permission, List<String> providers,
+                       String message) {
+        if (context.getConfiguration().isIgnored(context, issue, location, message)) {
+            return;
+        }
+
+        Position start = location.getStart();
+        File file = location.getFile();
+        Finding finding = new Finding(issue.getId(), className, file.getName(), methodName, methodDesc,
+                start == null ? -1 : start.getLine() + 1, calledMethod, permission, providers, message);
+
+        synchronized (this) {
+            try {
+                writer.write(getRelativePath(file), finding);
+            } catch (IOException e) {
+                context.log(e, "could not write report");
+            }
+        }
+    }
+
+    /**
+     * Releases the report, it is finished once all detectors have closed it.
+     */
+    void close(Context context) {
+        if (writer == null) {
+            return;
+        }
+
+        synchronized (projects) {
+            if (-- users > 0) {
+                return;
+            }
+
+            projects.values().remove(this);
+        }
+
+        synchronized (this) {
+            try {
+                writer.finish();
+                writer.close();
+            } catch (IOException e) {
+                context.log(e, "could not write report");
+            }
+        }
+    }
+
+    /**
+     * @return path of the file relative to the project directory if it is within it, the absolute path otherwise
+     */
+    private String getRelativePath(File file) {
+        Path path = file.getAbsoluteFile().toPath();
+        Path root = projectDir.getAbsoluteFile().toPath();
+        return path.startsWith(root) ? root.relativize(path).toString() : path.toString();
+    }
+}
@@ -0,0 +1,131 @@
+package io.github.nohum.androidlint.detectors;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.*;
+
+import java.util.*;
+
+/**
+ * Cheap first tier of the provider resolution: walks back from a call within its basic block, following the
+ * argument slot through the {@link StackEffects} of the instructions, until it finds the instruction that pushed
+ * it. If that is a string constant (or {@code null}), the argument is known without any data-flow analysis.
+ * <p>
+ * The scan gives up at the start of the block, as the value may come from several predecessors there, and after
+ * {@link #MAX_INSTRUCTIONS} instructions. The caller has to fall back to a full analysis then.
+ */
+final class LocalArgumentScan {
+
+    /** instructions looked at for one argument, labels and line numbers excluded */
+    private static final int MAX_INSTRUCTIONS = 32;
+
+    private final MethodNode method;
+
+    /** labels where another block may continue, computed on first use */
+    private Set<LabelNode> blockStarts;
+
+    LocalArgumentScan(MethodNode method) {
+        this.method = method;
+    }
+
+    MethodNode getMethod() {
+        return method;
+    }
+
+    /**
+     * @param argument zero-based index of the argument
+     * @return the possible values of the argument, empty for {@code null}, or null if the scan is inconclusive
+     */
+    List<String> getConstantStrings(MethodInsnNode call, int argument) {
+        Type[] arguments = Type.getArgumentTypes(call.desc);
+
+        // slots above the argument when the call is reached
+        int depth = 0;
+        for (int i = arguments.length - 1; i > argument; -- i) {
+            depth += arguments[i].getSize();
+        }
+
+        int scanned = 0;
+        for (AbstractInsnNode instruction = call.getPrevious(); instruction != null;
+                instruction = instruction.getPrevious()) {
+            int opcode = instruction.getOpcode();
+            if (opcode < 0) {
+                if (instruction instanceof LabelNode && isBlockStart((LabelNode) instruction)) {
+                    return null;
+                }
+
+                continue;
+            }
+
+            // the flow does not continue from there, so the call is only reached by a jump
+            if (StackEffects.isExit(opcode) || opcode == Opcodes.GOTO || opcode == Opcodes.JSR
+                    || opcode == Opcodes.RET || opcode == Opcodes.TABLESWITCH || opcode == Opcodes.LOOKUPSWITCH) {
+                return null;
+            }
+
+            if (++ scanned > MAX_INSTRUCTIONS) {
+                return null;
+            }
+
+            int pushes = StackEffects.getPushes(instruction);
+            if (depth >= pushes) {
+                depth += StackEffects.getPops(instruction) - pushes;
+                continue;
+            }
+
+            // a copy made by DUP* or SWAP, follow the original
+            int[] shuffle = StackEffects.getShuffle(opcode);
+            if (shuffle != null) {
+                depth = shuffle[pushes - 1 - depth];
+                continue;
+            }
+
+            // the value passes a cast unchanged
+            if (opcode == Opcodes.CHECKCAST) {
+                continue;
+            }
+
+            return getConstantStrings(instruction);
+        }
+
+        return null;
+    }
+
+    private List<String> getConstantStrings(AbstractInsnNode source) {
+        if (source.getOpcode() == Opcodes.ACONST_NULL) {
+            return Collections.emptyList();
+        }
+
+        if (source.getOpcode() == Opcodes.LDC && ((LdcInsnNode) source).cst instanceof String) {
+            return Collections.singletonList((String) ((LdcInsnNode) source).cst);
+        }
+
+        return null;
+    }
+
+    private boolean isBlockStart(LabelNode label) {
+        if (blockStarts == null) {
+            blockStarts = new HashSet<>();
+            for (AbstractInsnNode instruction = method.instructions.getFirst(); instruction != null;
+                    instruction = instruction.getNext()) {
+                if (instruction instanceof JumpInsnNode) {
+                    blockStarts.add(((JumpInsnNode) instruction).label);
+                } else if (instruction instanceof TableSwitchInsnNode) {
+                    blockStarts.add(((TableSwitchInsnNode) instruction).dflt);
+                    blockStarts.addAll(((TableSwitchInsnNode) instruction).labels);
+                } else if (instruction instanceof LookupSwitchInsnNode) {
+                    blockStarts.add(((LookupSwitchInsnNode) instruction).dflt);
+                    blockStarts.addAll(((LookupSwitchInsnNode) instruction).labels);
+                }
+            }
+
+            if (method.tryCatchBlocks != null) {
+                for (TryCatchBlockNode block : method.tryCatchBlocks) {
+                    blockStarts.add(block.handler);
+                }
+            }
+        }
+
+        return blockStarts.contains(label);
+    }
+}
@@ -0,0 +1,149 @@
+package io.github.nohum.androidlint.detectors;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Permission rules of the location manager calls, shared by the AST and byte-code location detectors: which calls
+ * are checked, which need their provider argument and which permission a call is missing. A call misses at most
+ * one permission, fine location if it needs both, so every call site is reported once.
+ * <p>
+ * An instance holds the permissions and target api level of a project. It is immutable, hence it may be shared
+ * between threads.
+ */
+final class LocationRules {
+
+    /** Permission name of coarse location permission */
+    static final String COARSE_LOCATION_PERMISSION = "android.permission.ACCESS_COARSE_LOCATION";
+
+    /** Permission name of fine location permission */
+    static final String FINE_LOCATION_PERMISSION = "android.permission.ACCESS_FINE_LOCATION";
+
+    /** Class declaring the checked calls, as binary name */
+    static final String CLASS_LOCATION_MANAGER = "android.location.LocationManager";
+
+    private static final String LOCATION_METHOD_FINE = "gps";
+    private static final String LOCATION_METHOD_COARSE = "network";
+    private static final String LOCATION_METHOD_PASSIVE = "passive";
+
+    private static final String METHOD_ADD_GPS_LISTENER = "addGpsStatusListener";
+    private static final String METHOD_ADD_NMEA_LISTENER = "addNmeaListener";
+    private static final String METHOD_ADD_PROXIMITY_ALERT = "addProximityAlert";
+    private static final String METHOD_GET_LAST_KNOWN_LOCATION = "getLastKnownLocation";
+    private static final String METHOD_IS_PROVIDER_ENABLED = "isProviderEnabled";
+    private static final String METHOD_REMOVE_PROXIMITY_ALERT = "removeProximityAlert";
+    private static final String METHOD_REQUEST_LOCATION_UPDATES = "requestLocationUpdates";
+    private static final String METHOD_REQUEST_SINGLE_UPDATE = "requestSingleUpdate";
+
+    private static final int API_LEVEL_JELLY_BEAN_MR1 = 17;
+    private static final int API_LEVEL_LOLLIPOP = 21;
+
+    private final boolean hasFinePermission;
+
+    private final boolean hasCoarsePermission;
+
+    private final int targetSdk;
+
+    LocationRules(ManifestPermissions permissions) {
+        this(permissions.isGranted(FINE_LOCATION_PERMISSION), permissions.isGranted(COARSE_LOCATION_PERMISSION),
+                permissions.getTargetSdk());
+    }
+
+    LocationRules(boolean hasFinePermission, boolean hasCoarsePermission, int targetSdk) {
+        this.hasFinePermission = hasFinePermission;
+        this.hasCoarsePermission = hasFinePermission // fine location includes coarse
+                || hasCoarsePermission;
+        this.targetSdk = targetSdk;
+    }
+
+    /**
+     * @return the relevant methods of android.location.LocationManager
+     */
+    static List<String> getApplicableMethodNames() {
+        return Arrays.asList(
+                METHOD_ADD_GPS_LISTENER,
+                METHOD_ADD_NMEA_LISTENER,
+                METHOD_ADD_PROXIMITY_ALERT, // requires further api level check
+                METHOD_GET_LAST_KNOWN_LOCATION,
+                METHOD_IS_PROVIDER_ENABLED, // requires further api level check
+                METHOD_REMOVE_PROXIMITY_ALERT, // requires further api level check
+                METHOD_REQUEST_LOCATION_UPDATES,
+                METHOD_REQUEST_SINGLE_UPDATE
+        );
+    }
+
+    /**
+     * @return whether no call can fail, as fine location includes coarse
+     */
+    boolean isFineGranted() {
+        return hasFinePermission;
+    }
+
+    /**
+     * @return whether {@link #getMissingPermission} needs the possible values of the provider argument of calls of the method
+     */
+    boolean needsProviders(String calledMethod) {
+        // the semantics of when isProviderEnabled throws an exception has been changed with lollipop
+        return METHOD_REQUEST_LOCATION_UPDATES.equals(calledMethod) || METHOD_REQUEST_SINGLE_UPDATE.equals(calledMethod)
+                || METHOD_IS_PROVIDER_ENABLED.equals(calledMethod) && targetSdk < API_LEVEL_LOLLIPOP;
+    }
+
+    /**
+     * @param providers possible values of the provider argument, if {@link #needsProviders needed}
+     * @return the permission the call misses, fine location if it misses both, null if it misses none
+     */
+    String getMissingPermission(String calledMethod, Collection<String> providers) {
+        if (hasFinePermission) {
+            return null;
+        }
+
+        // some calls always require fine permission
+        if (METHOD_ADD_GPS_LISTENER.equals(calledMethod) || METHOD_ADD_NMEA_LISTENER.equals(calledMethod)) {
+            return FINE_LOCATION_PERMISSION;
+        }
+
+        // the semantics of what these methods accept and when they throw an exception has been changed at some point
+        if (isProximityMethod(calledMethod)) {
+            if (targetSdk >= API_LEVEL_JELLY_BEAN_MR1) {
+                return FINE_LOCATION_PERMISSION;
+            }
+
+            return hasCoarsePermission ? null : COARSE_LOCATION_PERMISSION;
+        }
+
+        if (!needsProviders(calledMethod)) {
+            return null;
+        }
+
+        String missing = null;
+        for (String provider : providers) {
+            if (LOCATION_METHOD_FINE.equals(provider)) {
+                return FINE_LOCATION_PERMISSION;
+            }
+
+            if (!hasCoarsePermission && (LOCATION_METHOD_COARSE.equals(provider)
+                    || LOCATION_METHOD_PASSIVE.equals(provider))) {
+                missing = COARSE_LOCATION_PERMISSION;
+            }
+        }
+
+        return missing;
+    }
+
+    /**
+     * @return the message to report for a call missing the given permission
+     */
+    String getMessage(String calledMethod, String missingPermission) {
+        if (isProximityMethod(calledMethod) && targetSdk >= API_LEVEL_JELLY_BEAN_MR1) {
+            return String.format("Call to `%s` requires `%s` (starting with api %d)", calledMethod,
+                    missingPermission, API_LEVEL_JELLY_BEAN_MR1);
+        }
+
+        return String.format("Call to `%s` requires `%s`", calledMethod, missingPermission);
+    }
+
+    private static boolean isProximityMethod(String calledMethod) {
+        return METHOD_ADD_PROXIMITY_ALERT.equals(calledMethod) || METHOD_REMOVE_PROXIMITY_ALERT.equals(calledMethod);
+    }
+}
@@ -0,0 +1,88 @@
+package io.github.nohum.androidlint.detectors;
+
+import com.android.annotations.NonNull;
+import com.android.tools.lint.detector.api.*;
+import lombok.ast.AstVisitor;
+import lombok.ast.MethodInvocation;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.util.EnumSet;
+import java.util.List;
+
+/**
+ * Checks the Android Location API usages like {@link LocationUsageDetectorBytecode} for modules with class files
+ * and like {@link LocationUsageDetectorAst} for all others, see {@link BackendSelector}. Hence each call site is
+ * checked once and reported at most once, with the {@link LocationRules} both backends share.
+ */
+public class LocationUsageDetector extends Detector implements Detector.JavaScanner, Detector.ClassScanner {
+
+    public static final Issue ISSUE = Issue.create(
+            "LocationUsageWithoutPermission",
+            "Location data is gathered without declared manifest permission",
+            "When requesting location data, the proper permission (`ACCESS_COARSE_LOCATION` or " +
+            "`ACCESS_FINE_LOCATION`) must be requested in the manifest. Otherwise the " +
+            "Android framework will throw a `SecurityException` when requesting location data." +
+            "\n" +
+            "This detector is not checking for permissions or calls to the mock location methods!",
+            Category.CORRECTNESS,
+            8,
+            Severity.ERROR,
+            BackendSelector.createImplementation(LocationUsageDetector.class,
+                    EnumSet.of(Scope.JAVA_FILE, Scope.CLASS_FILE), Scope.JAVA_FILE_SCOPE, Scope.CLASS_FILE_SCOPE));
+
+    private final LocationUsageDetectorAst ast = new LocationUsageDetectorAst(ISSUE, this);
+
+    private final LocationUsageDetectorBytecode bytecode = new LocationUsageDetectorBytecode(ISSUE, this);
+
+    /** Backends chosen for the modules of each project being checked */
+    private final ProjectStates<BackendSelector> backends = new ProjectStates<>();
+
+    @Override
+    public void beforeCheckProject(@NonNull Context context) {
+        backends.start(context, new BackendSelector());
+        DetectorStatistics.start(context, this);
+        ast.beforeCheckProject(context);
+        bytecode.beforeCheckProject(context);
+    }
+
+    @Override
+    public void afterCheckProject(@NonNull Context context) {
+        ast.afterCheckProject(context);
+        bytecode.afterCheckProject(context);
+        DetectorStatistics.get(context, this).finish(context);
+        backends.finish(context);
+    }
+
+    @Override
+    public void afterCheckFile(@NonNull Context context) {
+        ast.afterCheckFile(context);
+        bytecode.afterCheckFile(context);
+    }
+
+    @Override
+    public List<String> getApplicableMethodNames() {
+        return ast.getApplicableMethodNames();
+    }
+
+    @Override
+    public void visitMethod(@NonNull JavaContext context, AstVisitor visitor, @NonNull MethodInvocation node) {
+        if (!backends.get(context).usesBytecode(context)) {
+            ast.visitMethod(context, visitor, node);
+        }
+    }
+
+    @Override
+    public List<String> getApplicableCallNames() {
+        return bytecode.getApplicableCallNames();
+    }
+
+    @Override
+    public void checkCall(@NonNull ClassContext context, @NonNull ClassNode classNode, @NonNull MethodNode method,
+                          @NonNull MethodInsnNode call) {
+        if (backends.get(context).usesBytecode(context)) {
+            bytecode.checkCall(context, classNode, method, call);
+        }
+    }
+}
@@ -1,23 +1,20 @@
 package io.github.nohum.androidlint.detectors;
 
 import com.android.annotations.NonNull;
-import com.android.sdklib.AndroidVersion;
 import com.android.tools.lint.client.api.JavaParser;
 import com.android.tools.lint.detector.api.*;
 import lombok.ast.*;
-import org.w3c.dom.Attr;
-import org.w3c.dom.Element;
 
 import java.util.*;
 
-import static com.android.SdkConstants.*;
-
 /**
  * Detector that checks for Android Location API usages which are likely to fail without
- * the proper permissions. The Android manifest is scanned for the permissions. Hence, usages
- * of the APIs with correct permissions will not trigger any warnings.
+ * the proper permissions. The permissions are looked up in the {@link ManifestPermissions}
+ * of the project. Hence, usages of the APIs with correct permissions will not trigger any warnings.
+ * <p>
+ * Its issue is disabled by default, the {@link LocationUsageDetector} uses it for modules without class files.
  */
-public class LocationUsageDetectorAst extends Detector implements Detector.XmlScanner, Detector.JavaScanner {
+public class LocationUsageDetectorAst extends Detector implements Detector.JavaScanner {
 
     public static final Issue ISSUE = Issue.create(
             "LocationUsageWithoutPermissionAst",
@@ -30,233 +27,231 @@ public class LocationUsageDetectorAst extends Detector implements Detector.XmlSc
             Category.CORRECTNESS,
             8,
             Severity.ERROR,
-            new Implementation(LocationUsageDetectorAst.class, EnumSet.of(Scope.MANIFEST, Scope.JAVA_FILE)));
+            new Implementation(LocationUsageDetectorAst.class, EnumSet.of(Scope.JAVA_FILE)))
+            .setEnabledByDefault(false);
 
-    private static final boolean DEBUG = false;
+    private static final Trace TRACE = Trace.forClass(LocationUsageDetectorAst.class);
 
     /** Permission name of coarse location permission */
-    public static final String COARSE_LOCATION_PERMISSION = "android.permission.ACCESS_COARSE_LOCATION";
+    public static final String COARSE_LOCATION_PERMISSION = LocationRules.COARSE_LOCATION_PERMISSION;
 
     /** Permission name of fine location permission */
-    public static final String FINE_LOCATION_PERMISSION = "android.permission.ACCESS_FINE_LOCATION";
+    public static final String FINE_LOCATION_PERMISSION = LocationRules.FINE_LOCATION_PERMISSION;
 
-    private static final String CLASS_LOCATION_MANAGER = "android.location.LocationManager";
+    /** Issue reported, {@link #ISSUE} unless used by the {@link LocationUsageDetector} */
+    private final Issue issue;
 
-    private static final String LOCATION_METHOD_FINE = "gps";
-    private static final String LOCATION_METHOD_COARSE = "network";
-    private static final String LOCATION_METHOD_PASSIVE = "passive";
+    /** Detector the statistics are attributed to */
+    private final Detector statisticsOwner;
 
-    private static final String METHOD_ADD_GPS_LISTENER = "addGpsStatusListener";
-    private static final String METHOD_ADD_NMEA_LISTENER = "addNmeaListener";
-    private static final String METHOD_ADD_PROXIMITRY_ALERT = "addProximityAlert";
-    private static final String METHOD_GET_LAST_KNOWN_LOCATION = "getLastKnownLocation";
-    private static final String METHOD_IS_PROVIDER_ENABLED = "isProviderEnabled";
-    private static final String METHOD_REMOVE_PROXIMITRY_ALERT = "removeProximityAlert";
-    private static final String METHOD_REQUEST_LOCATION_UPDATES = "requestLocationUpdates";
-    private static final String METHOD_REQUEST_SINGLE_UPDATE = "requestSingleUpdate";
+    /** State of each project being checked */
+    private final ProjectStates<ProjectState> states = new ProjectStates<>();
 
-    private static final int API_LEVEL_JELLY_BEAN_MR1 = 17;
-    private static final int API_LEVEL_LOLLIPOP = 21;
+    /**
+     * What is known about the project checked currently, including the analyses of its current compilation unit.
+     * Only used by the thread checking the project.
+     */
+    private static final class ProjectState {
+        private final LocationRules rules;
 
-    private int targetApiLevel = -1;
+        /** Bounds the data-flow analysis of each call */
+        private final AnalysisBudget budget;
 
-    private boolean hasCoarsePermission = false;
+        private final DetectorStatistics statistics;
 
-    private boolean hasFinePermission = false;
+        /** Report the findings are streamed to */
+        private final FindingsReport report;
 
-    private void log(String format, Object... args) {
-        if (DEBUG) {
-            System.out.println(String.format(format, args));
-        }
-    }
+        /** resolved nodes of the current compilation unit, shared with {@link #dataFlowDetector} */
+        private ResolutionCache resolutionCache;
 
-    @Override
-    public Collection<String> getApplicableElements() {
-        return Collections.singletonList(TAG_USES_PERMISSION);
-    }
+        /** data-flow analysis of the current compilation unit, kept for all calls in it */
+        private StringDataFlowDetector dataFlowDetector;
 
-    @Override
-    public void visitElement(@NonNull XmlContext context, @NonNull Element element) {
-        Attr name = element.getAttributeNodeNS(ANDROID_URI, ATTR_NAME);
-        if (name == null) {
-            return;
+        ProjectState(Context context, Detector statisticsOwner, Detector detector) {
+            rules = new LocationRules(ManifestPermissions.get(context));
+            budget = AnalysisBudget.fromOptions();
+            statistics = statisticsOwner == detector ? DetectorStatistics.start(context, detector)
+                    : DetectorStatistics.get(context, statisticsOwner);
+            report = FindingsReport.open(context);
         }
+    }
 
-        if (name.getValue().equals(COARSE_LOCATION_PERMISSION)) {
-            hasCoarsePermission = true;
-        }
+    public LocationUsageDetectorAst() {
+        this(ISSUE, null);
+    }
 
-        if (name.getValue().equals(FINE_LOCATION_PERMISSION)) {
-            hasCoarsePermission = true; // fine location includes coarse
-            hasFinePermission = true;
-        }
+    /**
+     * @param statisticsOwner detector sharing its statistics, null for this one
+     */
+    LocationUsageDetectorAst(Issue issue, Detector statisticsOwner) {
+        this.issue = issue;
+        this.statisticsOwner = statisticsOwner == null ? this : statisticsOwner;
     }
 
     @Override
-    public List<String> getApplicableMethodNames() {
-        // relevant methods of android.location.LocationManager
-        return Arrays.asList(
-                METHOD_ADD_GPS_LISTENER,
-                METHOD_ADD_NMEA_LISTENER,
-                METHOD_ADD_PROXIMITRY_ALERT, // requires further api level check
-                METHOD_GET_LAST_KNOWN_LOCATION,
-                METHOD_IS_PROVIDER_ENABLED, // requires further api level check
-                METHOD_REMOVE_PROXIMITRY_ALERT, // requires further api level check
-                METHOD_REQUEST_LOCATION_UPDATES,
-                METHOD_REQUEST_SINGLE_UPDATE
-        );
+    public void beforeCheckProject(@NonNull Context context) {
+        states.start(context, new ProjectState(context, statisticsOwner, this));
     }
 
     @Override
-    public void visitMethod(@NonNull JavaContext context, AstVisitor visitor, @NonNull MethodInvocation node) {
-        // first, filter out calls that are not directed to the Android location manager
+    public void afterCheckProject(@NonNull Context context) {
+        ProjectState state = states.finish(context);
+        state.report.close(context);
+        if (statisticsOwner == this) {
+            state.statistics.finish(context);
+        }
+    }
 
-        JavaParser.ResolvedNode resolvedNode = context.resolve(node);
-        if (!(resolvedNode instanceof JavaParser.ResolvedMethod)) {
-            return;
+    @Override
+    public void afterCheckFile(@NonNull Context context) {
+        ProjectState state = states.get(context);
+        ResolutionCache resolutionCache = state.resolutionCache;
+        if (resolutionCache != null) {
+            TRACE.event("afterCheckFile: %d resolve hits, %d misses", resolutionCache.getHits(),
+                    resolutionCache.getMisses());
         }
 
-        JavaParser.ResolvedMethod resolvedMethod = (JavaParser.ResolvedMethod) resolvedNode;
-        String calledMethod = node.astName().astValue();
+        dropCompilationUnit(state);
+    }
 
-        if (!CLASS_LOCATION_MANAGER.equals(resolvedMethod.getContainingClass().getName())) {
-            log("visitMethod: discarding call to %s.%s", resolvedMethod.getContainingClass().getName(), calledMethod);
-            return;
+    /**
+     * Adds the work of the analyses of the current compilation unit to the statistics and drops them.
+     */
+    private static void dropCompilationUnit(ProjectState state) {
+        if (state.resolutionCache != null) {
+            state.statistics.add(DetectorStatistics.Counter.RESOLVE_CALLS, state.resolutionCache.getMisses());
         }
 
-        // some calls always require fine permission
-        if (!hasFinePermission && METHOD_ADD_GPS_LISTENER.equals(calledMethod) || METHOD_ADD_NMEA_LISTENER.equals(calledMethod)) {
-            reportDefaultIssue(context, node, FINE_LOCATION_PERMISSION);
-        }
-        // the semantics of what these methods accept and when they throw an exception has been changed at some point
-        else if (METHOD_ADD_PROXIMITRY_ALERT.equals(calledMethod) || METHOD_REMOVE_PROXIMITRY_ALERT.equals(calledMethod)) {
-            handleProximityMethods(context, node);
+        if (state.dataFlowDetector != null) {
+            state.statistics.add(DetectorStatistics.Counter.AST_NODES_VISITED,
+                    state.dataFlowDetector.getVisitedNodes());
         }
-        // ... also semantic change of when a exception is thrown
-        else if (METHOD_IS_PROVIDER_ENABLED.equals(calledMethod) && getTargetSdk(context) < API_LEVEL_LOLLIPOP) {
-            handleProviderEnabled(context, node);
-        }
-        // these calls depend on the used location provider
-        else if (METHOD_REQUEST_LOCATION_UPDATES.equals(calledMethod) || METHOD_REQUEST_SINGLE_UPDATE.equals(calledMethod)) {
-            handleRequestMethods(context, node, visitor);
-        }
-    }
 
-    private void reportDefaultIssue(JavaContext context, MethodInvocation method, String requiredPermission) {
-        context.report(ISSUE, method, context.getLocation(method),
-                String.format("Call to `%s` requires `%s`", method.astName().astValue(), requiredPermission));
+        state.resolutionCache = null;
+        state.dataFlowDetector = null;
     }
 
-    private void handleRequestMethods(JavaContext context, MethodInvocation method, AstVisitor visitor) {
-        // to make matters worse, there are many overloaded versions of the methods at hand
-        // we only look at the string versions here.
-        log("handleRequestMethods ------------------------------");
-
-        JavaParser.ResolvedMethod originalMethod = (JavaParser.ResolvedMethod) context.resolve(method);
-        int argumentNumber = 0;
-        boolean providerMode = false;
+    private static ResolutionCache getResolutionCache(ProjectState state, JavaContext context) {
+        if (state.resolutionCache == null || !state.resolutionCache.isFor(context)) {
+            dropCompilationUnit(state);
+            state.resolutionCache = new ResolutionCache(context);
+        }
 
-        for (int i = 0; i < originalMethod.getArgumentCount(); ++ i) {
-            JavaParser.TypeDescriptor type = originalMethod.getArgumentType(i);
-            argumentNumber = i;
+        return state.resolutionCache;
+    }
 
-            if (type.getName().equals(JavaParser.TYPE_STRING)) {
-                providerMode = true;
-                break;
-            }
+    private static StringDataFlowDetector getDataFlowDetector(ProjectState state, JavaContext context) {
+        if (state.dataFlowDetector == null || !state.dataFlowDetector.isFor(context)) {
+            state.dataFlowDetector = new StringDataFlowDetector(context, getResolutionCache(state, context));
+            state.dataFlowDetector.setBudget(state.budget);
         }
 
-        Expression actualArgumentData = null;
-        int currCount = 0;
-        for (Expression argument : method.astArguments()) {
-            if (argumentNumber == currCount) {
-                actualArgumentData = argument;
-                break;
-            }
+        return state.dataFlowDetector;
+    }
 
-            ++ currCount;
+    /**
+     * @return the possible values of the expression, empty if unknown
+     */
+    private List<String> getPossibleValues(ProjectState state, JavaContext context, Expression expression) {
+        StringDataFlowDetector detector = getDataFlowDetector(state, context);
+        state.budget.reset();
+        detector.startInspectionOnExpression(expression);
+
+        if (detector.isExhausted()) {
+            TRACE.event("budget exhausted at %s", expression);
+            state.statistics.increment(DetectorStatistics.Counter.BUDGETS_EXHAUSTED);
         }
 
-        List<String> providers = new ArrayList<>();
-        if (providerMode) {
-            log("handleRequestMethods: in provider-mode, expression = %s", actualArgumentData);
+        return detector.getResults();
+    }
 
-            StringDataFlowDetector providerVisitor = new StringDataFlowDetector(context);
-            providerVisitor.startInspectionOnExpression(actualArgumentData);
-            providers = providerVisitor.getResults();
-        }
+    @Override
+    public List<String> getApplicableMethodNames() {
+        return LocationRules.getApplicableMethodNames();
+    }
 
-        for (String provider : providers) {
-            if (!hasFinePermission && LOCATION_METHOD_FINE.equals(provider)) {
-                reportDefaultIssue(context, method, FINE_LOCATION_PERMISSION);
-            } else if (!hasCoarsePermission && (LOCATION_METHOD_COARSE.equals(provider)
-                    || LOCATION_METHOD_PASSIVE.equals(provider))) {
-                reportDefaultIssue(context, method, COARSE_LOCATION_PERMISSION);
-            }
+    @Override
+    public void visitMethod(@NonNull JavaContext context, AstVisitor visitor, @NonNull MethodInvocation node) {
+        ProjectState state = states.get(context);
+        state.statistics.increment(DetectorStatistics.Counter.CALLS_DISPATCHED);
+
+        long started = state.statistics.startTimer();
+        try {
+            checkLocationCall(state, context, node);
+        } finally {
+            state.statistics.stopTimer(started);
         }
     }
 
-    private void handleProviderEnabled(JavaContext context, MethodInvocation method) {
-        log("handleProviderEnabled ------------------------------");
-        StrictListAccessor<Expression, MethodInvocation> argumentList = method.astArguments();
+    private void checkLocationCall(ProjectState state, JavaContext context, MethodInvocation node) {
+        LocationRules rules = state.rules;
+        DetectorStatistics statistics = state.statistics;
 
-        // method takes exactly one argument
-        if (argumentList == null || argumentList.size() != 1) {
-            log("handleProviderEnabled: method signature did not match");
+        // fine location includes coarse, so none of the calls can fail
+        if (rules.isFineGranted()) {
+            statistics.increment(DetectorStatistics.Counter.CALLS_FILTERED);
             return;
         }
 
-        StringDataFlowDetector visitor = new StringDataFlowDetector(context);
-        visitor.startInspectionOnExpression(argumentList.first());
-        List<String> providers = visitor.getResults();
+        // first, filter out calls that are not directed to the Android location manager
 
-        log("handleProviderEnabled: call %s\n  -> yielded result: %s", method, Arrays.toString(providers.toArray()));
+        JavaParser.ResolvedNode resolvedNode = getResolutionCache(state, context).resolve(node);
+        if (!(resolvedNode instanceof JavaParser.ResolvedMethod)) {
+            statistics.increment(DetectorStatistics.Counter.CALLS_FILTERED);
+            return;
+        }
 
-        /*
-           we may get multiple results back, e.g. for calls like:
+        JavaParser.ResolvedMethod resolvedMethod = (JavaParser.ResolvedMethod) resolvedNode;
+        String calledMethod = node.astName().astValue();
 
-               locationManager.isProviderEnabled(expression ? LocationManager.GPS_PROVIDER : LocationManager.NETWORK_PROVIDER);
+        if (!LocationRules.CLASS_LOCATION_MANAGER.equals(resolvedMethod.getContainingClass().getName())) {
+            TRACE.event("visitMethod: discarding call to %s.%s", resolvedMethod.getContainingClass().getName(),
+                    calledMethod);
+            statistics.increment(DetectorStatistics.Counter.CALLS_FILTERED);
+            return;
+        }
 
-           if one of these proves to be a issue we will stop further reporting. otherwise
-           the same location will contain more than one warning which is possibly irritating
-         */
-        for (String provider : providers) {
-            if (LOCATION_METHOD_FINE.equals(provider) && !hasFinePermission) {
-                reportDefaultIssue(context, method, FINE_LOCATION_PERMISSION);
-                break;
+        List<String> providers = Collections.emptyList();
+        if (rules.needsProviders(calledMethod)) {
+            // to make matters worse, there are many overloaded versions of the methods at hand
+            // we only look at the string versions here.
+            Expression argument = getProviderArgument(resolvedMethod, node);
+            if (argument == null) {
+                TRACE.event("visitMethod: no provider (string type) found in signature");
+                return;
             }
 
-            if (LOCATION_METHOD_COARSE.equals(provider) && !hasCoarsePermission) {
-                reportDefaultIssue(context, method, COARSE_LOCATION_PERMISSION);
-                break;
-            }
+            providers = getPossibleValues(state, context, argument);
+            TRACE.event("visitMethod: call %s\n  -> yielded result: %s", node, providers);
+        }
 
-            if (LOCATION_METHOD_PASSIVE.equals(provider) && !hasCoarsePermission) {
-                reportDefaultIssue(context, method, COARSE_LOCATION_PERMISSION);
-                break;
-            }
+        String permission = rules.getMissingPermission(calledMethod, providers);
+        if (permission != null) {
+            Location location = context.getLocation(node);
+            String message = rules.getMessage(calledMethod, permission);
+            context.report(issue, node, location, message);
+            state.report.add(context, issue, node, location, calledMethod, permission, providers, message);
         }
     }
 
-    private void handleProximityMethods(JavaContext context, MethodInvocation method) {
-        // starting with api level 17, fine location is required
-        if (getTargetSdk(context) >= API_LEVEL_JELLY_BEAN_MR1 && !hasFinePermission) {
-            context.report(ISSUE, method, context.getLocation(method),
-                    String.format("Call to `%s` requires `%s` (starting with api %d)", method.astName().astValue(),
-                            FINE_LOCATION_PERMISSION, API_LEVEL_JELLY_BEAN_MR1));
-        }
+    /**
+     * @return the first string argument of the call, null if there is none
+     */
+    private Expression getProviderArgument(JavaParser.ResolvedMethod resolvedMethod, MethodInvocation call) {
+        int index = 0;
+        for (Expression argument : call.astArguments()) {
+            if (index >= resolvedMethod.getArgumentCount()) {
+                break;
+            }
 
-        if (getTargetSdk(context) < API_LEVEL_JELLY_BEAN_MR1 && !hasFinePermission && !hasCoarsePermission) {
-            reportDefaultIssue(context, method, COARSE_LOCATION_PERMISSION);
-        }
-    }
+            if (resolvedMethod.getArgumentType(index).getName().equals(JavaParser.TYPE_STRING)) {
+                return argument;
+            }
 
-    protected int getTargetSdk(Context context) {
-        if (targetApiLevel == -1) {
-            AndroidVersion targetSdkVersion = context.getMainProject().getTargetSdkVersion();
-            targetApiLevel = targetSdkVersion.getFeatureLevel();
+            ++ index;
         }
 
-        return targetApiLevel;
+        return null;
     }
 }
@@ -1,27 +1,23 @@
 package io.github.nohum.androidlint.detectors;
 
 import com.android.annotations.NonNull;
-import com.android.sdklib.AndroidVersion;
-import com.android.tools.lint.checks.ControlFlowGraph;
-import com.android.tools.lint.client.api.JavaParser;
 import com.android.tools.lint.detector.api.*;
 import org.objectweb.asm.Opcodes;
-import org.objectweb.asm.Type;
-import org.objectweb.asm.tree.*;
-import org.objectweb.asm.tree.analysis.*;
-import org.w3c.dom.Attr;
-import org.w3c.dom.Element;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.analysis.AnalyzerException;
 
 import java.util.*;
 
-import static com.android.SdkConstants.*;
-
 /**
  * Detector that checks for Android Location API usages which are likely to fail without
- * the proper permissions. The Android manifest is scanned for the permissions. Hence, usages
- * of the APIs with correct permissions will not trigger any warnings.
+ * the proper permissions. The permissions are looked up in the {@link ManifestPermissions}
+ * of the project. Hence, usages of the APIs with correct permissions will not trigger any warnings.
+ * <p>
+ * Its issue is disabled by default, the {@link LocationUsageDetector} uses it for modules with class files.
  */
-public class LocationUsageDetectorBytecode extends Detector implements Detector.XmlScanner, Detector.ClassScanner {
+public class LocationUsageDetectorBytecode extends Detector implements Detector.ClassScanner {
 
     public static final Issue ISSUE = Issue.create(
             "LocationUsageWithoutPermissionBytecode",
@@ -34,208 +30,221 @@ public class LocationUsageDetectorBytecode extends Detector implements Detector.
             Category.CORRECTNESS,
             8,
             Severity.ERROR,
-            new Implementation(LocationUsageDetectorBytecode.class, EnumSet.of(Scope.MANIFEST, Scope.CLASS_FILE)));
+            new Implementation(LocationUsageDetectorBytecode.class, EnumSet.of(Scope.CLASS_FILE)))
+            .setEnabledByDefault(false);
 
-    private static final boolean DEBUG = false;
+    private static final Trace TRACE = Trace.forClass(LocationUsageDetectorBytecode.class);
 
     /** Permission name of coarse location permission */
-    public static final String COARSE_LOCATION_PERMISSION = "android.permission.ACCESS_COARSE_LOCATION";
+    public static final String COARSE_LOCATION_PERMISSION = LocationRules.COARSE_LOCATION_PERMISSION;
 
     /** Permission name of fine location permission */
-    public static final String FINE_LOCATION_PERMISSION = "android.permission.ACCESS_FINE_LOCATION";
+    public static final String FINE_LOCATION_PERMISSION = LocationRules.FINE_LOCATION_PERMISSION;
+
+    private static final String CLASS_LOCATION_MANAGER = ProviderResolver.CLASS_LOCATION_MANAGER;
+
+    /** Version of the findings in the {@link FindingsCache}, to be increased whenever they may change */
+    private static final int CACHE_VERSION = 3;
+
+    /** Issue reported, {@link #ISSUE} unless used by the {@link LocationUsageDetector} */
+    private final Issue issue;
+
+    /** Detector the statistics are attributed to */
+    private final Detector statisticsOwner;
+
+    /** State of each project being checked */
+    private final ProjectStates<ProjectState> states = new ProjectStates<>();
+
+    /**
+     * Permissions, caches and analyses of the project being checked. Replaced for every project, hence nothing
+     * learned about one project leaks into the check of another.
+     */
+    private static final class ProjectState {
+        private final LocationRules rules;
+
+        /** Strings returned by app methods, shared by all classes of the project */
+        private final ReturnValueSummaries returnValueSummaries;
 
-    private static final String CLASS_LOCATION_MANAGER = "android/location/LocationManager";
+        /** Resolves the provider arguments of the class checked currently */
+        private final ProviderResolver providerResolver;
 
-    private static final String LOCATION_METHOD_FINE = "gps";
-    private static final String LOCATION_METHOD_COARSE = "network";
-    private static final String LOCATION_METHOD_PASSIVE = "passive";
+        /** Tells whether a class calls the location manager at all */
+        private final ClassRelevanceFilter relevanceFilter;
 
-    private static final String METHOD_ADD_GPS_LISTENER = "addGpsStatusListener";
-    private static final String METHOD_ADD_NMEA_LISTENER = "addNmeaListener";
-    private static final String METHOD_ADD_PROXIMITY_ALERT = "addProximityAlert";
-    private static final String METHOD_GET_LAST_KNOWN_LOCATION = "getLastKnownLocation";
-    private static final String METHOD_IS_PROVIDER_ENABLED = "isProviderEnabled";
-    private static final String METHOD_REMOVE_PROXIMITY_ALERT = "removeProximityAlert";
-    private static final String METHOD_REQUEST_LOCATION_UPDATES = "requestLocationUpdates";
-    private static final String METHOD_REQUEST_SINGLE_UPDATE = "requestSingleUpdate";
+        /** Findings of unchanged classes from previous runs */
+        private final FindingsCache findingsCache;
 
-    private static final int API_LEVEL_JELLY_BEAN_MR1 = 17;
-    private static final int API_LEVEL_LOLLIPOP = 21;
+        private final DetectorStatistics statistics;
 
-    private int targetApiLevel = -1;
+        /** Class currently checked, used to look up the byte code of called app methods */
+        private ClassContext currentContext;
 
-    private boolean hasCoarsePermission = false;
+        /** Class whose findings are looked up in or recorded for the {@link #findingsCache} */
+        private ClassNode cachedClass;
 
-    private boolean hasFinePermission = false;
+        /** Summary lookups before {@link #cachedClass} has been analyzed */
+        private int summaryLookups;
 
-    private void log(String format, Object... args) {
-        if (DEBUG) {
-            System.out.println(String.format(format, args));
+        ProjectState(Context context, Issue issue, Detector statisticsOwner, Detector detector) {
+            rules = new LocationRules(ManifestPermissions.get(context));
+
+            relevanceFilter = new ClassRelevanceFilter(LocationRules.getApplicableMethodNames(),
+                    new ClassRelevanceFilter.OwnerMatcher() {
+                        @Override
+                        public boolean isWatched(String owner, int opcode) {
+                            return opcode == Opcodes.INVOKEVIRTUAL && CLASS_LOCATION_MANAGER.equals(owner);
+                        }
+                    });
+
+            AnalysisOptions.ProviderEngine providerEngine = AnalysisOptions.getProviderEngine();
+            returnValueSummaries = new ReturnValueSummaries(new ReturnValueSummaries.ClassProvider() {
+                @Override
+                public ClassNode findClass(String internalName) {
+                    if (currentContext == null) {
+                        return null;
+                    }
+
+                    return currentContext.getDriver().findClass(currentContext, internalName, 0);
+                }
+            }, AnalysisOptions.getSummaryCacheSize());
+
+            findingsCache = FindingsCache.open(context, issue, CACHE_VERSION * 31 + providerEngine.ordinal());
+            statistics = statisticsOwner == detector ? DetectorStatistics.start(context, detector)
+                    : DetectorStatistics.get(context, statisticsOwner);
+            providerResolver = new ProviderResolver(rules, providerEngine, returnValueSummaries,
+                    AnalysisBudget.fromOptions(), statistics);
         }
     }
 
+    public LocationUsageDetectorBytecode() {
+        this(ISSUE, null);
+    }
+
+    /**
+     * @param statisticsOwner detector sharing its statistics, null for this one
+     */
+    LocationUsageDetectorBytecode(Issue issue, Detector statisticsOwner) {
+        this.issue = issue;
+        this.statisticsOwner = statisticsOwner == null ? this : statisticsOwner;
+    }
+
     @Override
-    public Collection<String> getApplicableElements() {
-        return Collections.singletonList(TAG_USES_PERMISSION);
+    public void beforeCheckProject(@NonNull Context context) {
+        states.start(context, new ProjectState(context, issue, statisticsOwner, this));
     }
 
     @Override
-    public void visitElement(@NonNull XmlContext context, @NonNull Element element) {
-        Attr name = element.getAttributeNodeNS(ANDROID_URI, ATTR_NAME);
-        if (name == null) {
-            return;
+    public void afterCheckProject(@NonNull Context context) {
+        ProjectState state = states.finish(context);
+        TRACE.event("afterCheckProject: %d of %d classes call the location manager",
+                state.relevanceFilter.getRelevantClasses(), state.relevanceFilter.getScannedClasses());
+        state.findingsCache.close(context);
+        if (statisticsOwner == this) {
+            state.statistics.finish(context);
         }
+    }
 
-        if (name.getValue().equals(COARSE_LOCATION_PERMISSION)) {
-            hasCoarsePermission = true;
-        }
+    @Override
+    public void afterCheckFile(@NonNull Context context) {
+        ProjectState state = states.get(context);
+        if (state.cachedClass != null) {
+            // provider arguments returned by other methods may change without this class being changed
+            if (state.returnValueSummaries.getLookups() != state.summaryLookups) {
+                state.findingsCache.setUncacheable();
+            }
 
-        if (name.getValue().equals(FINE_LOCATION_PERMISSION)) {
-            hasCoarsePermission = true; // fine location includes coarse
-            hasFinePermission = true;
+            state.findingsCache.endClass();
+            state.cachedClass = null;
         }
+
+        // do not keep the byte code of the previous class alive
+        state.currentContext = null;
+        state.relevanceFilter.reset();
+        state.providerResolver.reset();
     }
 
     @Override
     public List<String> getApplicableCallNames() {
-        // relevant methods of android.location.LocationManager
-        return Arrays.asList(
-                METHOD_ADD_GPS_LISTENER,
-                METHOD_ADD_NMEA_LISTENER,
-                METHOD_ADD_PROXIMITY_ALERT, // requires further api level check
-                METHOD_GET_LAST_KNOWN_LOCATION,
-                METHOD_IS_PROVIDER_ENABLED, // requires further api level check
-                METHOD_REMOVE_PROXIMITY_ALERT, // requires further api level check
-                METHOD_REQUEST_LOCATION_UPDATES,
-                METHOD_REQUEST_SINGLE_UPDATE
-        );
+        return LocationRules.getApplicableMethodNames();
     }
 
     @Override
     public void checkCall(@NonNull ClassContext context, @NonNull ClassNode classNode, @NonNull MethodNode method,
                           @NonNull MethodInsnNode call) {
-        if (call.getOpcode() != Opcodes.INVOKEVIRTUAL || !call.owner.equals(CLASS_LOCATION_MANAGER)) {
-            return;
-        }
+        ProjectState state = states.get(context);
+        state.statistics.increment(DetectorStatistics.Counter.CALLS_DISPATCHED);
 
-        // used to print class byte code representations
-        // easiest way to get that to work: include in Android app project build.gradle classpath with: classpath 'org.ow2.asm:asm-debug-all:5.0.3'
-        // classNode.accept(new TraceClassVisitor(new PrintWriter(System.out)));
-
-        String calledMethod = call.name;
-
-        // some calls always require fine permission
-        if (!hasFinePermission && METHOD_ADD_GPS_LISTENER.equals(calledMethod) || METHOD_ADD_NMEA_LISTENER.equals(calledMethod)) {
-            reportDefaultIssue(context, method, call, FINE_LOCATION_PERMISSION);
-        }
-        // the semantics of what these methods accept and when they throw an exception has been changed at some point
-        else if (METHOD_ADD_PROXIMITY_ALERT.equals(calledMethod) || METHOD_REMOVE_PROXIMITY_ALERT.equals(calledMethod)) {
-            handleProximityMethods(context, method, call);
-        }
-        // ... also semantic change of when a exception is thrown
-        else if (METHOD_IS_PROVIDER_ENABLED.equals(calledMethod) && getTargetSdk(context) < API_LEVEL_LOLLIPOP) {
-            handleProviderEnabled(context, classNode, method, call);
-        }
-        // these calls depend on the used location provider
-        else if (METHOD_REQUEST_LOCATION_UPDATES.equals(calledMethod) || METHOD_REQUEST_SINGLE_UPDATE.equals(calledMethod)) {
-            handleRequestMethods(context, classNode, method, call);
+        long started = state.statistics.startTimer();
+        try {
+            checkLocationCall(state, context, classNode, method, call);
+        } finally {
+            state.statistics.stopTimer(started);
         }
     }
 
-    private void reportDefaultIssue(ClassContext context, MethodNode method, MethodInsnNode call,
-                                    String requiredPermission) {
-        context.report(ISSUE, method, call, context.getLocation(call), String.format(
-                "Call to `%s` requires `%s`", call.name, requiredPermission));
-    }
-
-    private void handleRequestMethods(ClassContext context, ClassNode clazz, MethodNode method, MethodInsnNode call) {
-        log("handleRequestMethods ----------------------------------------------------------");
-
-        boolean providerMode = false;
-        Type[] callArgumentTypes = Type.getArgumentTypes(call.desc);
-        for (Type argType : callArgumentTypes) {
-            if (argType.getClassName().equals(JavaParser.TYPE_STRING)) {
-                providerMode = true;
-                break;
-            }
-        }
+    private void checkLocationCall(ProjectState state, ClassContext context, ClassNode classNode, MethodNode method,
+                                   MethodInsnNode call) {
+        LocationRules rules = state.rules;
+        FindingsCache findingsCache = state.findingsCache;
 
-        if (!providerMode) {
-            log("no provider (string type) found in signature");
+        // fine location includes coarse, so none of the calls can fail
+        if (rules.isFineGranted() || !state.relevanceFilter.isRelevant(classNode)
+                || call.getOpcode() != Opcodes.INVOKEVIRTUAL || !call.owner.equals(CLASS_LOCATION_MANAGER)) {
+            state.statistics.increment(DetectorStatistics.Counter.CALLS_FILTERED);
             return;
         }
 
-        StringDataFlowGraph graph = new StringDataFlowGraph(call, 0);
-
-        try {
-            ControlFlowGraph.create(graph, clazz, method);
-//            log(graph.toString(graph.getNode(call)));
-        } catch (AnalyzerException e) {
-            context.log(e, "analysis exception");
-            log("exception occurred: %s", e.getMessage());
-            return;
+        if (classNode != state.cachedClass) {
+            state.cachedClass = classNode;
+            state.summaryLookups = state.returnValueSummaries.getLookups();
+            findingsCache.beginClass(context, 0);
         }
 
-        List<String> providers = graph.getPossibleProviders(method);
-        log("providers = %s", Arrays.toString(providers.toArray()));
-
-        for (String provider : providers) {
-            if (!hasFinePermission && LOCATION_METHOD_FINE.equals(provider)) {
-                reportDefaultIssue(context, method, call, FINE_LOCATION_PERMISSION);
-            } else if (!hasCoarsePermission && (LOCATION_METHOD_COARSE.equals(provider)
-                    || LOCATION_METHOD_PASSIVE.equals(provider))) {
-                reportDefaultIssue(context, method, call, COARSE_LOCATION_PERMISSION);
-            }
+        if (findingsCache.isReplaying()) {
+            findingsCache.replay(context, issue, method, call);
+            return;
         }
-    }
-
-    private void handleProviderEnabled(ClassContext context, ClassNode clazz, MethodNode method, MethodInsnNode call) {
-        log("handleProviderEnabled ----------------------------------------------------------");
 
-        // heuristic approach
-        AbstractInsnNode prev = LintUtils.getPrevInstruction(call);
-        if (!(prev instanceof LdcInsnNode)) {
-            return; // if not, there is something wrong here...
-        }
+        state.currentContext = context;
 
-        // the provider should actually be a string
-        if (!(((LdcInsnNode) prev).cst instanceof String)) {
-            return;
-        }
+        // used to print class byte code representations
+        // easiest way to get that to work: include in Android app project build.gradle classpath with: classpath 'org.ow2.asm:asm-debug-all:5.0.3'
+        // classNode.accept(new TraceClassVisitor(new PrintWriter(System.out)));
 
-        String provider = (String) ((LdcInsnNode) prev).cst;
-        if (LOCATION_METHOD_FINE.equals(provider) && !hasFinePermission) {
-            reportDefaultIssue(context, method, call, FINE_LOCATION_PERMISSION);
-        }
+        List<String> providers = Collections.emptyList();
+        if (rules.needsProviders(call.name)) {
+            if (ProviderResolver.getProviderArgument(call) == -1) {
+                TRACE.event("no provider (string type) found in signature");
+                return;
+            }
 
-        if (LOCATION_METHOD_COARSE.equals(provider) && !hasCoarsePermission) {
-            reportDefaultIssue(context, method, call, COARSE_LOCATION_PERMISSION);
+            providers = getProvidersOfCall(state, context, classNode, method, call);
+            TRACE.event("providers = %s", providers);
         }
 
-        if (LOCATION_METHOD_PASSIVE.equals(provider) && !hasCoarsePermission) {
-            reportDefaultIssue(context, method, call, COARSE_LOCATION_PERMISSION);
+        String permission = rules.getMissingPermission(call.name, providers);
+        if (permission != null) {
+            findingsCache.report(context, issue, method, call, rules.getMessage(call.name, permission), permission,
+                    providers);
         }
     }
 
-    private void handleProximityMethods(ClassContext context, MethodNode method, MethodInsnNode call) {
-        // starting with level 17, fine location is required
-        if (getTargetSdk(context) >= API_LEVEL_JELLY_BEAN_MR1 && !hasFinePermission) {
-            context.report(ISSUE, method, call, context.getLocation(call),
-                    String.format("Call to `%s` requires `%s` (starting with api %d)", call.name,
-                            FINE_LOCATION_PERMISSION, API_LEVEL_JELLY_BEAN_MR1));
-        }
+    private List<String> getProvidersOfCall(ProjectState state, ClassContext context, ClassNode clazz,
+                                            MethodNode method, MethodInsnNode call) {
+        try {
+            List<String> providers = state.providerResolver.getProvidersOfCall(clazz, method, call);
+            if (state.providerResolver.isExhausted()) {
+                TRACE.event("budget exhausted in %s", method.name);
 
-        if (getTargetSdk(context) < API_LEVEL_JELLY_BEAN_MR1 && !hasFinePermission && !hasCoarsePermission) {
-            reportDefaultIssue(context, method, call, COARSE_LOCATION_PERMISSION);
-        }
-    }
+                // another run may have more time, hence the findings must not be replayed
+                state.findingsCache.setUncacheable();
+            }
 
-    protected int getTargetSdk(Context context) {
-        if (targetApiLevel == -1) {
-            AndroidVersion targetSdkVersion = context.getMainProject().getTargetSdkVersion();
-            targetApiLevel = targetSdkVersion.getFeatureLevel();
+            return providers;
+        } catch (AnalyzerException e) {
+            context.log(e, "analysis exception");
+            TRACE.event("exception occurred: %s", e.getMessage());
+            return Collections.emptyList();
         }
-
-        return targetApiLevel;
     }
 }
@@ -0,0 +1,168 @@
+package io.github.nohum.androidlint.detectors;
+
+import com.android.tools.lint.client.api.LintClient;
+import com.android.tools.lint.detector.api.Context;
+import com.android.tools.lint.detector.api.Project;
+import com.android.utils.XmlUtils;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import java.io.File;
+import java.util.*;
+
+import static com.android.SdkConstants.ANDROID_URI;
+import static com.android.SdkConstants.ATTR_NAME;
+import static com.android.SdkConstants.TAG_USES_PERMISSION;
+
+/**
+ * Permissions granted to a project and its SDK levels, shared by all detectors. The manifest files are parsed
+ * once per main project, on the first request, and again only if one of them has been modified since. Permissions
+ * are identified by ids from {@link #getId}, hence detectors can resolve the ids of the permissions they check once
+ * and test them against a bit set.
+ */
+public final class ManifestPermissions {
+
+    private static final Map<String, Integer> permissionIds = new HashMap<>();
+
+    private static final Map<Project, ManifestPermissions> projects = new WeakHashMap<>();
+
+    private final BitSet granted = new BitSet();
+
+    private final int minSdk;
+
+    private final int targetSdk;
+
+    /** Manifest files the permissions have been read from */
+    private final List<File> manifests;
+
+    private final long fingerprint;
+
+    private long permissionFingerprint;
+
+    private ManifestPermissions(int minSdk, int targetSdk, List<File> manifests) {
+        this.minSdk = minSdk;
+        this.targetSdk = targetSdk;
+        this.manifests = manifests;
+        this.fingerprint = getFingerprint(manifests);
+    }
+
+    /**
+     * Returns the permission model of the main project of the given context.
+     */
+    public static ManifestPermissions get(Context context) {
+        Project main = context.getMainProject();
+
+        synchronized (projects) {
+            ManifestPermissions permissions = projects.get(main);
+            if (permissions == null || permissions.fingerprint != getFingerprint(permissions.manifests)) {
+                permissions = read(context.getClient(), main);
+                projects.put(main, permissions);
+            }
+
+            return permissions;
+        }
+    }
+
+    /**
+     * Returns the id of the given permission name. Ids are stable for the lifetime of the class loader.
+     */
+    public static int getId(String permission) {
+        synchronized (permissionIds) {
+            Integer id = permissionIds.get(permission);
+            if (id == null) {
+                id = permissionIds.size();
+                permissionIds.put(permission, id);
+            }
+
+            return id;
+        }
+    }
+
+    public boolean isGranted(int permissionId) {
+        return granted.get(permissionId);
+    }
+
+    public boolean isGranted(String permission) {
+        return isGranted(getId(permission));
+    }
+
+    /**
+     * @return true if at least one of the permissions with the given ids is granted
+     */
+    public boolean isAnyGranted(int[] permissionIds) {
+        for (int permissionId : permissionIds) {
+            if (isGranted(permissionId)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return hash of the granted permission names and the SDK levels, stable across lint runs
+     */
+    public long getPermissionFingerprint() {
+        return permissionFingerprint;
+    }
+
+    public int getMinSdk() {
+        return minSdk;
+    }
+
+    public int getTargetSdk() {
+        return targetSdk;
+    }
+
+    private static ManifestPermissions read(LintClient client, Project main) {
+        // the permissions of libraries are only granted to the app if their manifests are merged
+        List<File> manifests = new ArrayList<>(main.getManifestFiles());
+        if (main.isMergingManifests()) {
+            for (Project library : main.getAllLibraries()) {
+                manifests.addAll(library.getManifestFiles());
+            }
+        }
+
+        ManifestPermissions permissions = new ManifestPermissions(main.getMinSdkVersion().getFeatureLevel(),
+                main.getTargetSdkVersion().getFeatureLevel(), manifests);
+
+        Set<String> names = new TreeSet<>();
+        for (File file : manifests) {
+            Document document = XmlUtils.parseDocumentSilently(client.readFile(file), true);
+            if (document != null) {
+                permissions.addPermissions(document, names);
+            }
+        }
+
+        // ids depend on the order permissions are registered in, hence the names are hashed in sorted order
+        long fingerprint = 31L * permissions.minSdk + permissions.targetSdk;
+        for (String name : names) {
+            fingerprint = fingerprint * 31 + name.hashCode();
+        }
+
+        permissions.permissionFingerprint = fingerprint;
+        return permissions;
+    }
+
+    private static long getFingerprint(List<File> manifests) {
+        long fingerprint = 17;
+        for (File file : manifests) {
+            fingerprint = fingerprint * 31 + file.lastModified();
+            fingerprint = fingerprint * 31 + file.length();
+        }
+
+        return fingerprint;
+    }
+
+    private void addPermissions(Document document, Set<String> names) {
+        NodeList elements = document.getElementsByTagName(TAG_USES_PERMISSION);
+        for (int i = 0; i < elements.getLength(); ++ i) {
+            String name = ((Element) elements.item(i)).getAttributeNS(ANDROID_URI, ATTR_NAME);
+            if (!name.isEmpty()) {
+                granted.set(getId(name));
+                names.add(name);
+            }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package io.github.nohum.androidlint.detectors;
+
+import lombok.ast.ForwardingAstVisitor;
+import lombok.ast.MethodDeclaration;
+import lombok.ast.Node;
+import lombok.ast.VariableDefinition;
+
+import java.util.*;
+
+/**
+ * Index of the method declarations of a compilation unit, keyed by name and number of parameters. It is built
+ * with a single traversal, afterwards invocations are matched to their possible declarations without visiting
+ * the tree again.
+ */
+class MethodDeclarationIndex {
+
+    private final Map<String, List<MethodDeclaration>> declarations = new HashMap<>();
+
+    /** varargs methods by name, these accept any number of arguments beyond their fixed parameters */
+    private final Map<String, List<MethodDeclaration>> varargsDeclarations = new HashMap<>();
+
+    MethodDeclarationIndex(Node compilationUnit) {
+        compilationUnit.accept(new ForwardingAstVisitor() {
+            @Override
+            public boolean visitMethodDeclaration(MethodDeclaration node) {
+                add(node);
+                return super.visitMethodDeclaration(node); // continue with e.g. anonymous classes
+            }
+        });
+    }
+
+    private void add(MethodDeclaration declaration) {
+        String name = declaration.astMethodName().astValue();
+        int parameterCount = declaration.astParameters().size();
+
+        put(declarations, key(name, parameterCount), declaration);
+
+        VariableDefinition lastParameter = declaration.astParameters().last();
+        if (lastParameter != null && lastParameter.astVarargs()) {
+            put(varargsDeclarations, name, declaration);
+        }
+    }
+
+    private static void put(Map<String, List<MethodDeclaration>> map, String key, MethodDeclaration declaration) {
+        List<MethodDeclaration> list = map.get(key);
+        if (list == null) {
+            list = new ArrayList<>(1);
+            map.put(key, list);
+        }
+
+        list.add(declaration);
+    }
+
+    private static String key(String name, int parameterCount) {
+        return name + '/' + parameterCount;
+    }
+
+    /**
+     * @return all declarations an invocation of the given name with that many arguments may refer to
+     */
+    List<MethodDeclaration> find(String name, int argumentCount) {
+        List<MethodDeclaration> exact = declarations.get(key(name, argumentCount));
+        List<MethodDeclaration> varargs = varargsDeclarations.get(name);
+        if (varargs == null) {
+            return exact == null ? Collections.<MethodDeclaration>emptyList() : exact;
+        }
+
+        List<MethodDeclaration> result = new ArrayList<>();
+        if (exact != null) {
+            result.addAll(exact);
+        }
+
+        for (MethodDeclaration declaration : varargs) {
+            if (argumentCount >= declaration.astParameters().size() - 1 && !result.contains(declaration)) {
+                result.add(declaration);
+            }
+        }
+
+        return result;
+    }
+}
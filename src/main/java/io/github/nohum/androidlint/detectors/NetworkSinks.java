@@ -0,0 +1,129 @@
+package io.github.nohum.androidlint.detectors;
+
+import com.android.tools.lint.detector.api.ClassContext;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.MethodInsnNode;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Matches the calls of {@link SocketRules} in byte code, including calls on app classes extending a network class,
+ * for the {@link SocketUsageDetectorBytecode} and the {@link BytecodeChecker}. Remembers the superclass chains
+ * walked, hence it is meant to be used by one thread.
+ */
+final class NetworkSinks {
+
+    /**
+     * Looks up the superclasses of classes, see {@link com.android.tools.lint.client.api.LintDriver#getSuperClass}.
+     */
+    interface SuperClassLookup {
+        /**
+         * @return internal name of the superclass of the class, null if it is unknown
+         */
+        String getSuperClass(String internalName);
+    }
+
+    private static final String CLASS_SOCKET = ClassContext.getInternalName(SocketRules.CLASS_SOCKET);
+    private static final String CLASS_SOCKET_FACTORY = ClassContext.getInternalName(SocketRules.CLASS_SOCKET_FACTORY);
+    private static final String CLASS_SSL_SOCKET_FACTORY =
+            ClassContext.getInternalName(SocketRules.CLASS_SSL_SOCKET_FACTORY);
+    private static final String CLASS_HTTP_CLIENT = ClassContext.getInternalName(SocketRules.CLASS_HTTP_CLIENT);
+    private static final String CLASS_DEFAULT_HTTP_CLIENT =
+            ClassContext.getInternalName(SocketRules.CLASS_DEFAULT_HTTP_CLIENT);
+    private static final String CLASS_URL = ClassContext.getInternalName(SocketRules.CLASS_URL);
+
+    private final SuperClassLookup superClasses;
+
+    /**
+     * Maps classes (internal names) to the network base class they extend, or to themselves if they extend
+     * none. Filled on demand, hence every superclass chain is walked at most once.
+     */
+    private final Map<String, String> networkBaseClasses = new HashMap<>();
+
+    NetworkSinks(SuperClassLookup superClasses) {
+        this.superClasses = superClasses;
+    }
+
+    /**
+     * @return whether the call may connect to the internet
+     */
+    boolean isSink(MethodInsnNode call) {
+        // we only accept instance calls (also HttpClient is a interface)
+        if (call.getOpcode() != Opcodes.INVOKEVIRTUAL && call.getOpcode() != Opcodes.INVOKEINTERFACE) {
+            return false;
+        }
+
+        String owner = call.owner;
+        if (call.getOpcode() == Opcodes.INVOKEVIRTUAL) {
+            owner = getApplicableInheritance(owner);
+        }
+
+        boolean hasArguments = Type.getArgumentTypes(call.desc).length > 0;
+        return SocketRules.isSink(ClassContext.getFqcn(owner), call.name, hasArguments);
+    }
+
+    /**
+     * @return whether calls of the given kind on the owner may be sinks, regardless of the called method
+     */
+    boolean isWatchedOwner(String owner, int opcode) {
+        if (opcode != Opcodes.INVOKEVIRTUAL && opcode != Opcodes.INVOKEINTERFACE) {
+            return false;
+        }
+
+        if (isNetworkBaseClass(owner) || CLASS_SSL_SOCKET_FACTORY.equals(owner) || CLASS_HTTP_CLIENT.equals(owner)
+                || CLASS_URL.equals(owner)) {
+            return true;
+        }
+
+        return opcode == Opcodes.INVOKEVIRTUAL && isNetworkBaseClass(getApplicableInheritance(owner));
+    }
+
+    /**
+     * @return the network base class the class extends, the class itself if it extends none
+     */
+    String getApplicableInheritance(String originalOwner) {
+        String known = networkBaseClasses.get(originalOwner);
+        if (known != null) {
+            return known;
+        }
+
+        // classes whose base class is not known yet, the original owner first
+        List<String> chain = new ArrayList<>();
+        String baseClass = null;
+        String current = originalOwner;
+
+        while (current != null) {
+            chain.add(current);
+            String superClass = superClasses.getSuperClass(current);
+
+            if (isNetworkBaseClass(superClass)) { // SSL version extends the socket factory
+                baseClass = superClass;
+                break;
+            }
+
+            known = superClass == null ? null : networkBaseClasses.get(superClass);
+            if (known != null) {
+                baseClass = isNetworkBaseClass(known) ? known : null;
+                break;
+            }
+
+            current = superClass;
+        }
+
+        for (String type : chain) {
+            networkBaseClasses.put(type, baseClass != null ? baseClass : type);
+        }
+
+        // no need to check URL as it is declared final
+        // also no need for HttpClient as not invoked in case of INVOKEVIRTUAL (would use INVOKEINTERFACE instead)
+        return networkBaseClasses.get(originalOwner);
+    }
+
+    private static boolean isNetworkBaseClass(String type) {
+        return CLASS_SOCKET.equals(type) || CLASS_SOCKET_FACTORY.equals(type) || CLASS_DEFAULT_HTTP_CLIENT.equals(type);
+    }
+}
@@ -0,0 +1,211 @@
+package io.github.nohum.androidlint.detectors;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Immutable index that maps permission-guarded methods (owner, name and descriptor) to the permissions they
+ * require. The entries are read from a resource file and compiled into an open-addressing hash table whose
+ * slots hold a packed 64 bit key, hence a lookup touches two arrays and compares strings only on a key hit. The
+ * permissions of each entry are resolved to {@link ManifestPermissions#getId ids} when the index is built.
+ */
+public final class PermissionApiIndex {
+
+    /** Descriptor used by entries that apply to all overloads of a method */
+    public static final String ANY_DESCRIPTOR = "*";
+
+    private static final String DEFAULT_RESOURCE = "api-permissions.txt";
+
+    private final long[] keys;
+    /** Entry index + 1 per slot, 0 marks an empty slot */
+    private final int[] slots;
+    private final int mask;
+
+    private final String[] owners;
+    private final String[] names;
+    private final String[] descriptors;
+    private final String[][] permissions;
+    private final int[][] permissionIds;
+
+    private final Set<String> ownerNames;
+    private final Set<String> methodNames;
+
+    private PermissionApiIndex(List<String[]> entries) {
+        int count = entries.size();
+        owners = new String[count];
+        names = new String[count];
+        descriptors = new String[count];
+        permissions = new String[count][];
+        permissionIds = new int[count][];
+
+        Set<String> ownerSet = new HashSet<>();
+        Set<String> nameSet = new HashSet<>();
+
+        int capacity = Integer.highestOneBit(Math.max(count, 1) * 2 - 1) << 1;
+        keys = new long[capacity];
+        slots = new int[capacity];
+        mask = capacity - 1;
+
+        for (int i = 0; i < count; ++ i) {
+            String[] entry = entries.get(i);
+            owners[i] = entry[0];
+            names[i] = entry[1];
+            descriptors[i] = entry[2];
+            permissions[i] = entry[3].split("\\|");
+            permissionIds[i] = new int[permissions[i].length];
+            for (int j = 0; j < permissions[i].length; ++ j) {
+                permissionIds[i][j] = ManifestPermissions.getId(permissions[i][j]);
+            }
+
+            if (find(owners[i], names[i], descriptors[i]) >= 0) {
+                throw new IllegalArgumentException("Duplicate permission entry for " + owners[i] + "." + names[i]
+                        + descriptors[i]);
+            }
+
+            long key = pack(owners[i], names[i], descriptors[i]);
+            int slot = spread(key) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+
+            keys[slot] = key;
+            slots[slot] = i + 1;
+            ownerSet.add(owners[i]);
+            nameSet.add(names[i]);
+        }
+
+        ownerNames = Collections.unmodifiableSet(ownerSet);
+        methodNames = Collections.unmodifiableSet(nameSet);
+    }
+
+    /**
+     * Returns the index built from the permission map bundled with this extension.
+     */
+    public static PermissionApiIndex getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    /**
+     * Reads an index from the given stream. Each non-empty line that does not start with a {@code #} holds the
+     * owner (internal name), the method name, the descriptor (or {@code *}) and the permissions, separated by
+     * whitespace. Alternative permissions that each suffice are separated by {@code |}.
+     */
+    public static PermissionApiIndex read(InputStream in) throws IOException {
+        List<String[]> entries = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            ++ lineNumber;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+
+            String[] entry = line.split("\\s+");
+            if (entry.length != 4) {
+                throw new IOException("Malformed permission entry in line " + lineNumber + ": " + line);
+            }
+
+            entries.add(entry);
+        }
+
+        return new PermissionApiIndex(entries);
+    }
+
+    /**
+     * Returns the entry of the given method, or -1 if the method is not guarded. Entries for the exact descriptor
+     * take precedence over the ones that apply to all overloads.
+     */
+    public int findEntry(String owner, String name, String desc) {
+        int entry = find(owner, name, desc);
+        return entry < 0 ? find(owner, name, ANY_DESCRIPTOR) : entry;
+    }
+
+    /**
+     * Returns the permissions of which at least one is required by the methods of the given entry. The array must
+     * not be modified.
+     */
+    public String[] getPermissions(int entry) {
+        return permissions[entry];
+    }
+
+    /**
+     * Returns the ids of the permissions of the given entry, to be tested by
+     * {@link ManifestPermissions#isAnyGranted(int[])}. The array must not be modified.
+     */
+    public int[] getPermissionIds(int entry) {
+        return permissionIds[entry];
+    }
+
+    /**
+     * Returns whether any method of the given class (internal name) is guarded.
+     */
+    public boolean containsOwner(String owner) {
+        return ownerNames.contains(owner);
+    }
+
+    /**
+     * Returns the names of all guarded methods, suitable for {@code getApplicableCallNames}.
+     */
+    public Set<String> getMethodNames() {
+        return methodNames;
+    }
+
+    public int size() {
+        return owners.length;
+    }
+
+    private int find(String owner, String name, String desc) {
+        long key = pack(owner, name, desc);
+        int slot = spread(key) & mask;
+
+        while (slots[slot] != 0) {
+            if (keys[slot] == key) {
+                int entry = slots[slot] - 1;
+                if (owners[entry].equals(owner) && names[entry].equals(name) && descriptors[entry].equals(desc)) {
+                    return entry;
+                }
+            }
+
+            slot = (slot + 1) & mask;
+        }
+
+        return -1;
+    }
+
+    /** Packs the owner hash into the upper and the method hash into the lower half of the key. */
+    private static long pack(String owner, String name, String desc) {
+        return ((long) owner.hashCode() << 32) | ((name.hashCode() * 31 + desc.hashCode()) & 0xffffffffL);
+    }
+
+    private static int spread(long key) {
+        key *= 0x9e3779b97f4a7c15L;
+        return (int) (key ^ (key >>> 32));
+    }
+
+    private static class DefaultHolder {
+        static final PermissionApiIndex INSTANCE = load();
+
+        private static PermissionApiIndex load() {
+            try (InputStream in = PermissionApiIndex.class.getResourceAsStream(DEFAULT_RESOURCE)) {
+                if (in == null) {
+                    throw new IllegalStateException("Permission map " + DEFAULT_RESOURCE + " is missing");
+                }
+
+                return read(in);
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not read permission map " + DEFAULT_RESOURCE, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package io.github.nohum.androidlint.detectors;
+
+import com.android.tools.lint.detector.api.Context;
+import com.android.tools.lint.detector.api.Project;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * State of a detector for each main project being checked, created in {@code beforeCheckProject} and dropped in
+ * {@code afterCheckProject}. Detectors keep everything they learn about a project in here instead of in fields,
+ * hence one instance may check several projects at once, e.g. from concurrent lint runs, and nothing learned about
+ * one project leaks into the check of another. Thread-safe; the state itself is only used by the thread checking
+ * its project.
+ * <p>
+ * {@link #get} is called for every call and method the detectors visit, so each thread remembers the state it got
+ * last and only takes the lock when it moves on to another project.
+ *
+ * @param <S> type of the state
+ */
+final class ProjectStates<S> {
+
+    /** State of one check of a project */
+    private static final class Entry<S> {
+        final Project project;
+        final S state;
+
+        /** false once the check is finished, so a thread remembering it looks the project up again */
+        volatile boolean live = true;
+
+        Entry(Project project, S state) {
+            this.project = project;
+            this.state = state;
+        }
+    }
+
+    /** weak, so the projects of aborted lint runs are not kept alive; guarded by this */
+    private final Map<Project, Entry<S>> entries = new WeakHashMap<>();
+
+    /** entry each thread got last, it keeps at most one project alive per thread until the next check */
+    private final ThreadLocal<Entry<S>> last = new ThreadLocal<>();
+
+    /**
+     * Sets the state of the main project of the context, replacing the one of a previous check.
+     */
+    synchronized void start(Context context, S state) {
+        Entry<S> entry = new Entry<>(context.getMainProject(), state);
+        Entry<S> previous = entries.put(entry.project, entry);
+        if (previous != null) {
+            previous.live = false;
+        }
+
+        last.set(entry);
+    }
+
+    /**
+     * @return the state of the main project of the context
+     * @throws IllegalStateException if the project is not being checked
+     */
+    S get(Context context) {
+        Project project = context.getMainProject();
+        Entry<S> entry = last.get();
+        if (entry == null || !entry.live || entry.project != project && !entry.project.equals(project)) {
+            entry = lookUp(project);
+            last.set(entry);
+        }
+
+        return entry.state;
+    }
+
+    private synchronized Entry<S> lookUp(Project project) {
+        Entry<S> entry = entries.get(project);
+        if (entry == null) {
+            throw new IllegalStateException("project " + project.getName() + " is not checked");
+        }
+
+        return entry;
+    }
+
+    /**
+     * Drops the state of the main project of the context.
+     *
+     * @return the dropped state
+     */
+    synchronized S finish(Context context) {
+        Entry<S> entry = lookUp(context.getMainProject());
+        entries.remove(entry.project);
+        entry.live = false;
+        last.remove();
+        return entry.state;
+    }
+}
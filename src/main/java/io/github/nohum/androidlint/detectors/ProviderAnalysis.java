@@ -0,0 +1,16 @@
+package io.github.nohum.androidlint.detectors;
+
+import org.objectweb.asm.tree.MethodInsnNode;
+
+import java.util.List;
+
+/**
+ * Result of a provider resolution for all interesting calls of one method.
+ */
+public interface ProviderAnalysis {
+
+    /**
+     * @return the possible string values of the recorded argument of the given call
+     */
+    List<String> getPossibleProviders(MethodInsnNode call);
+}
@@ -0,0 +1,185 @@
+package io.github.nohum.androidlint.detectors;
+
+import com.android.tools.lint.checks.ControlFlowGraph;
+import com.android.tools.lint.client.api.JavaParser;
+import com.android.tools.lint.detector.api.ClassContext;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.analysis.AnalyzerException;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resolves the provider arguments of location manager calls in byte code, for the
+ * {@link LocationUsageDetectorBytecode} and the {@link BytecodeChecker}. Keeps the analysis of the method resolved
+ * last, hence it is meant to be used by one thread, class by class.
+ */
+final class ProviderResolver {
+
+    static final String CLASS_LOCATION_MANAGER = ClassContext.getInternalName(LocationRules.CLASS_LOCATION_MANAGER);
+
+    private final LocationRules rules;
+
+    private final AnalysisOptions.ProviderEngine providerEngine;
+
+    private final ReturnValueSummaries returnValueSummaries;
+
+    private final AnalysisBudget budget;
+
+    private final DetectorStatistics statistics;
+
+    /** Scans for constant provider arguments in the method resolved last */
+    private LocalArgumentScan argumentScan;
+
+    /** Method whose provider arguments have been analyzed last, see {@link #analyzeProvidersOfCall} */
+    private MethodNode analyzedMethod;
+
+    /** Resolved provider arguments of all request calls of {@link #analyzedMethod}, null if the analysis failed */
+    private ProviderAnalysis analyzedProviders;
+
+    /** Whether the budget ran out while resolving the last call */
+    private boolean exhausted;
+
+    ProviderResolver(LocationRules rules, AnalysisOptions.ProviderEngine providerEngine,
+                     ReturnValueSummaries returnValueSummaries, AnalysisBudget budget,
+                     DetectorStatistics statistics) {
+        this.rules = rules;
+        this.providerEngine = providerEngine;
+        this.returnValueSummaries = returnValueSummaries;
+        this.budget = budget;
+        this.statistics = statistics;
+        returnValueSummaries.setBudget(budget);
+    }
+
+    /**
+     * @return index of the provider (string) argument of the call, -1 if there is none
+     */
+    static int getProviderArgument(MethodInsnNode call) {
+        Type[] callArgumentTypes = Type.getArgumentTypes(call.desc);
+        for (int i = 0; i < callArgumentTypes.length; ++ i) {
+            if (callArgumentTypes[i].getClassName().equals(JavaParser.TYPE_STRING)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Resolves the provider argument in two tiers: a {@link LocalArgumentScan} finds constants passed within the
+     * basic block of the call, only if it is inconclusive the data-flow analysis of the method is needed.
+     *
+     * @param call location manager call with a {@link #getProviderArgument provider argument}
+     * @return possible providers of the call, empty if unknown
+     * @throws AnalyzerException if the analysis of the method fails, thrown once per method
+     */
+    List<String> getProvidersOfCall(ClassNode clazz, MethodNode method, MethodInsnNode call)
+            throws AnalyzerException {
+        exhausted = false;
+        if (argumentScan == null || argumentScan.getMethod() != method) {
+            argumentScan = new LocalArgumentScan(method);
+        }
+
+        List<String> providers = argumentScan.getConstantStrings(call, getProviderArgument(call));
+        if (providers != null) {
+            statistics.increment(DetectorStatistics.Counter.PROVIDERS_SCANNED);
+            return providers;
+        }
+
+        statistics.increment(DetectorStatistics.Counter.PROVIDERS_ANALYZED);
+        return analyzeProvidersOfCall(clazz, method, call);
+    }
+
+    /**
+     * @return whether the budget ran out while resolving the last call, its providers are unknown then
+     */
+    boolean isExhausted() {
+        return exhausted;
+    }
+
+    /**
+     * Forgets the methods resolved so far, so their byte code is not kept alive.
+     */
+    void reset() {
+        argumentScan = null;
+        analyzedMethod = null;
+        analyzedProviders = null;
+        exhausted = false;
+    }
+
+    /**
+     * The data-flow analysis runs once per method for all provider calls in it at the same time, with a share of
+     * the budget for each of them, as if they were analyzed one by one. Further calls of the same method are served
+     * from that result. If the budget runs out, the providers are unknown.
+     */
+    private List<String> analyzeProvidersOfCall(ClassNode clazz, MethodNode method, MethodInsnNode call)
+            throws AnalyzerException {
+        if (method != analyzedMethod) {
+            analyzedMethod = method;
+            analyzedProviders = null;
+            analyzedProviders = analyzeProviderCalls(clazz, method);
+        }
+
+        if (analyzedProviders == null) {
+            return Collections.emptyList();
+        }
+
+        List<String> providers = analyzedProviders.getPossibleProviders(call);
+        if (budget.isExhausted()) {
+            statistics.increment(DetectorStatistics.Counter.BUDGETS_EXHAUSTED);
+            exhausted = true;
+            return Collections.emptyList();
+        }
+
+        return providers;
+    }
+
+    private ProviderAnalysis analyzeProviderCalls(ClassNode clazz, MethodNode method) throws AnalyzerException {
+        Map<MethodInsnNode, Integer> requestCalls = new IdentityHashMap<>();
+        for (AbstractInsnNode instruction = method.instructions.getFirst(); instruction != null;
+                instruction = instruction.getNext()) {
+            if (!(instruction instanceof MethodInsnNode) || !isProviderCall((MethodInsnNode) instruction)) {
+                continue;
+            }
+
+            int providerArgument = getProviderArgument((MethodInsnNode) instruction);
+            if (providerArgument != -1) {
+                requestCalls.put((MethodInsnNode) instruction, providerArgument);
+            }
+        }
+
+        budget.reset(requestCalls.size());
+
+        if (providerEngine == AnalysisOptions.ProviderEngine.SOURCE_FRAMES) {
+            return new SourceFrameAnalysis(clazz.name, method, requestCalls, returnValueSummaries, budget);
+        }
+
+        StringDataFlowGraph graph = new StringDataFlowGraph(requestCalls);
+        graph.setReturnValueSummaries(returnValueSummaries);
+        graph.setBudget(budget);
+        if (StringDataFlowGraph.isStraightLine(method)) {
+            statistics.increment(DetectorStatistics.Counter.LINEAR_SCANS);
+        } else {
+            ControlFlowGraph.create(graph, clazz, method);
+            statistics.increment(DetectorStatistics.Counter.CFGS_BUILT);
+        }
+        graph.analyze(method);
+        statistics.add(DetectorStatistics.Counter.CFG_NODES_VISITED, graph.getVisitedNodes());
+        return graph;
+    }
+
+    /**
+     * @return whether the provider argument of the call is checked
+     */
+    private boolean isProviderCall(MethodInsnNode call) {
+        return call.getOpcode() == Opcodes.INVOKEVIRTUAL && CLASS_LOCATION_MANAGER.equals(call.owner)
+                && rules.needsProviders(call.name);
+    }
+}
@@ -0,0 +1,57 @@
+package io.github.nohum.androidlint.detectors;
+
+import com.android.tools.lint.client.api.JavaParser;
+import com.android.tools.lint.detector.api.JavaContext;
+import lombok.ast.Node;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Caches the results of {@link JavaContext#resolve(Node)} for the nodes of one compilation unit, as resolving
+ * is among the most expensive operations of lint. Nodes are compared by identity and failed resolutions are
+ * remembered as well. An instance must be dropped together with its compilation unit.
+ */
+public class ResolutionCache {
+
+    private JavaContext context;
+
+    private Map<Node, JavaParser.ResolvedNode> resolvedNodes = new IdentityHashMap<>();
+
+    private int hits = 0;
+
+    private int misses = 0;
+
+    public ResolutionCache(JavaContext context) {
+        this.context = context;
+    }
+
+    /**
+     * @return true if this cache belongs to the compilation unit of the given context
+     */
+    public boolean isFor(JavaContext context) {
+        return this.context == context;
+    }
+
+    public JavaParser.ResolvedNode resolve(Node node) {
+        JavaParser.ResolvedNode resolved = resolvedNodes.get(node);
+        if (resolved != null || resolvedNodes.containsKey(node)) {
+            ++ hits;
+            return resolved;
+        }
+
+        ++ misses;
+        resolved = context.resolve(node);
+        resolvedNodes.put(node, resolved);
+
+        return resolved;
+    }
+
+    public int getHits() {
+        return hits;
+    }
+
+    public int getMisses() {
+        return misses;
+    }
+}
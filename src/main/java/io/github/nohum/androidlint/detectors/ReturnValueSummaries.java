@@ -0,0 +1,174 @@
+package io.github.nohum.androidlint.detectors;
+
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.analysis.AnalyzerException;
+
+import java.util.*;
+
+/**
+ * Summaries of the constant strings the methods of an app may return, operating on byte-code. A summary is
+ * computed with {@link SourceFrameAnalysis} the first time a call of the method is queried and then reused
+ * for all call sites in all classes. The number of kept summaries is bounded, the least recently used ones
+ * are evicted first. Summaries computed while the {@link AnalysisBudget} runs out are empty and not kept.
+ */
+public class ReturnValueSummaries {
+
+    private static final Trace TRACE = Trace.forClass(ReturnValueSummaries.class);
+
+    /** number of recently used class nodes kept, as methods of the same class are often queried together */
+    private static final int CLASS_CACHE_SIZE = 32;
+
+    /**
+     * Provides the byte code of the classes of the app.
+     */
+    public interface ClassProvider {
+
+        /**
+         * @param internalName e.g. {@code com/example/Util}
+         * @return the class or null if it is not part of the app
+         */
+        ClassNode findClass(String internalName);
+    }
+
+    private ClassProvider classProvider;
+
+    private Map<String, Set<String>> summaries;
+
+    private Map<String, ClassNode> classes;
+
+    /** methods currently being summarized, the innermost one last */
+    private List<String> methodsInProgress = new ArrayList<>();
+
+    /** methods in progress that have seen an unfinished summary because of a call cycle */
+    private Set<String> incompleteSummaries = new HashSet<>();
+
+    /** number of queried summaries, including the ones served from the cache */
+    private int lookups;
+
+    private AnalysisBudget budget;
+
+    /**
+     * @param capacity maximum number of kept summaries
+     */
+    public ReturnValueSummaries(ClassProvider classProvider, int capacity) {
+        this.classProvider = classProvider;
+        this.summaries = new LruMap<>(capacity);
+        this.classes = new LruMap<>(CLASS_CACHE_SIZE);
+    }
+
+    /**
+     * @param budget bounds the computation of summaries, shared with the analysis using them; may be null
+     */
+    public void setBudget(AnalysisBudget budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * @return number of summaries queried so far, a change tells that a result depends on other methods
+     */
+    public int getLookups() {
+        return lookups;
+    }
+
+    /**
+     * @return the constant strings the called method may return, empty if unknown
+     */
+    public Set<String> getReturnedStrings(MethodInsnNode call) {
+        return getReturnedStrings(call.owner, call.name, call.desc);
+    }
+
+    public Set<String> getReturnedStrings(String owner, String name, String desc) {
+        ++ lookups;
+
+        String key = owner + '.' + name + desc;
+        Set<String> summary = summaries.get(key);
+        if (summary != null) {
+            return summary;
+        }
+
+        int cycleStart = methodsInProgress.indexOf(key);
+        if (cycleStart != -1) {
+            TRACE.event("call cycle back to %s", key);
+            incompleteSummaries.addAll(methodsInProgress.subList(cycleStart + 1, methodsInProgress.size()));
+            return Collections.emptySet();
+        }
+
+        if (budget != null && !budget.enter()) {
+            TRACE.event("budget exhausted before %s", key);
+            return Collections.emptySet();
+        }
+
+        methodsInProgress.add(key);
+        try {
+            summary = summarize(owner, name, desc);
+        } finally {
+            methodsInProgress.remove(methodsInProgress.size() - 1);
+            if (budget != null) {
+                budget.exit();
+            }
+        }
+
+        TRACE.event("summary of %s: %s", key, summary);
+        if (!incompleteSummaries.remove(key) && (budget == null || !budget.isExhausted())) {
+            summaries.put(key, summary);
+        }
+
+        return summary;
+    }
+
+    private Set<String> summarize(String owner, String name, String desc) {
+        MethodNode method = findMethod(owner, name, desc);
+        if (method == null || method.instructions.size() == 0) {
+            return Collections.emptySet(); // not part of the app, abstract or native
+        }
+
+        try {
+            SourceFrameAnalysis analysis = new SourceFrameAnalysis(owner, method,
+                    Collections.<MethodInsnNode, Integer>emptyMap(), this, budget);
+            return Collections.unmodifiableSet(analysis.getReturnedStrings());
+        } catch (AnalyzerException e) {
+            TRACE.event("analysis of %s.%s failed: %s", owner, name, e.getMessage());
+            return Collections.emptySet();
+        }
+    }
+
+    private MethodNode findMethod(String owner, String name, String desc) {
+        ClassNode classNode = classes.get(owner);
+        if (classNode == null && !classes.containsKey(owner)) {
+            classNode = classProvider.findClass(owner);
+            classes.put(owner, classNode);
+        }
+
+        if (classNode == null) {
+            return null;
+        }
+
+        for (Object method : classNode.methods) {
+            MethodNode methodNode = (MethodNode) method;
+            if (methodNode.name.equals(name) && methodNode.desc.equals(desc)) {
+                return methodNode;
+            }
+        }
+
+        return null;
+    }
+
+    private static class LruMap<K, V> extends LinkedHashMap<K, V> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        LruMap(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            return size() > capacity;
+        }
+    }
+}
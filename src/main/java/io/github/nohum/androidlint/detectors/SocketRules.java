@@ -0,0 +1,90 @@
+package io.github.nohum.androidlint.detectors;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Network sinks shared by the AST and byte-code socket detectors: calls that connect to the internet and hence
+ * fail without the INTERNET permission. Classes are given by their binary names. These are the only checks of the
+ * permission, the table of the {@link PermissionApiIndex} leaves it out.
+ * <p>
+ * An instance holds whether a project has the permission. It is immutable, hence it may be shared between threads.
+ */
+final class SocketRules {
+
+    /** Permission name of INTERNET permission */
+    static final String INTERNET_PERMISSION = "android.permission.INTERNET";
+
+    static final String CLASS_SOCKET = "java.net.Socket";
+    static final String METHOD_SOCKET_CONNECT = "connect";
+
+    static final String CLASS_SOCKET_FACTORY = "javax.net.SocketFactory";
+    static final String METHOD_SOCKET_FACTORY_CREATE = "createSocket";
+    static final String CLASS_SSL_SOCKET_FACTORY = "javax.net.SSLSocketFactory";
+    // method for SSLSocketFactor is the same as it extends SocketFactory
+
+    static final String CLASS_HTTP_CLIENT = "org.apache.http.client.HttpClient";
+    static final String CLASS_DEFAULT_HTTP_CLIENT = "org.apache.http.impl.client.DefaultHttpClient";
+    static final String METHOD_HTTP_CLIENT_EXECUTE = "execute";
+
+    static final String CLASS_URL = "java.net.URL";
+    static final String METHOD_URL_OPEN_CONNECTION = "openConnection";
+
+    private final boolean hasInternetPermission;
+
+    SocketRules(ManifestPermissions permissions) {
+        this(permissions.isGranted(INTERNET_PERMISSION));
+    }
+
+    SocketRules(boolean hasInternetPermission) {
+        this.hasInternetPermission = hasInternetPermission;
+    }
+
+    /**
+     * @return whether no call can fail, we would only generate false positives then
+     */
+    boolean isInternetGranted() {
+        return hasInternetPermission;
+    }
+
+    static List<String> getApplicableMethodNames() {
+        return Arrays.asList(
+                METHOD_SOCKET_CONNECT,
+                METHOD_SOCKET_FACTORY_CREATE,
+                METHOD_HTTP_CLIENT_EXECUTE,
+                METHOD_URL_OPEN_CONNECTION
+        );
+    }
+
+    /**
+     * @param className class declaring the called method, or the network class it extends
+     * @param hasArguments whether the call passes any arguments
+     */
+    static boolean isSink(String className, String methodName, boolean hasArguments) {
+        switch (className) {
+            case CLASS_SOCKET:
+                return METHOD_SOCKET_CONNECT.equals(methodName);
+
+            case CLASS_SOCKET_FACTORY:
+            case CLASS_SSL_SOCKET_FACTORY:
+                // the createSocket-method has many overloaded variants - we are only interested in the ones that
+                // take parameters as these are creating an already connected socket - (the simple one would be
+                // a false positive)
+                return METHOD_SOCKET_FACTORY_CREATE.equals(methodName) && hasArguments;
+
+            case CLASS_HTTP_CLIENT:
+            case CLASS_DEFAULT_HTTP_CLIENT:
+                return METHOD_HTTP_CLIENT_EXECUTE.equals(methodName);
+
+            case CLASS_URL:
+                return METHOD_URL_OPEN_CONNECTION.equals(methodName);
+
+            default:
+                return false;
+        }
+    }
+
+    static String getMessage(String methodName) {
+        return String.format("Call to `%s` requires INTERNET permission", methodName);
+    }
+}
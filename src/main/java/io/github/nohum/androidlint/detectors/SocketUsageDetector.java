@@ -0,0 +1,85 @@
+package io.github.nohum.androidlint.detectors;
+
+import com.android.annotations.NonNull;
+import com.android.tools.lint.detector.api.*;
+import lombok.ast.AstVisitor;
+import lombok.ast.Node;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.util.EnumSet;
+import java.util.List;
+
+/**
+ * Checks for internet access like {@link SocketUsageDetectorBytecode} for modules with class files and like
+ * {@link SocketUsageDetectorAst} for all others, see {@link BackendSelector}. Hence each call site is checked once
+ * and reported at most once, with the {@link SocketRules} both backends share. Libraries have no sources, so their
+ * classes are always checked by the byte-code backend.
+ */
+public class SocketUsageDetector extends Detector implements Detector.JavaScanner, Detector.ClassScanner {
+
+    public static final Issue ISSUE = Issue.create(
+            "SocketUsageWithoutPermission",
+            "Internet is accessed without proper permission",
+            "When accessing the internet using a socket or some other available methods, " +
+            "the `android.permission.INTERNET` permission must be acquired in the manifest.",
+            Category.CORRECTNESS,
+            8,
+            Severity.ERROR,
+            BackendSelector.createImplementation(SocketUsageDetector.class,
+                    EnumSet.of(Scope.JAVA_FILE, Scope.CLASS_FILE, Scope.JAVA_LIBRARIES), Scope.JAVA_FILE_SCOPE,
+                    Scope.CLASS_FILE_SCOPE));
+
+    private final SocketUsageDetectorAst ast = new SocketUsageDetectorAst(ISSUE, this);
+
+    private final SocketUsageDetectorBytecode bytecode = new SocketUsageDetectorBytecode(ISSUE, this);
+
+    /** Backends chosen for the modules of each project being checked */
+    private final ProjectStates<BackendSelector> backends = new ProjectStates<>();
+
+    @Override
+    public void beforeCheckProject(@NonNull Context context) {
+        backends.start(context, new BackendSelector());
+        DetectorStatistics.start(context, this);
+        ast.beforeCheckProject(context);
+        bytecode.beforeCheckProject(context);
+    }
+
+    @Override
+    public void afterCheckProject(@NonNull Context context) {
+        ast.afterCheckProject(context);
+        bytecode.afterCheckProject(context);
+        DetectorStatistics.get(context, this).finish(context);
+        backends.finish(context);
+    }
+
+    @Override
+    public void afterCheckFile(@NonNull Context context) {
+        ast.afterCheckFile(context);
+        bytecode.afterCheckFile(context);
+    }
+
+    @Override
+    public List<Class<? extends Node>> getApplicableNodeTypes() {
+        return ast.getApplicableNodeTypes();
+    }
+
+    @Override
+    public AstVisitor createJavaVisitor(@NonNull JavaContext context) {
+        return backends.get(context).usesBytecode(context) ? null : ast.createJavaVisitor(context);
+    }
+
+    @Override
+    public List<String> getApplicableCallNames() {
+        return bytecode.getApplicableCallNames();
+    }
+
+    @Override
+    public void checkCall(@NonNull ClassContext context, @NonNull ClassNode classNode, @NonNull MethodNode method,
+                          @NonNull MethodInsnNode call) {
+        if (context.isFromClassLibrary() || backends.get(context).usesBytecode(context)) {
+            bytecode.checkCall(context, classNode, method, call);
+        }
+    }
+}
@@ -3,19 +3,17 @@ package io.github.nohum.androidlint.detectors;
 import com.android.annotations.NonNull;
 import com.android.tools.lint.detector.api.*;
 import lombok.ast.*;
-import org.w3c.dom.Attr;
-import org.w3c.dom.Element;
 
 import java.util.*;
 
-import static com.android.SdkConstants.*;
-
 /**
  * Detector that checks for usage of an internet socket or other common libraries that connect
  * to the internet. If the app does not possess the right to access the internet, an issue will
  * be reported.
+ * <p>
+ * Its issue is disabled by default, the {@link SocketUsageDetector} uses it for modules without class files.
  */
-public class SocketUsageDetectorAst extends Detector implements Detector.XmlScanner, Detector.JavaScanner {
+public class SocketUsageDetectorAst extends Detector implements Detector.JavaScanner {
 
     public static final Issue ISSUE = Issue.create(
             "SocketUsageWithoutPermissionAst",
@@ -25,53 +23,88 @@ public class SocketUsageDetectorAst extends Detector implements Detector.XmlScan
             Category.CORRECTNESS,
             8,
             Severity.ERROR,
-            new Implementation(SocketUsageDetectorAst.class, EnumSet.of(Scope.MANIFEST, Scope.JAVA_FILE)));
-
-    /** Permission name of INTERNET permission */
-    private static final String INTERNET_PERMISSION = "android.permission.INTERNET";
+            new Implementation(SocketUsageDetectorAst.class, EnumSet.of(Scope.JAVA_FILE)))
+            .setEnabledByDefault(false);
 
     private static final String PACKAGESTAR_SOCKET_AND_URL = "java.net.*";
-    private static final String CLASS_SOCKET = "java.net.Socket";
-    private static final String METHOD_SOCKET_CONNECT = "connect";
+    private static final String CLASS_SOCKET = SocketRules.CLASS_SOCKET;
 
     private static final String PACKAGESTAR_SOCKET_FACTORY = "javax.net.*";
-    private static final String CLASS_SOCKET_FACTORY = "javax.net.SocketFactory";
-    private static final String METHOD_SOCKET_FACTORY_CREATE = "createSocket";
-    private static final String CLASS_SSL_SOCKET_FACTORY = "javax.net.SSLSocketFactory";
-    // method for SSLSocketFactor is the same as it extends SocketFactory
+    private static final String CLASS_SOCKET_FACTORY = SocketRules.CLASS_SOCKET_FACTORY;
+    private static final String CLASS_SSL_SOCKET_FACTORY = SocketRules.CLASS_SSL_SOCKET_FACTORY;
 
     private static final String PACKAGESTAR_HTTP_CLIENT = "org.apache.http.client.*";
-    private static final String CLASS_HTTP_CLIENT = "org.apache.http.client.HttpClient";
+    private static final String CLASS_HTTP_CLIENT = SocketRules.CLASS_HTTP_CLIENT;
     private static final String PACKAGESTAR_DEFAULT_HTTP_CLIENT = "org.apache.http.impl.client.*";
-    private static final String CLASS_DEFAULT_HTTP_CLIENT = "org.apache.http.impl.client.DefaultHttpClient";
-    private static final String METHOD_HTTP_CLIENT_EXECUTE = "execute";
+    private static final String CLASS_DEFAULT_HTTP_CLIENT = SocketRules.CLASS_DEFAULT_HTTP_CLIENT;
 
     // covered by PACKAGESTAR_SOCKET_AND_URL !!
-    private static final String CLASS_URL = "java.net.URL";
-    private static final String METHOD_URL_OPEN_CONNECTION = "openConnection";
+    private static final String CLASS_URL = SocketRules.CLASS_URL;
+
+    private static final Trace TRACE = Trace.forClass(SocketUsageDetectorAst.class);
+
+    /** Issue reported, {@link #ISSUE} unless used by the {@link SocketUsageDetector} */
+    private final Issue issue;
+
+    /** Detector the statistics are attributed to */
+    private final Detector statisticsOwner;
+
+    /** State of each project being checked */
+    private final ProjectStates<ProjectState> states = new ProjectStates<>();
+
+    /**
+     * Per-project state, created in {@link #beforeCheckProject} and dropped in {@link #afterCheckProject}.
+     */
+    private static final class ProjectState {
+        private final SocketRules rules;
 
-    private boolean hasInternetPermission = false;
+        private final DetectorStatistics statistics;
+
+        /** Report the findings are streamed to */
+        private final FindingsReport report;
+
+        ProjectState(Context context, Detector statisticsOwner, Detector detector) {
+            rules = new SocketRules(ManifestPermissions.get(context));
+            statistics = statisticsOwner == detector ? DetectorStatistics.start(context, detector)
+                    : DetectorStatistics.get(context, statisticsOwner);
+            report = FindingsReport.open(context);
+        }
+    }
+
+    public SocketUsageDetectorAst() {
+        this(ISSUE, null);
+    }
+
+    /**
+     * @param statisticsOwner detector sharing its statistics, null for this one
+     */
+    SocketUsageDetectorAst(Issue issue, Detector statisticsOwner) {
+        this.issue = issue;
+        this.statisticsOwner = statisticsOwner == null ? this : statisticsOwner;
+    }
 
     @Override
-    public Collection<String> getApplicableElements() {
-        return Collections.singletonList(TAG_USES_PERMISSION);
+    public void beforeCheckProject(@NonNull Context context) {
+        states.start(context, new ProjectState(context, statisticsOwner, this));
     }
 
     @Override
-    public void visitElement(@NonNull XmlContext context, @NonNull Element element) {
-        Attr name = element.getAttributeNodeNS(ANDROID_URI, ATTR_NAME);
-        if (name != null && name.getValue().equals(INTERNET_PERMISSION)) {
-            hasInternetPermission = true;
+    public void afterCheckProject(@NonNull Context context) {
+        ProjectState state = states.finish(context);
+        state.report.close(context);
+        if (statisticsOwner == this) {
+            state.statistics.finish(context);
         }
     }
 
     @Override
     public AstVisitor createJavaVisitor(@NonNull JavaContext context) {
-        if (hasInternetPermission) {
+        ProjectState state = states.get(context);
+        if (state.rules.isInternetGranted()) {
             return null; // no need to do further checks
         }
 
-        return new DeclarationVisitor(context);
+        return new DeclarationVisitor(context, state);
     }
 
     @Override
@@ -89,8 +122,9 @@ public class SocketUsageDetectorAst extends Detector implements Detector.XmlScan
     }
 
     private class DeclarationVisitor extends ForwardingAstVisitor {
-        private static final boolean DEBUG = false;
         private JavaContext context;
+        private final DetectorStatistics statistics;
+        private final FindingsReport report;
         private Map<String, String> currentSuspectedVars = new HashMap<>();
         private Set<String> imports = new HashSet<String>();
         private MethodInvocation currentInvocatedMethod;
@@ -111,14 +145,10 @@ public class SocketUsageDetectorAst extends Detector implements Detector.XmlScan
             add(CLASS_URL);
         }};
 
-        public DeclarationVisitor(JavaContext context) {
+        public DeclarationVisitor(JavaContext context, ProjectState state) {
             this.context = context;
-        }
-
-        private void log(String format, Object... args) {
-            if (DEBUG) {
-                System.out.println(String.format(format, args));
-            }
+            statistics = state.statistics;
+            report = state.report;
         }
 
         private String classNameFromFcqn(String fqcn) {
@@ -140,6 +170,7 @@ public class SocketUsageDetectorAst extends Detector implements Detector.XmlScan
          */
         @Override
         public boolean visitImportDeclaration(ImportDeclaration node) {
+            statistics.increment(DetectorStatistics.Counter.AST_NODES_VISITED);
             String fqcn = node.asFullyQualifiedName();
 
             // if one of the star imports is listed, one of our classes is used
@@ -167,13 +198,14 @@ public class SocketUsageDetectorAst extends Detector implements Detector.XmlScan
          */
         @Override
         public boolean visitMethodDeclaration(MethodDeclaration node) {
+            statistics.increment(DetectorStatistics.Counter.AST_NODES_VISITED);
             if (noConnectionClassesUsed()) {
                 return true; // no internet connection classes used, we are finished here ...
             }
 
             currentSuspectedVars.clear();
 
-            log("in method: %s", node.astMethodName().astValue());
+            TRACE.event("in method: %s", node.astMethodName().astValue());
             return super.visitMethodDeclaration(node);
         }
 
@@ -182,6 +214,7 @@ public class SocketUsageDetectorAst extends Detector implements Detector.XmlScan
          */
         @Override
         public boolean visitConstructorDeclaration(ConstructorDeclaration node) {
+            statistics.increment(DetectorStatistics.Counter.AST_NODES_VISITED);
             if (noConnectionClassesUsed()) {
                 return true; // no internet connection classes used, we are finished here ...
             }
@@ -195,10 +228,12 @@ public class SocketUsageDetectorAst extends Detector implements Detector.XmlScan
          */
         @Override
         public boolean visitVariableDefinitionEntry(VariableDefinitionEntry node) {
+            statistics.increment(DetectorStatistics.Counter.AST_NODES_VISITED);
             if (noConnectionClassesUsed()) {
                 return true; // no internet connection classes used, we are finished here ...
             }
 
+            long started = statistics.startTimer();
             TypeReference type = node.upToVariableDefinition().astTypeReference();
 
             for (String importedClass : imports) {
@@ -207,10 +242,11 @@ public class SocketUsageDetectorAst extends Detector implements Detector.XmlScan
                     // the same variable identifier may be saved several times (e.g. same identifier used in different scopes)
                     currentSuspectedVars.put(node.astName().astValue(), importedClass);
 
-                    log("currentSuspectedVars: %s -> %s", node.astName().astValue(), importedClass);
+                    TRACE.event("currentSuspectedVars: %s -> %s", node.astName().astValue(), importedClass);
                 }
             }
 
+            statistics.stopTimer(started);
             return false;
         }
 
@@ -220,7 +256,10 @@ public class SocketUsageDetectorAst extends Detector implements Detector.XmlScan
          */
         @Override
         public boolean visitMethodInvocation(MethodInvocation node) {
+            statistics.increment(DetectorStatistics.Counter.AST_NODES_VISITED);
+            statistics.increment(DetectorStatistics.Counter.CALLS_DISPATCHED);
             if (noSuspectedVariables()) {
+                statistics.increment(DetectorStatistics.Counter.CALLS_FILTERED);
                 return true; // nothing to do ...
             }
 
@@ -238,10 +277,11 @@ public class SocketUsageDetectorAst extends Detector implements Detector.XmlScan
             String calledMethodName = node.astName().astValue();
 
             if (node.astOperand() == null) { // if null, this looks like this: methodName(var, var2);
+                statistics.increment(DetectorStatistics.Counter.CALLS_FILTERED);
                 return true;
             }
 
-            log("invocation: %s (%s).%s", node.astOperand(), node.astOperand().getClass(), calledMethodName);
+            TRACE.event("invocation: %s (%s).%s", node.astOperand(), node.astOperand().getClass(), calledMethodName);
 
             currentInvocatedMethod = node;
             return false;
@@ -252,26 +292,32 @@ public class SocketUsageDetectorAst extends Detector implements Detector.XmlScan
          */
         @Override
         public boolean visitVariableReference(VariableReference node) {
+            statistics.increment(DetectorStatistics.Counter.AST_NODES_VISITED);
             if (currentInvocatedMethod == null) {
                 return true;
             }
 
+            long started = statistics.startTimer();
             String varName = node.astIdentifier().astValue();
             String calledMethodName = currentInvocatedMethod.astName().astValue();
             boolean hasParameters = !currentInvocatedMethod.astArguments().isEmpty();
-            log("var-ref: %s (call should be to: %s)", varName, calledMethodName);
+            TRACE.event("var-ref: %s (call should be to: %s)", varName, calledMethodName);
 
             if (callWillFail(varName, calledMethodName, hasParameters)) {
-                log("found failing: %s.%s", varName, calledMethodName);
+                TRACE.event("found failing: %s.%s", varName, calledMethodName);
 
-                context.report(ISSUE, currentInvocatedMethod, context.getLocation(currentInvocatedMethod),
-                        String.format("Call to `%s` requires INTERNET permission", currentInvocatedMethod));
+                Location location = context.getLocation(currentInvocatedMethod);
+                String message = SocketRules.getMessage(calledMethodName);
+                context.report(issue, currentInvocatedMethod, location, message);
+                report.add(context, issue, currentInvocatedMethod, location, calledMethodName,
+                        SocketRules.INTERNET_PERMISSION, Collections.<String>emptyList(), message);
             }
 
             // we are making a trade-off here: by setting the invocation to null, e.g. inline-expressions with multiple
             // variable references are only detected once. but this is ok as we are finally interested in the method
             // call, not the variables
             currentInvocatedMethod = null;
+            statistics.stopTimer(started);
             return super.visitVariableReference(node);
         }
 
@@ -283,31 +329,7 @@ public class SocketUsageDetectorAst extends Detector implements Detector.XmlScan
                 return false;
             }
 
-            String fqcn = currentSuspectedVars.get(varName);
-            switch (fqcn) {
-                case CLASS_SOCKET:
-                    return METHOD_SOCKET_CONNECT.equals(methodName);
-
-                case CLASS_SOCKET_FACTORY:
-                    // the createSocket method without parameter is a false positive
-                    return METHOD_SOCKET_FACTORY_CREATE.equals(methodName) && hasParameters;
-
-                case CLASS_SSL_SOCKET_FACTORY:
-                    // the createSocket method without parameter is a false positive
-                    return METHOD_SOCKET_FACTORY_CREATE.equals(methodName) && hasParameters;
-
-                case CLASS_HTTP_CLIENT:
-                    return METHOD_HTTP_CLIENT_EXECUTE.equals(methodName);
-
-                case CLASS_DEFAULT_HTTP_CLIENT:
-                    return METHOD_HTTP_CLIENT_EXECUTE.equals(methodName);
-
-                case CLASS_URL:
-                    return METHOD_URL_OPEN_CONNECTION.equals(methodName);
-
-                default:
-                    return false;
-            }
+            return SocketRules.isSink(currentSuspectedVars.get(varName), methodName, hasParameters);
         }
     }
 }
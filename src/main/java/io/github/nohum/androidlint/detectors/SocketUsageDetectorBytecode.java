@@ -4,27 +4,24 @@ import com.android.annotations.NonNull;
 import com.android.tools.lint.client.api.LintDriver;
 import com.android.tools.lint.detector.api.*;
 import org.objectweb.asm.Opcodes;
-import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AbstractInsnNode;
 import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.tree.MethodInsnNode;
 import org.objectweb.asm.tree.MethodNode;
 import org.objectweb.asm.util.TraceClassVisitor;
-import org.w3c.dom.Attr;
-import org.w3c.dom.Element;
 
 import java.io.PrintWriter;
 import java.util.*;
 
-import static com.android.SdkConstants.ANDROID_URI;
-import static com.android.SdkConstants.ATTR_NAME;
-import static com.android.SdkConstants.TAG_USES_PERMISSION;
-
 /**
  * Detector that checks for usage of an internet socket or other common libraries that connect
  * to the internet. If the app does not possess the right to access the internet, an issue will
  * be reported.
+ * <p>
+ * Its issue is disabled by default, the {@link SocketUsageDetector} uses it for modules with class files and for
+ * libraries.
  */
-public class SocketUsageDetectorBytecode extends Detector implements Detector.XmlScanner, Detector.ClassScanner  {
+public class SocketUsageDetectorBytecode extends Detector implements Detector.ClassScanner  {
 
     public static final Issue ISSUE = Issue.create(
             "SocketUsageWithoutPermissionBytecode",
@@ -34,118 +31,180 @@ public class SocketUsageDetectorBytecode extends Detector implements Detector.Xm
             Category.CORRECTNESS,
             8,
             Severity.ERROR,
-            new Implementation(SocketUsageDetectorBytecode.class, EnumSet.of(Scope.MANIFEST, Scope.CLASS_FILE,
-                    Scope.JAVA_LIBRARIES)));
-
-    /** Permission name of INTERNET permission */
-    private static final String INTERNET_PERMISSION = "android.permission.INTERNET";
-
-    private static final String CLASS_SOCKET = "java/net/Socket";
-    private static final String METHOD_SOCKET_CONNECT = "connect";
-
-    private static final String CLASS_SOCKET_FACTORY = "javax/net/SocketFactory";
-    private static final String METHOD_SOCKET_FACTORY_CREATE = "createSocket";
-    private static final String CLASS_SSL_SOCKET_FACTORY = "javax/net/SSLSocketFactory";
-    // method for SSLSocketFactor is the same as it extends SocketFactory
+            new Implementation(SocketUsageDetectorBytecode.class, EnumSet.of(Scope.CLASS_FILE,
+                    Scope.JAVA_LIBRARIES)))
+            .setEnabledByDefault(false);
+
+    /** Version of the findings in the {@link FindingsCache}, to be increased whenever they may change */
+    private static final int CACHE_VERSION = 1;
+
+    /** Issue reported, {@link #ISSUE} unless used by the {@link SocketUsageDetector} */
+    private final Issue issue;
+
+    /** Detector the statistics are attributed to */
+    private final Detector statisticsOwner;
+
+    /** State of each project being checked */
+    private final ProjectStates<ProjectState> states = new ProjectStates<>();
+
+    /**
+     * Everything a detector learns about the project it checks. Created before and dropped after checking the
+     * project, and only used by the thread checking it, whereas the detector itself only holds immutable
+     * configuration.
+     */
+    private static final class ProjectState {
+        private final SocketRules rules;
+
+        /** Matches the network calls, remembering the superclass chains walked during the lint run */
+        private final NetworkSinks sinks;
+
+        /** Tells whether a class calls any network class at all */
+        private final ClassRelevanceFilter relevanceFilter;
+
+        /** Findings of unchanged classes from previous runs */
+        private final FindingsCache findingsCache;
+
+        private final DetectorStatistics statistics;
+
+        /** Class whose findings are looked up in or recorded for the {@link #findingsCache} */
+        private ClassNode cachedClass;
+
+        ProjectState(Context context, Issue issue, Detector statisticsOwner, Detector detector) {
+            rules = new SocketRules(ManifestPermissions.get(context));
+
+            final LintDriver driver = context.getDriver();
+            sinks = new NetworkSinks(new NetworkSinks.SuperClassLookup() {
+                @Override
+                public String getSuperClass(String internalName) {
+                    return driver.getSuperClass(internalName);
+                }
+            });
+            relevanceFilter = new ClassRelevanceFilter(SocketRules.getApplicableMethodNames(),
+                    new ClassRelevanceFilter.OwnerMatcher() {
+                        @Override
+                        public boolean isWatched(String owner, int opcode) {
+                            return sinks.isWatchedOwner(owner, opcode);
+                        }
+                    });
+
+            findingsCache = FindingsCache.open(context, issue, CACHE_VERSION);
+            statistics = statisticsOwner == detector ? DetectorStatistics.start(context, detector)
+                    : DetectorStatistics.get(context, statisticsOwner);
+        }
+    }
 
-    private static final String CLASS_HTTP_CLIENT = "org/apache/http/client/HttpClient";
-    private static final String CLASS_DEFAULT_HTTP_CLIENT = "org/apache/http/impl/client/DefaultHttpClient";
-    private static final String METHOD_HTTP_CLIENT_EXECUTE = "execute";
+    public SocketUsageDetectorBytecode() {
+        this(ISSUE, null);
+    }
 
-    private static final String CLASS_URL = "java/net/URL";
-    private static final String METHOD_URL_OPEN_CONNECTION = "openConnection";
+    /**
+     * @param statisticsOwner detector sharing its statistics, null for this one
+     */
+    SocketUsageDetectorBytecode(Issue issue, Detector statisticsOwner) {
+        this.issue = issue;
+        this.statisticsOwner = statisticsOwner == null ? this : statisticsOwner;
+    }
 
-    private boolean hasInternetPermission = false;
+    @Override
+    public void beforeCheckProject(@NonNull Context context) {
+        states.start(context, new ProjectState(context, issue, statisticsOwner, this));
+    }
 
     @Override
-    public Collection<String> getApplicableElements() {
-        return Collections.singletonList(TAG_USES_PERMISSION);
+    public void afterCheckProject(@NonNull Context context) {
+        ProjectState state = states.finish(context);
+        state.findingsCache.close(context);
+        if (statisticsOwner == this) {
+            state.statistics.finish(context);
+        }
     }
 
     @Override
-    public void visitElement(@NonNull XmlContext context, @NonNull Element element) {
-        Attr name = element.getAttributeNodeNS(ANDROID_URI, ATTR_NAME);
-        if (name != null && name.getValue().equals(INTERNET_PERMISSION)) {
-            hasInternetPermission = true;
+    public void afterCheckFile(@NonNull Context context) {
+        ProjectState state = states.get(context);
+        if (state.cachedClass != null) {
+            state.findingsCache.endClass();
+            state.cachedClass = null;
         }
+
+        state.relevanceFilter.reset();
     }
 
     @Override
     public List<String> getApplicableCallNames() {
-        return Arrays.asList(
-                METHOD_SOCKET_CONNECT,
-                METHOD_SOCKET_FACTORY_CREATE,
-                METHOD_HTTP_CLIENT_EXECUTE,
-                METHOD_URL_OPEN_CONNECTION
-        );
+        return SocketRules.getApplicableMethodNames();
     }
 
     @Override
     public void checkCall(@NonNull ClassContext context, @NonNull ClassNode classNode, @NonNull MethodNode method,
                           @NonNull MethodInsnNode call) {
-        // we would only generate false positives if the app possesses the INTERNET permission
-        if (hasInternetPermission) {
-            return;
+        ProjectState state = states.get(context);
+        state.statistics.increment(DetectorStatistics.Counter.CALLS_DISPATCHED);
+
+        long started = state.statistics.startTimer();
+        try {
+            checkNetworkCall(state, context, classNode, method, call);
+        } finally {
+            state.statistics.stopTimer(started);
         }
+    }
 
-        // we only accept instance calls (also HttpClient is a interface)
-        if (call.getOpcode() != Opcodes.INVOKEVIRTUAL && call.getOpcode() != Opcodes.INVOKEINTERFACE) {
+    private void checkNetworkCall(ProjectState state, ClassContext context, ClassNode classNode, MethodNode method,
+                                  MethodInsnNode call) {
+        // we would only generate false positives if the app possesses the INTERNET permission
+        if (state.rules.isInternetGranted() || !state.relevanceFilter.isRelevant(classNode)) {
+            state.statistics.increment(DetectorStatistics.Counter.CALLS_FILTERED);
             return;
         }
 
-        if (matches(call, call.getOpcode() == Opcodes.INVOKEVIRTUAL, context.getDriver())) {
-            context.report(ISSUE, method, call, context.getLocation(call),
-                    String.format("Call to `%s` requires INTERNET permission", call.name));
+        FindingsCache findingsCache = state.findingsCache;
+        if (classNode != state.cachedClass) {
+            state.cachedClass = classNode;
+            findingsCache.beginClass(context, getHierarchyFingerprint(state, classNode));
         }
-    }
 
-    private boolean matches(MethodInsnNode call, boolean checkInheritance, LintDriver driver) {
-        String owner = call.owner;
-        if (checkInheritance) {
-            owner = getApplicableInheritance(owner, driver);
+        if (findingsCache.isReplaying()) {
+            findingsCache.replay(context, issue, method, call);
+            return;
         }
 
-        if (METHOD_SOCKET_CONNECT.equals(call.name) && CLASS_SOCKET.equals(owner)) {
-            return true;
+        // we only accept instance calls (also HttpClient is a interface)
+        if (call.getOpcode() != Opcodes.INVOKEVIRTUAL && call.getOpcode() != Opcodes.INVOKEINTERFACE) {
+            state.statistics.increment(DetectorStatistics.Counter.CALLS_FILTERED);
+            return;
         }
 
-        if (METHOD_SOCKET_FACTORY_CREATE.equals(call.name)
-                && (CLASS_SOCKET_FACTORY.equals(owner) || CLASS_SSL_SOCKET_FACTORY.equals(owner))) {
-            // the createSocket-method has many overloaded variants - we are only interested in the ones that
-            // take parameters as these are creating an already connected socket - (the simple one would be
-            // a false positive)
-            Type[] methodArgumentTypes = Type.getArgumentTypes(call.desc);
-            return methodArgumentTypes.length > 0;
+        if (state.sinks.isSink(call)) {
+            findingsCache.report(context, issue, method, call, SocketRules.getMessage(call.name),
+                    SocketRules.INTERNET_PERMISSION, Collections.<String>emptyList());
         }
+    }
 
-        if (METHOD_HTTP_CLIENT_EXECUTE.equals(call.name)
-                && (CLASS_HTTP_CLIENT.equals(owner) || CLASS_DEFAULT_HTTP_CLIENT.equals(owner))) {
-            return true;
+    /**
+     * The findings of a class also depend on the superclasses of the classes it calls, which may change without
+     * the class being changed. Hence their network base classes are part of the findings cache key.
+     */
+    private long getHierarchyFingerprint(ProjectState state, ClassNode classNode) {
+        if (!state.findingsCache.isEnabled()) {
+            return 0;
         }
 
-        if (METHOD_URL_OPEN_CONNECTION.equals(call.name) && CLASS_URL.equals(owner)) {
-            return true;
-        }
+        List<String> callNames = getApplicableCallNames();
+        long fingerprint = 0;
 
-        return false;
-    }
+        for (MethodNode method : classNode.methods) {
+            for (AbstractInsnNode instruction = method.instructions.getFirst(); instruction != null;
+                    instruction = instruction.getNext()) {
+                if (instruction.getOpcode() != Opcodes.INVOKEVIRTUAL
+                        || !callNames.contains(((MethodInsnNode) instruction).name)) {
+                    continue;
+                }
 
-    private String getApplicableInheritance(String originalOwner, LintDriver driver) {
-        String superClass = originalOwner;
-        do {
-            superClass = driver.getSuperClass(superClass);
-
-            if (CLASS_SOCKET.equals(superClass)) {
-                return CLASS_SOCKET;
-            } else if (CLASS_SOCKET_FACTORY.equals(superClass)) { // SSL version extends this
-                return CLASS_SOCKET_FACTORY;
-            } else if (CLASS_DEFAULT_HTTP_CLIENT.equals(superClass)) {
-                return CLASS_DEFAULT_HTTP_CLIENT;
+                String owner = ((MethodInsnNode) instruction).owner;
+                fingerprint = fingerprint * 31 + state.sinks.getApplicableInheritance(owner).hashCode();
             }
-        } while (superClass != null);
+        }
 
-        // no need to check URL as it is declared final
-        // also no need for HttpClient as not invoked in case of INVOKEVIRTUAL (would use INVOKEINTERFACE instead)
-        return originalOwner;
+        return fingerprint;
     }
 }
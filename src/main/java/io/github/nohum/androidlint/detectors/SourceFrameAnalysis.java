@@ -0,0 +1,196 @@
+package io.github.nohum.androidlint.detectors;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.*;
+import org.objectweb.asm.tree.analysis.Analyzer;
+import org.objectweb.asm.tree.analysis.AnalyzerException;
+import org.objectweb.asm.tree.analysis.Frame;
+import org.objectweb.asm.tree.analysis.SourceValue;
+import org.objectweb.asm.tree.analysis.SourceInterpreter;
+
+import java.util.*;
+
+/**
+ * Data-flow analysis using the ASM {@link Analyzer} together with a {@link SourceInterpreter}, operating
+ * on byte-code. The frames of the method are computed once; the sources of an argument are then read from
+ * the frame at the call and followed through local variables back to their constants. Values returned by
+ * calls of app methods are taken from {@link ReturnValueSummaries}, if available. If the {@link AnalysisBudget}
+ * runs out, all values are unknown.
+ */
+public class SourceFrameAnalysis implements ProviderAnalysis {
+
+    private static final Trace TRACE = Trace.forClass(SourceFrameAnalysis.class);
+
+    private MethodNode method;
+
+    private Frame<SourceValue>[] frames;
+
+    private Map<MethodInsnNode, Integer> subjectMethodCalls;
+
+    private ReturnValueSummaries returnValueSummaries;
+
+    private AnalysisBudget budget;
+
+    /**
+     * @param owner internal name of the class declaring the method
+     * @param methodCalls the desired calls, mapped to the argument index to record (zero-based).
+     */
+    public SourceFrameAnalysis(String owner, MethodNode method, Map<MethodInsnNode, Integer> methodCalls)
+            throws AnalyzerException {
+        this(owner, method, methodCalls, null);
+    }
+
+    /**
+     * @param returnValueSummaries used to follow strings returned by called methods, may be null
+     */
+    public SourceFrameAnalysis(String owner, MethodNode method, Map<MethodInsnNode, Integer> methodCalls,
+                               ReturnValueSummaries returnValueSummaries) throws AnalyzerException {
+        this(owner, method, methodCalls, returnValueSummaries, null);
+    }
+
+    /**
+     * @param budget bounds the computation of the frames and the following of values, may be null
+     */
+    public SourceFrameAnalysis(String owner, MethodNode method, Map<MethodInsnNode, Integer> methodCalls,
+                               ReturnValueSummaries returnValueSummaries, final AnalysisBudget budget)
+            throws AnalyzerException {
+        this.method = method;
+        this.subjectMethodCalls = new IdentityHashMap<>(methodCalls);
+        this.returnValueSummaries = returnValueSummaries;
+        this.budget = budget;
+
+        Analyzer<SourceValue> analyzer = new Analyzer<SourceValue>(new SourceInterpreter()) {
+            @Override
+            protected void newControlFlowEdge(int instruction, int successor) {
+                // the analyzer passes the exception on as AnalyzerException
+                if (budget != null && !budget.visitNode()) {
+                    throw new IllegalStateException("analysis budget exhausted");
+                }
+            }
+        };
+
+        try {
+            frames = analyzer.analyze(owner, method);
+        } catch (AnalyzerException e) {
+            if (budget == null || !budget.isExhausted()) {
+                throw e;
+            }
+
+            TRACE.event("budget exhausted while computing the frames of %s", method.name);
+        }
+    }
+
+    @Override
+    public List<String> getPossibleProviders(MethodInsnNode call) {
+        Integer argument = subjectMethodCalls.get(call);
+        if (argument == null || isExhausted()) {
+            return Collections.emptyList();
+        }
+
+        Frame<SourceValue> frame = frames[method.instructions.indexOf(call)];
+        if (frame == null) {
+            TRACE.event("call %s is unreachable", call.name);
+            return Collections.emptyList(); // dead code
+        }
+
+        // the receiver (if any) is below the arguments, the last argument is on top
+        int argumentCount = Type.getArgumentTypes(call.desc).length;
+        SourceValue value = frame.getStack(frame.getStackSize() - argumentCount + argument);
+
+        Set<String> providers = new LinkedHashSet<>();
+        collectStrings(value, providers, new HashSet<AbstractInsnNode>());
+        if (isExhausted()) {
+            return Collections.emptyList();
+        }
+
+        TRACE.event("providers of %s: %s", call.name, providers);
+
+        return new ArrayList<>(providers);
+    }
+
+    /**
+     * @return the constant strings that may be returned by the analyzed method
+     */
+    public Set<String> getReturnedStrings() {
+        Set<String> strings = new LinkedHashSet<>();
+        Set<AbstractInsnNode> visited = new HashSet<>();
+        if (isExhausted()) {
+            return strings;
+        }
+
+        for (AbstractInsnNode instruction = method.instructions.getFirst(); instruction != null;
+                instruction = instruction.getNext()) {
+            if (instruction.getOpcode() != Opcodes.ARETURN) {
+                continue;
+            }
+
+            Frame<SourceValue> frame = getFrame(instruction);
+            if (frame != null && frame.getStackSize() > 0) {
+                collectStrings(frame.getStack(frame.getStackSize() - 1), strings, visited);
+            }
+        }
+
+        if (isExhausted()) {
+            strings.clear();
+        }
+
+        return strings;
+    }
+
+    /**
+     * @return true if the budget ran out, either while computing the frames or while following values
+     */
+    public boolean isExhausted() {
+        return budget != null && budget.isExhausted();
+    }
+
+    private void collectStrings(SourceValue value, Set<String> strings, Set<AbstractInsnNode> visited) {
+        if (budget != null && !budget.enter()) {
+            return;
+        }
+
+        try {
+            collectSourceStrings(value, strings, visited);
+        } finally {
+            if (budget != null) {
+                budget.exit();
+            }
+        }
+    }
+
+    private void collectSourceStrings(SourceValue value, Set<String> strings, Set<AbstractInsnNode> visited) {
+        for (AbstractInsnNode source : value.insns) {
+            if (!visited.add(source) || budget != null && !budget.visitNode()) {
+                continue;
+            }
+
+            if (source instanceof LdcInsnNode) {
+                if (((LdcInsnNode) source).cst instanceof String) {
+                    strings.add((String) ((LdcInsnNode) source).cst);
+                }
+            } else if (source.getOpcode() == Opcodes.ALOAD) {
+                // the local holds whatever has been stored into it
+                Frame<SourceValue> frame = getFrame(source);
+                if (frame != null) {
+                    collectStrings(frame.getLocal(((VarInsnNode) source).var), strings, visited);
+                }
+            } else if (source.getOpcode() == Opcodes.ASTORE || source.getOpcode() == Opcodes.CHECKCAST
+                    || source.getOpcode() == Opcodes.DUP) {
+                // these pass on the value on top of the stack
+                Frame<SourceValue> frame = getFrame(source);
+                if (frame != null && frame.getStackSize() > 0) {
+                    collectStrings(frame.getStack(frame.getStackSize() - 1), strings, visited);
+                }
+            } else if (source instanceof MethodInsnNode && returnValueSummaries != null) {
+                strings.addAll(returnValueSummaries.getReturnedStrings((MethodInsnNode) source));
+            } else {
+                TRACE.event("not following source %d", source.getOpcode());
+            }
+        }
+    }
+
+    private Frame<SourceValue> getFrame(AbstractInsnNode instruction) {
+        return frames[method.instructions.indexOf(instruction)];
+    }
+}
@@ -0,0 +1,186 @@
+package io.github.nohum.androidlint.detectors;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.*;
+
+/**
+ * Operand stack effect of every JVM instruction, in stack slots: long and double values take two slots, everything
+ * else one. Counting slots instead of values makes the category dependent forms of {@code POP2} and the
+ * {@code DUP2} family plain slot operations.
+ * <p>
+ * The effect of most opcodes is fixed and kept in a table. Field accesses, calls, {@code LDC} and
+ * {@code MULTIANEWARRAY} depend on their operand and are computed from it.
+ */
+final class StackEffects {
+
+    private static final int VARIABLE = -1;
+
+    private static final int OPCODES = 202;
+
+    private static final int[] POPS = new int[OPCODES];
+
+    private static final int[] PUSHES = new int[OPCODES];
+
+    /**
+     * Slots pushed by the stack shuffling instructions, bottom first, as indices into the popped slots, top first.
+     */
+    private static final int[][] SHUFFLES = new int[OPCODES][];
+
+    static {
+        set(0, 0, Opcodes.NOP, Opcodes.IINC, Opcodes.GOTO, Opcodes.RET, Opcodes.RETURN, 196 /* WIDE */,
+                200 /* GOTO_W */);
+        set(0, 1, Opcodes.ACONST_NULL, Opcodes.ICONST_M1, Opcodes.ICONST_0, Opcodes.ICONST_1, Opcodes.ICONST_2,
+                Opcodes.ICONST_3, Opcodes.ICONST_4, Opcodes.ICONST_5, Opcodes.FCONST_0, Opcodes.FCONST_1,
+                Opcodes.FCONST_2, Opcodes.BIPUSH, Opcodes.SIPUSH, Opcodes.ILOAD, Opcodes.FLOAD, Opcodes.ALOAD,
+                Opcodes.JSR, Opcodes.NEW, 201 /* JSR_W */);
+        set(0, 2, Opcodes.LCONST_0, Opcodes.LCONST_1, Opcodes.DCONST_0, Opcodes.DCONST_1, Opcodes.LLOAD,
+                Opcodes.DLOAD, 20 /* LDC2_W */);
+        set(VARIABLE, VARIABLE, Opcodes.LDC, 19 /* LDC_W */, Opcodes.GETSTATIC, Opcodes.PUTSTATIC, Opcodes.GETFIELD,
+                Opcodes.PUTFIELD, Opcodes.INVOKEVIRTUAL, Opcodes.INVOKESPECIAL, Opcodes.INVOKESTATIC,
+                Opcodes.INVOKEINTERFACE, Opcodes.INVOKEDYNAMIC, Opcodes.MULTIANEWARRAY);
+
+        // ILOAD_0 to ALOAD_3 and ISTORE_0 to ASTORE_3, which ASM expands to their general form
+        for (int i = 0; i < 4; ++ i) {
+            set(0, 1, 26 + i, 34 + i, 42 + i);
+            set(0, 2, 30 + i, 38 + i);
+            set(1, 0, 59 + i, 67 + i, 75 + i);
+            set(2, 0, 63 + i, 71 + i);
+        }
+
+        set(2, 1, Opcodes.IALOAD, Opcodes.FALOAD, Opcodes.AALOAD, Opcodes.BALOAD, Opcodes.CALOAD, Opcodes.SALOAD);
+        set(2, 2, Opcodes.LALOAD, Opcodes.DALOAD);
+        set(1, 0, Opcodes.ISTORE, Opcodes.FSTORE, Opcodes.ASTORE, Opcodes.POP, Opcodes.IFEQ, Opcodes.IFNE,
+                Opcodes.IFLT, Opcodes.IFGE, Opcodes.IFGT, Opcodes.IFLE, Opcodes.IFNULL, Opcodes.IFNONNULL,
+                Opcodes.TABLESWITCH, Opcodes.LOOKUPSWITCH, Opcodes.IRETURN, Opcodes.FRETURN, Opcodes.ARETURN,
+                Opcodes.ATHROW, Opcodes.MONITORENTER, Opcodes.MONITOREXIT);
+        set(2, 0, Opcodes.LSTORE, Opcodes.DSTORE, Opcodes.POP2, Opcodes.IF_ICMPEQ, Opcodes.IF_ICMPNE,
+                Opcodes.IF_ICMPLT, Opcodes.IF_ICMPGE, Opcodes.IF_ICMPGT, Opcodes.IF_ICMPLE, Opcodes.IF_ACMPEQ,
+                Opcodes.IF_ACMPNE, Opcodes.LRETURN, Opcodes.DRETURN);
+        set(3, 0, Opcodes.IASTORE, Opcodes.FASTORE, Opcodes.AASTORE, Opcodes.BASTORE, Opcodes.CASTORE,
+                Opcodes.SASTORE);
+        set(4, 0, Opcodes.LASTORE, Opcodes.DASTORE);
+
+        set(2, 1, Opcodes.IADD, Opcodes.FADD, Opcodes.ISUB, Opcodes.FSUB, Opcodes.IMUL, Opcodes.FMUL, Opcodes.IDIV,
+                Opcodes.FDIV, Opcodes.IREM, Opcodes.FREM, Opcodes.ISHL, Opcodes.ISHR, Opcodes.IUSHR, Opcodes.IAND,
+                Opcodes.IOR, Opcodes.IXOR, Opcodes.FCMPL, Opcodes.FCMPG);
+        set(4, 2, Opcodes.LADD, Opcodes.DADD, Opcodes.LSUB, Opcodes.DSUB, Opcodes.LMUL, Opcodes.DMUL, Opcodes.LDIV,
+                Opcodes.DDIV, Opcodes.LREM, Opcodes.DREM, Opcodes.LAND, Opcodes.LOR, Opcodes.LXOR);
+        set(3, 2, Opcodes.LSHL, Opcodes.LSHR, Opcodes.LUSHR);
+        set(4, 1, Opcodes.LCMP, Opcodes.DCMPL, Opcodes.DCMPG);
+
+        set(1, 1, Opcodes.INEG, Opcodes.FNEG, Opcodes.I2F, Opcodes.F2I, Opcodes.I2B, Opcodes.I2C, Opcodes.I2S,
+                Opcodes.NEWARRAY, Opcodes.ANEWARRAY, Opcodes.ARRAYLENGTH, Opcodes.CHECKCAST, Opcodes.INSTANCEOF);
+        set(2, 2, Opcodes.LNEG, Opcodes.DNEG, Opcodes.L2D, Opcodes.D2L);
+        set(1, 2, Opcodes.I2L, Opcodes.I2D, Opcodes.F2L, Opcodes.F2D);
+        set(2, 1, Opcodes.L2I, Opcodes.L2F, Opcodes.D2I, Opcodes.D2F);
+
+        shuffle(Opcodes.DUP, 1, 0, 0);
+        shuffle(Opcodes.DUP_X1, 2, 0, 1, 0);
+        shuffle(Opcodes.DUP_X2, 3, 0, 2, 1, 0);
+        shuffle(Opcodes.DUP2, 2, 1, 0, 1, 0);
+        shuffle(Opcodes.DUP2_X1, 3, 1, 0, 2, 1, 0);
+        shuffle(Opcodes.DUP2_X2, 4, 1, 0, 3, 2, 1, 0);
+        shuffle(Opcodes.SWAP, 2, 0, 1);
+    }
+
+    private StackEffects() {
+    }
+
+    private static void set(int pops, int pushes, int... opcodes) {
+        for (int opcode : opcodes) {
+            POPS[opcode] = pops;
+            PUSHES[opcode] = pushes;
+        }
+    }
+
+    private static void shuffle(int opcode, int pops, int... pushed) {
+        set(pops, pushed.length, opcode);
+        SHUFFLES[opcode] = pushed;
+    }
+
+    /**
+     * @return number of slots the instruction takes from the stack, 0 for labels, line numbers and frames
+     */
+    static int getPops(AbstractInsnNode instruction) {
+        int opcode = instruction.getOpcode();
+        if (opcode < 0) {
+            return 0;
+        }
+
+        if (POPS[opcode] != VARIABLE) {
+            return POPS[opcode];
+        }
+
+        switch (opcode) {
+            case Opcodes.PUTSTATIC:
+                return Type.getType(((FieldInsnNode) instruction).desc).getSize();
+            case Opcodes.GETFIELD:
+                return 1;
+            case Opcodes.PUTFIELD:
+                return 1 + Type.getType(((FieldInsnNode) instruction).desc).getSize();
+            case Opcodes.INVOKEVIRTUAL:
+            case Opcodes.INVOKESPECIAL:
+            case Opcodes.INVOKEINTERFACE:
+                // the argument size includes the receiver
+                return Type.getArgumentsAndReturnSizes(((MethodInsnNode) instruction).desc) >> 2;
+            case Opcodes.INVOKESTATIC:
+                return (Type.getArgumentsAndReturnSizes(((MethodInsnNode) instruction).desc) >> 2) - 1;
+            case Opcodes.INVOKEDYNAMIC:
+                return (Type.getArgumentsAndReturnSizes(((InvokeDynamicInsnNode) instruction).desc) >> 2) - 1;
+            case Opcodes.MULTIANEWARRAY:
+                return ((MultiANewArrayInsnNode) instruction).dims;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * @return number of slots the instruction puts on the stack, 0 for labels, line numbers and frames
+     */
+    static int getPushes(AbstractInsnNode instruction) {
+        int opcode = instruction.getOpcode();
+        if (opcode < 0) {
+            return 0;
+        }
+
+        if (PUSHES[opcode] != VARIABLE) {
+            return PUSHES[opcode];
+        }
+
+        switch (opcode) {
+            case Opcodes.LDC:
+                Object constant = ((LdcInsnNode) instruction).cst;
+                return constant instanceof Long || constant instanceof Double ? 2 : 1;
+            case Opcodes.GETSTATIC:
+            case Opcodes.GETFIELD:
+                return Type.getType(((FieldInsnNode) instruction).desc).getSize();
+            case Opcodes.INVOKEVIRTUAL:
+            case Opcodes.INVOKESPECIAL:
+            case Opcodes.INVOKESTATIC:
+            case Opcodes.INVOKEINTERFACE:
+                return Type.getArgumentsAndReturnSizes(((MethodInsnNode) instruction).desc) & 0x3;
+            case Opcodes.INVOKEDYNAMIC:
+                return Type.getArgumentsAndReturnSizes(((InvokeDynamicInsnNode) instruction).desc) & 0x3;
+            case Opcodes.MULTIANEWARRAY:
+                return 1;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * @return for {@code DUP*} and {@code SWAP}: the popped slots to push (top first as 0, pushed bottom first),
+     * null for all other instructions
+     */
+    static int[] getShuffle(int opcode) {
+        return opcode < 0 ? null : SHUFFLES[opcode];
+    }
+
+    /**
+     * @return whether the flow never continues with the next instruction
+     */
+    static boolean isExit(int opcode) {
+        return opcode >= Opcodes.IRETURN && opcode <= Opcodes.RETURN || opcode == Opcodes.ATHROW;
+    }
+}
@@ -4,30 +4,81 @@ import com.android.tools.lint.client.api.JavaParser;
 import com.android.tools.lint.detector.api.JavaContext;
 import lombok.ast.*;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
+import java.util.*;
 
 /**
  * Self-made data-flow analysis for strings, operating on the Java abstract syntax tree.
+ *
+ * An instance belongs to a single compilation unit and may be reused for all expressions in it: the possible
+ * return values of every analyzed method are remembered, so helper methods are only analyzed once per file.
+ * If the {@link AnalysisBudget} runs out, the inspection stops and yields no results.
+ * <p>
+ * An instance is confined to the thread checking its compilation unit. Each inspection collects its values in a
+ * list of its own, so the results handed out stay valid while later expressions are inspected.
  */
 public class StringDataFlowDetector {
 
-    private static final boolean DEBUG = false;
+    private static final Trace TRACE = Trace.forClass(StringDataFlowDetector.class);
 
-    private JavaContext context;
+    private final JavaContext context;
 
-    private List<String> results;
+    private final ResolutionCache resolutionCache;
+
+    /** values found by the current inspection */
+    private List<String> results = Collections.emptyList();
+
+    /** method declarations of the compilation unit, built on first use */
+    private MethodDeclarationIndex methodIndex;
+
+    /** def-use indices of the already inspected method bodies (keyed by identity) */
+    private final Map<Block, VariableDefinitionIndex> variableIndices = new IdentityHashMap<>();
+
+    /** possible return values of already analyzed methods (keyed by identity) */
+    private final Map<MethodDeclaration, List<String>> methodSummaries = new IdentityHashMap<>();
+
+    /** methods currently being analyzed, the innermost one last */
+    private final List<MethodDeclaration> methodsInProgress = new ArrayList<>();
+
+    /** methods in progress that have seen an unfinished summary because of a call cycle */
+    private final Set<MethodDeclaration> incompleteSummaries = Collections.newSetFromMap(
+            new IdentityHashMap<MethodDeclaration, Boolean>());
+
+    /** number of nodes visited so far, over all inspections */
+    private long visitedNodes;
+
+    private AnalysisBudget budget;
 
     public StringDataFlowDetector(JavaContext context) {
+        this(context, new ResolutionCache(context));
+    }
+
+    /**
+     * @param resolutionCache cache of the compilation unit, shared with the calling detector
+     */
+    public StringDataFlowDetector(JavaContext context, ResolutionCache resolutionCache) {
         this.context = context;
-        results = new ArrayList<>(5);
+        this.resolutionCache = resolutionCache;
     }
 
-    private void log(String format, Object... args) {
-        if (DEBUG) {
-            System.out.println(String.format(format, args));
-        }
+    /**
+     * @param budget bounds each inspection, has to be reset by the caller before; may be null
+     */
+    public void setBudget(AnalysisBudget budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * @return true if the budget ran out during the last inspection
+     */
+    public boolean isExhausted() {
+        return budget != null && budget.isExhausted();
+    }
+
+    /**
+     * @return true if this instance analyzes the compilation unit of the given context
+     */
+    public boolean isFor(JavaContext context) {
+        return this.context == context;
     }
 
     private void addResult(String data) {
@@ -35,7 +86,7 @@ public class StringDataFlowDetector {
     }
 
     public void startInspectionOnExpression(Expression start) {
-        results.clear();
+        results = new ArrayList<>(5);
 
         if (handleSimpleFieldDereferences(start)) {
             return;
@@ -46,14 +97,14 @@ public class StringDataFlowDetector {
         firstPass.process(start);
 
         if (!firstPass.foundSomething()) {
-            log("startInspectionOnExpression: nothing found anything in first pass");
+            TRACE.event("startInspectionOnExpression: nothing found anything in first pass");
             return;
         }
 
-        log("found literals: %s", Arrays.toString(firstPass.stringLiterals.toArray()));
-        log("found selects: %s", Arrays.toString(firstPass.selects.toArray()));
-        log("found variables: %s", Arrays.toString(firstPass.variableReferences.toArray()));
-        log("found method invocations: %s", Arrays.toString(firstPass.methodInvocations.toArray()));
+        TRACE.event("found literals: %s", firstPass.stringLiterals);
+        TRACE.event("found selects: %s", firstPass.selects);
+        TRACE.event("found variables: %s", firstPass.variableReferences);
+        TRACE.event("found method invocations: %s", firstPass.methodInvocations);
 
         for (StringLiteral literal : firstPass.stringLiterals) {
             addResult(literal.astValue());
@@ -68,16 +119,30 @@ public class StringDataFlowDetector {
         handleVariableReferences(firstPass.variableReferences);
 
         handleMethodInvocations(firstPass.methodInvocations);
+
+        // values of paths not followed anymore are missing
+        if (isExhausted()) {
+            TRACE.event("startInspectionOnExpression: budget exhausted, the values are unknown");
+            results.clear();
+        }
     }
 
+    /**
+     * @return the values found by the last inspection, not changed by later ones
+     */
     public List<String> getResults() {
-        return results;
+        return Collections.unmodifiableList(results);
+    }
+
+    public long getVisitedNodes() {
+        return visitedNodes;
     }
 
     private void handleVariableReferences(List<VariableReference> variableReferences) {
         for (VariableReference variableReference : variableReferences) {
             if (!isStringReference(variableReference)) {
-//                log("handleVariableReferences: discarding %s (not a string)", variableReference.astIdentifier());
+//                TRACE.event("handleVariableReferences: discarding %s (not a string)",
+//                        variableReference.astIdentifier());
                 continue;
             }
 
@@ -90,14 +155,80 @@ public class StringDataFlowDetector {
 
     private void handleMethodInvocations(List<MethodInvocation> methodInvocations) {
         for (MethodInvocation invocation : methodInvocations) {
-            MethodValueVisitor methodVisitor = new MethodValueVisitor();
-            methodVisitor.findValuesFor(invocation);
+            handleMethodInvocation(invocation);
+        }
+    }
+
+    private void handleMethodInvocation(MethodInvocation invocation) {
+        for (MethodDeclaration declaration : findDeclarations(invocation)) {
+            for (String value : getReturnValues(declaration)) {
+                addResult(value);
+            }
+        }
+    }
+
+    private List<MethodDeclaration> findDeclarations(MethodInvocation invocation) {
+        if (methodIndex == null) {
+            Node compilationUnit = context.getCompilationUnit();
+            if (compilationUnit == null) {
+                return Collections.emptyList();
+            }
+
+            methodIndex = new MethodDeclarationIndex(compilationUnit);
+        }
+
+        return methodIndex.find(invocation.astName().astValue(), invocation.astArguments().size());
+    }
+
+    /**
+     * Returns the summary of the possible return values of the method, analyzing it if necessary. Summaries of
+     * methods that took part in a call cycle are only remembered for the method that closed the cycle, as the
+     * others have seen an unfinished result.
+     */
+    private List<String> getReturnValues(MethodDeclaration declaration) {
+        List<String> summary = methodSummaries.get(declaration);
+        if (summary != null) {
+            TRACE.event("      getReturnValues: using summary of %s", declaration.astMethodName());
+            return summary;
         }
+
+        int cycleStart = methodsInProgress.indexOf(declaration);
+        if (cycleStart != -1) {
+            TRACE.event("      getReturnValues: call cycle back to %s", declaration.astMethodName());
+            incompleteSummaries.addAll(methodsInProgress.subList(cycleStart + 1, methodsInProgress.size()));
+            return Collections.emptyList();
+        }
+
+        if (budget != null && !budget.enter()) {
+            return Collections.emptyList();
+        }
+
+        methodsInProgress.add(declaration);
+        int resultsBefore = results.size();
+
+        MethodValueVisitor methodVisitor = new MethodValueVisitor();
+        methodVisitor.findValuesFor(declaration);
+
+        methodsInProgress.remove(methodsInProgress.size() - 1);
+        if (budget != null) {
+            budget.exit();
+        }
+
+        // the results belong to the caller, which adds them itself
+        List<String> newResults = results.subList(resultsBefore, results.size());
+        summary = new ArrayList<>(newResults);
+        newResults.clear();
+
+        if (!incompleteSummaries.remove(declaration) && !isExhausted()) {
+            methodSummaries.put(declaration, summary);
+        }
+
+        return summary;
     }
 
 
     private boolean isStringReference(VariableReference variableReference) {
-        JavaParser.ResolvedNode resolvedNode = context.resolve(variableReference);
+        JavaParser.ResolvedNode resolvedNode = resolutionCache.resolve(variableReference);
         if (!(resolvedNode instanceof JavaParser.ResolvedVariable)) {
             return false;
         }
@@ -121,12 +252,12 @@ public class StringDataFlowDetector {
             return true;
         }
 
-        JavaParser.ResolvedNode resolvedNode = context.resolve(expression);
+        JavaParser.ResolvedNode resolvedNode = resolutionCache.resolve(expression);
         // resolving nodes may also fail completely, e.g. for inline if expressions
         if (resolvedNode instanceof JavaParser.ResolvedField) {
             JavaParser.ResolvedField field = (JavaParser.ResolvedField) resolvedNode;
             Object value = field.getValue();
-            log("  handleSimpleFieldDereferences: resolved field %s to value: %s", resolvedNode, value);
+            TRACE.event("  handleSimpleFieldDereferences: resolved field %s to value: %s", resolvedNode, value);
 
             if (value instanceof String) {
                 addResult((String) value);
@@ -177,6 +308,11 @@ public class StringDataFlowDetector {
             selects.add(node);
             return true;
         }
+
+        @Override
+        public void endVisit(Node node) {
+            countVisit();
+        }
     }
 
     private class StagedResultVisitor extends ForwardingAstVisitor {
@@ -190,7 +326,11 @@ public class StringDataFlowDetector {
         protected int conditionalStage = 0;
 
         protected void addToResult(Expression node) {
-            if (conditionalStage > 0) {
+            addToResult(node, conditionalStage);
+        }
+
+        protected void addToResult(Expression node, int stage) {
+            if (stage > 0) {
                 conditionalResults.add(node);
             } else {
                 results.clear();
@@ -204,6 +344,10 @@ public class StringDataFlowDetector {
             allResults.addAll(conditionalResults);
 
             for (Expression result : allResults) {
+                if (isExhausted()) {
+                    return;
+                }
+
                 if (result instanceof StringLiteral || result instanceof Select) {
                     handleSimpleFieldDereferences(result);
                 } else if (result instanceof VariableReference) {
@@ -214,19 +358,21 @@ public class StringDataFlowDetector {
 
                     // only handle methods that seem to be local
                     if (invocation.astOperand() != null && !(invocation.astOperand() instanceof This)) {
-                        log("    StagedResultVisitor.handleResults: method (%s) is not local, operand = %s (%s)",
+                        TRACE.event("    StagedResultVisitor.handleResults: method (%s) is not local, "
+                                + "operand = %s (%s)",
                                 invocation.astName(), invocation.astOperand(), invocation.astOperand().getClass());
                         continue;
                     }
 
-                    MethodValueVisitor methodVisitor = new MethodValueVisitor();
-                    methodVisitor.findValuesFor(invocation);
+                    handleMethodInvocation(invocation);
                 }
             }
         }
 
         @Override
         public void endVisit(Node node) {
+            countVisit();
+
             if (node instanceof VariableDefinitionEntry || node instanceof BinaryExpression) {
                 collectionAllowed = false;
             } else if (node instanceof InlineIfExpression || node instanceof If) {
@@ -247,11 +393,24 @@ public class StringDataFlowDetector {
         }
     }
 
-    private class VariableValueVisitor extends StagedResultVisitor {
+    private void countVisit() {
+        ++ visitedNodes;
+        if (budget != null) {
+            budget.visitNode();
+        }
+    }
+
+    private VariableDefinitionIndex getVariableIndex(Block body) {
+        VariableDefinitionIndex index = variableIndices.get(body);
+        if (index == null) {
+            index = new VariableDefinitionIndex(body);
+            variableIndices.put(body, index);
+        }
 
-        private VariableReference subject;
+        return index;
+    }
 
-        private Block visitationBoundary;
+    private class VariableValueVisitor extends StagedResultVisitor {
 
         public void findValuesFor(VariableReference variable) {
             Node surroundingMethod = JavaContext.findSurroundingMethod(variable);
@@ -261,7 +420,7 @@ public class StringDataFlowDetector {
                 return;
             }
 
-            visitationBoundary = null;
+            Block visitationBoundary = null;
             if (surroundingMethod instanceof MethodDeclaration) {
                 visitationBoundary = ((MethodDeclaration) surroundingMethod).astBody();
             } else if (surroundingMethod instanceof ConstructorDeclaration) {
@@ -272,143 +431,39 @@ public class StringDataFlowDetector {
                 throw new IllegalStateException("method body was empty");
             }
 
-            subject = variable;
-
-            // look for variable definition entry and variable writes
-            // pay attention to conditionals
-            visitationBoundary.accept(this);
-
-            // later: recurse if variable is written by method signature
-            // stop at boundary of compilation unit
-        }
-
-        private boolean isAcceptableResult(Expression expression) {
-            return expression instanceof Select || expression instanceof StringLiteral
-                    || expression instanceof MethodInvocation;
-        }
-
-        @Override
-        public boolean visitVariableDefinitionEntry(VariableDefinitionEntry node) {
-            if (!node.astName().astValue().equals(subject.astIdentifier().astValue())) {
-                return true;
-            }
-
-            if (isAcceptableResult(node.astInitializer())) {
-                log("    VariableValueVisitor.visitVariableDefinitionEntry: adding %s", node);
-                results.add(node.astInitializer());
-                return true;
-            }
-
-            collectionAllowed = true;
-            return false;
-        }
-
-        @Override
-        public void endVisit(Node node) {
-            super.endVisit(node);
-            if (node.equals(visitationBoundary)) {
-                log("    endVisit of top level method");
-                handleResults(); // this brings kind of a recursion
-            }
-        }
-
-        @Override
-        public boolean visitBinaryExpression(BinaryExpression node) {
-            if (!(node.astLeft() instanceof VariableReference)) {
-                return true;
-            }
-
-            VariableReference reference = ((VariableReference) node.astLeft());
-            String assignmentVarName = reference.astIdentifier().astValue();
-            if (!assignmentVarName.equals(subject.astIdentifier().astValue())) {
-                return true;
-            }
-
-            log("    VariableValueVisitor.visitBinaryExpression: %s", node);
-
-            if (!node.astOperator().isAssignment()) {
-                log("    VariableValueVisitor.visitBinaryExpression: not an assignment (type = %s)", node.astOperator());
-                return true; // we are only interested in assignments
-            }
-
-            collectionAllowed = true;
-            return false; // inspect statement further
-        }
-
-        @Override
-        public boolean visitExpressionStatement(ExpressionStatement node) {
-            if (conditionalStage == 0) {
-                return false; // do not return true as blocks that yet have to be discovered should still be included
-            }
-
-            log("    VariableValueVisitor.visitExpressionStatement: %s", node);
-            return super.visitExpressionStatement(node);
-        }
-
-        @Override
-        public boolean visitStringLiteral(StringLiteral node) {
-            if (!collectionAllowed) {
-                return true;
-            }
-
-            addToResult(node);
-            return true;
-        }
-
-        @Override
-        public boolean visitVariableReference(VariableReference node) {
-            if (!collectionAllowed) {
-                return true;
+            if (budget != null && !budget.enter()) {
+                return;
             }
 
-            if (node.astIdentifier().astValue().equals(subject.astIdentifier().astValue())) {
-                return true; // this a assignment to the subject variable
+            // variable definition entries and variable writes, with the conditionals they are nested in
+            String name = variable.astIdentifier().astValue();
+            for (VariableDefinitionIndex.Definition definition : getVariableIndex(visitationBoundary).getDefinitions(name)) {
+                if (definition.isInitializer()) {
+                    TRACE.event("    VariableValueVisitor.findValuesFor: adding %s", definition.getValue());
+                    results.add(definition.getValue());
+                } else {
+                    addToResult(definition.getValue(), definition.getConditionalStage());
+                }
             }
 
-            addToResult(node);
-            return super.visitVariableReference(node);
-        }
+            handleResults(); // this brings kind of a recursion
 
-        @Override
-        public boolean visitMethodInvocation(MethodInvocation node) {
-            if (!collectionAllowed) {
-                log("    VariableValueVisitor.visitMethodInvocation (%s): collection not allowed", node);
-                return true;
+            if (budget != null) {
+                budget.exit();
             }
 
-            addToResult(node);
-            return super.visitMethodInvocation(node);
-        }
-
-        @Override
-        public boolean visitSelect(Select node) {
-            if (!collectionAllowed) {
-                log("    VariableValueVisitor.visitSelect (%s): collection not allowed", node);
-                return true;
-            }
-
-            log("    VariableValueVisitor.visitSelect: %s", node);
-            addToResult(node);
-
-            // DO NOT CHANGE as e.g. "LocationManager.GPS_PROVIDER" would add a false VariableReference
-            // to LocationManager otherwise instead
-            return true;
+            // later: recurse if variable is written by method signature
+            // stop at boundary of compilation unit
         }
     }
 
     private class MethodValueVisitor extends StagedResultVisitor {
 
-        private MethodInvocation subject;
-
-        private CompilationUnit compilationUnit;
-
         private MethodDeclaration visitationBoundary;
 
-        public void findValuesFor(MethodInvocation method) {
-            subject = method;
-
-            compilationUnit = (CompilationUnit) context.getCompilationUnit();
-            compilationUnit.accept(this);
+        public void findValuesFor(MethodDeclaration method) {
+            visitationBoundary = method;
+            method.accept(this);
         }
 
         @Override
@@ -417,26 +472,24 @@ public class StringDataFlowDetector {
             if (node.getClass() == Return.class) {
                 collectionAllowed = false;
             } else if (node.equals(visitationBoundary)) {
-                log("      MethodValueVisitor.endVisit of top level method");
+                TRACE.event("      MethodValueVisitor.endVisit of top level method");
                 handleResults(); // this brings kind of a recursion
             }
         }
 
         @Override
         public boolean visitMethodDeclaration(MethodDeclaration node) {
-            if (!node.astMethodName().astValue().equals(subject.astName().astValue())) {
-                return true;
+            if (node != visitationBoundary) {
+                return true; // e.g. methods of anonymous classes
             }
 
-            visitationBoundary = node;
-
-            log("      MethodValueVisitor.visitMethodDeclaration: %s", node.astMethodName());
+            TRACE.event("      MethodValueVisitor.visitMethodDeclaration: %s", node.astMethodName());
             return super.visitMethodDeclaration(node);
         }
 
         @Override
         public boolean visitReturn(Return node) {
-            log("      MethodValueVisitor.visitReturn: %s", node);
+            TRACE.event("      MethodValueVisitor.visitReturn: %s", node);
             collectionAllowed = true;
             return false;
         }
@@ -447,7 +500,7 @@ public class StringDataFlowDetector {
                 return true;
             }
 
-            log("      MethodValueVisitor.visitStringLiteral: %s", node);
+            TRACE.event("      MethodValueVisitor.visitStringLiteral: %s", node);
             addToResult(node);
             return true;
         }
@@ -458,7 +511,7 @@ public class StringDataFlowDetector {
                 return true;
             }
 
-            log("      MethodValueVisitor.visitSelect: %s", node);
+            TRACE.event("      MethodValueVisitor.visitSelect: %s", node);
             addToResult(node);
             return true;
         }
@@ -469,15 +522,10 @@ public class StringDataFlowDetector {
                 return true;
             }
 
-            // prevent recursion by checking calls to current method
-            if (node.astName().astValue().equals(subject.astName().astValue())) {
-                return true;
-            }
-
-            log("      MethodValueVisitor.visitMethodInvocation: %s", node);
+            TRACE.event("      MethodValueVisitor.visitMethodInvocation: %s", node);
 
-            MethodValueVisitor methodVisitor = new MethodValueVisitor();
-            methodVisitor.findValuesFor(node);
+            // recursion is detected by getReturnValues
+            handleMethodInvocation(node);
 
             return true;
         }
@@ -488,7 +536,7 @@ public class StringDataFlowDetector {
                 return true;
             }
 
-            log("      MethodValueVisitor.visitVariableReference: %s", node);
+            TRACE.event("      MethodValueVisitor.visitVariableReference: %s", node);
 
             // inspect further using VariableValueVisitor
             VariableValueVisitor valueVisitor = new VariableValueVisitor();
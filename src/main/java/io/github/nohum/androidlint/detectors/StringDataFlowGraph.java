@@ -1,160 +1,397 @@
 package io.github.nohum.androidlint.detectors;
 
 import com.android.tools.lint.checks.ControlFlowGraph;
-import com.sun.org.apache.bcel.internal.generic.Type;
 import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
 import org.objectweb.asm.tree.*;
 
 import java.util.*;
 
 /**
  * Data-flow analysis using the builtin ControlFlowGraph, operating on byte-code.
+ *
+ * The graph is evaluated with a worklist: every node keeps one abstract stack state which is
+ * merged with the states of all incoming edges until nothing changes anymore. Hence the work
+ * done depends on the size of the method and not on the number of paths through it. The stacks
+ * are persistent lists sharing their lower parts, so a state is handed to all successors without
+ * being copied, and merging stops at the part both stacks have in common.
+ *
+ * Exception edges are added once per protected range, not once per instruction in it, and a handler is entered
+ * once, as its state is always the same: nothing but the exception on the stack.
+ *
+ * The stack effect of each instruction is taken from {@link StackEffects}. Methods without jumps and
+ * exception handlers need no graph: their instructions are evaluated once in order, see
+ * {@link #isStraightLine(MethodNode)}.
+ *
+ * Arguments that are the result of another call are resolved with {@link ReturnValueSummaries}, if available.
+ * If the {@link AnalysisBudget} runs out, the evaluation stops and the arguments of all calls are unknown.
+ *
+ * A graph is the analysis of one method and is confined to the thread building it; only the recorded arguments are
+ * handed out, as copies.
  */
-public class StringDataFlowGraph extends ControlFlowGraph {
+public class StringDataFlowGraph extends ControlFlowGraph implements ProviderAnalysis {
 
-    private static final boolean DEBUG = false;
+    private static final Trace TRACE = Trace.forClass(StringDataFlowGraph.class);
 
-    private boolean thisDiscarded = false;
+    /** After that many changes of a loop header state, all values on its stack are considered unknown */
+    private static final int WIDENING_THRESHOLD = 3;
 
-    private List<String> possibleProviders;
+    /** maps each recorded call to the argument index that should be recorded */
+    private final Map<MethodInsnNode, Integer> subjectMethodCalls;
 
-    private MethodInsnNode subjectMethodCall;
+    private final Map<MethodInsnNode, Set<String>> possibleProviders;
 
-    private int desiredArgumentCount;
+    private ReturnValueSummaries returnValueSummaries;
+
+    private AnalysisBudget budget;
+
+    private boolean analyzed = false;
+
+    /** number of times a node has been inspected */
+    private int visitedNodes;
+
+    /** try-catch blocks whose exception edges have been added */
+    private final Set<TryCatchBlockNode> protectedRanges = Collections.newSetFromMap(
+            new IdentityHashMap<TryCatchBlockNode, Boolean>());
+
+    /** number of instructions of protected ranges walked to add their exception edges */
+    private int walkedRangeInstructions;
 
     /**
      * @param methodCall the desired method
      * @param desiredArgumentCount specifies the argument index to record (when calling the method, zero-based).
      */
     public StringDataFlowGraph(MethodInsnNode methodCall, int desiredArgumentCount) {
-        possibleProviders = new ArrayList<>();
-        this.subjectMethodCall = methodCall;
-        this.desiredArgumentCount = desiredArgumentCount;
+        this(Collections.singletonMap(methodCall, desiredArgumentCount));
     }
 
-    private void log(String format, Object... args) {
-        if (DEBUG) {
-            System.out.println(String.format(format, args));
+    /**
+     * Records the arguments of several calls of the same method at once, so the graph has to be evaluated
+     * only a single time.
+     *
+     * @param methodCalls the desired calls, mapped to the argument index to record (zero-based).
+     */
+    public StringDataFlowGraph(Map<MethodInsnNode, Integer> methodCalls) {
+        subjectMethodCalls = new IdentityHashMap<>(methodCalls);
+        possibleProviders = new IdentityHashMap<>();
+        for (MethodInsnNode call : methodCalls.keySet()) {
+            possibleProviders.put(call, new LinkedHashSet<String>());
         }
     }
 
-    private void logIndent(int level, String format, Object... args) {
-        if (DEBUG) {
-            StringBuilder builder = new StringBuilder();
-            for (int i = 0; i <= level; ++ i) {
-                builder.append(" ");
-            }
+    /**
+     * @param returnValueSummaries used to resolve arguments returned by other calls, may be null
+     */
+    public void setReturnValueSummaries(ReturnValueSummaries returnValueSummaries) {
+        this.returnValueSummaries = returnValueSummaries;
+    }
 
-            builder.append(format);
-            System.out.println(String.format(builder.toString(), args));
-        }
+    /**
+     * @param budget bounds the evaluation, may be null
+     */
+    public void setBudget(AnalysisBudget budget) {
+        this.budget = budget;
     }
 
+    /**
+     * Evaluates the graph (if not yet done) and returns the recorded arguments of all desired calls.
+     */
     public List<String> getPossibleProviders(MethodNode method) {
-        log("getPossibleProviders: %s -----------------------------------", method.name);
+        analyze(method);
 
-        Queue<AbstractInsnNode> varsOnStack = new ArrayDeque<AbstractInsnNode>();
-        Node node = getNode(method.instructions.getFirst());
-        inspectNode(node, varsOnStack, 0);
+        Set<String> providers = new LinkedHashSet<>();
+        for (Set<String> callProviders : possibleProviders.values()) {
+            providers.addAll(callProviders);
+        }
 
-        return possibleProviders;
+        return new ArrayList<>(providers);
     }
 
-    private void inspectNode(Node node, Queue<AbstractInsnNode> varsOnStack, int debugIndentation) {
-        if (isNotMarkerInstruction(node)) {
-            logIndent(debugIndentation, "inspecting node: %s", nodeToString(node.instruction));
+    /**
+     * @return the recorded arguments of the given call, {@link #analyze(MethodNode)} must have been invoked before
+     */
+    @Override
+    public List<String> getPossibleProviders(MethodInsnNode call) {
+        Set<String> providers = possibleProviders.get(call);
+        if (providers == null) {
+            return Collections.emptyList();
         }
 
-        if (isGeneralVarAddInstruction(node)) {
-            logIndent(debugIndentation, "node adds var on stack (curr: %d) -> %s", varsOnStack.size(),
-                    nodeToString(node.instruction));
-            varsOnStack.add(node.instruction);
+        return new ArrayList<>(providers);
+    }
+
+    /**
+     * The graph adds edges from all calls in the protected range to the handler whenever an instruction in it may
+     * throw, i.e. it walks the range once per instruction in it. The edges are the same every time, hence the range
+     * is only walked for the first one.
+     */
+    @Override
+    protected void exception(AbstractInsnNode from, TryCatchBlockNode tcb) {
+        if (protectedRanges.add(tcb)) {
+            super.exception(from, tcb);
+            for (AbstractInsnNode instruction = tcb.start; instruction != null && instruction != tcb.end;
+                    instruction = instruction.getNext()) {
+                ++ walkedRangeInstructions;
+            }
         }
+    }
 
-        // special case! may store opcode for loading as well as storing
-        handleSpecialVarInstruction(node, varsOnStack, debugIndentation);
-        handleMethodCallInstruction(node, varsOnStack, debugIndentation);
-        handleSuccessors(node, varsOnStack, debugIndentation);
+    /**
+     * @return number of instructions walked to add the exception edges while the graph was built
+     */
+    public int getWalkedRangeInstructions() {
+        return walkedRangeInstructions;
+    }
+
+    /**
+     * @return number of node inspections so far, nodes of loops are inspected several times
+     */
+    public int getVisitedNodes() {
+        return visitedNodes;
     }
 
-    private boolean isNotMarkerInstruction(Node node) {
-        return node.instruction.getClass() != LabelNode.class && node.instruction.getClass() != LineNumberNode.class;
+    /**
+     * @return whether the method has neither jumps nor exception handlers, the graph needs not be built for it then
+     */
+    public static boolean isStraightLine(MethodNode method) {
+        if (method.tryCatchBlocks != null && !method.tryCatchBlocks.isEmpty()) {
+            return false;
+        }
+
+        for (AbstractInsnNode instruction = method.instructions.getFirst(); instruction != null;
+                instruction = instruction.getNext()) {
+            int type = instruction.getType();
+            if (type == AbstractInsnNode.JUMP_INSN || type == AbstractInsnNode.TABLESWITCH_INSN
+                    || type == AbstractInsnNode.LOOKUPSWITCH_INSN || instruction.getOpcode() == Opcodes.RET) {
+                return false;
+            }
+        }
+
+        return true;
     }
 
-    private void handleMethodCallInstruction(Node node, Queue<AbstractInsnNode> varsOnStack, int debugIndentation) {
-        if (node.instruction.getClass() == MethodInsnNode.class) {
-            MethodInsnNode currentMethodCall = (MethodInsnNode) node.instruction;
-            Type[] args = Type.getArgumentTypes(currentMethodCall.desc);
+    /**
+     * Evaluates the graph once, recording the arguments of all desired calls. For a method that
+     * {@link #isStraightLine(MethodNode) is straight-line}, the graph is not used and may be empty.
+     */
+    public void analyze(MethodNode method) {
+        if (analyzed) {
+            return;
+        }
+
+        analyzed = true;
+        TRACE.event("analyze: %s -----------------------------------", method.name);
+
+        if (isStraightLine(method)) {
+            analyzeLinearly(method);
+        } else {
+            analyzeGraph(method);
+        }
 
-            logIndent(debugIndentation, "call is on stack: %s with %d args", currentMethodCall.name, args.length);
+        // arguments recorded so far may lack values of paths not yet evaluated
+        if (budget != null && budget.isExhausted()) {
+            TRACE.event("budget exhausted, all arguments are unknown");
+            for (Set<String> providers : possibleProviders.values()) {
+                providers.clear();
+            }
+        }
+    }
 
-            boolean recordArgument = false;
-            if (currentMethodCall.equals(subjectMethodCall)) {
-                logIndent(debugIndentation, "-- this call is actually our desired call");
-                recordArgument = true;
+    private void analyzeLinearly(MethodNode method) {
+        StackState state = new StackState();
+        for (AbstractInsnNode instruction = method.instructions.getFirst(); instruction != null;
+                instruction = instruction.getNext()) {
+            if (budget != null && !budget.visitNode()) {
+                return;
             }
 
-            for (int i = 0; i < args.length; ++ i) {
-                AbstractInsnNode argNode = varsOnStack.poll();
-                if (recordArgument && desiredArgumentCount == i) {
-                    if (argNode == null) {
-                        logIndent(debugIndentation, "warning: not recording argument (is null)");
-                    } else if (argNode.getClass() == LdcInsnNode.class) {
-                        possibleProviders.add(String.valueOf(((LdcInsnNode) argNode).cst));
-                    } else {
-                        logIndent(debugIndentation, "warning: not recording argument (is not LDC)");
-                    }
-                }
+            inspectInstruction(instruction, state);
+            ++ visitedNodes;
 
-                logIndent(debugIndentation, "call argument %d: %s", i, nodeToString(argNode));
+            // anything after is unreachable
+            if (StackEffects.isExit(instruction.getOpcode())) {
+                return;
             }
-            logIndent(debugIndentation, "-- after this call, %d arguments are on the stack", varsOnStack.size());
         }
     }
 
-    private void handleSpecialVarInstruction(Node node, Queue<AbstractInsnNode> varsOnStack, int debugIndentation) {
-        if (node.instruction.getClass() == VarInsnNode.class) {
-            VarInsnNode varInsnNode = (VarInsnNode) node.instruction;
+    private void analyzeGraph(MethodNode method) {
+        Node start = getNode(method.instructions.getFirst());
+        if (start == null) {
+            return;
+        }
 
-            if (varInsnNode.getOpcode() == Opcodes.ILOAD || varInsnNode.getOpcode() == Opcodes.LLOAD
-                    || varInsnNode.getOpcode() == Opcodes.FLOAD || varInsnNode.getOpcode() == Opcodes.DLOAD
-                    || varInsnNode.getOpcode() == Opcodes.ALOAD) {
-                logIndent(debugIndentation, "node is VarInsnNode which loads var (curr: %d)", varsOnStack.size());
+        Map<Node, StackState> states = new HashMap<>();
+        Map<Node, Integer> changes = new HashMap<>();
+        Set<Node> queued = new HashSet<>();
+        Set<Node> enteredHandlers = new HashSet<>();
+        Deque<Node> worklist = new ArrayDeque<>();
+
+        // a catch handler is entered with nothing but the exception on the stack
+        StackState handlerState = new StackState();
+        handlerState.push(Value.UNKNOWN);
+
+        states.put(start, new StackState());
+        worklist.add(start);
+        queued.add(start);
+
+        while (!worklist.isEmpty()) {
+            if (budget != null && !budget.visitNode()) {
+                break;
+            }
+
+            Node node = worklist.poll();
+            queued.remove(node);
+
+            // states are never changed once they are stored, hence the successors share this one
+            StackState state = states.get(node).copy();
+            inspectInstruction(node.instruction, state);
+            ++ visitedNodes;
 
-                if (thisDiscarded) {
-                    varsOnStack.add(node.instruction);
-                } else if (varInsnNode.getOpcode() == Opcodes.ALOAD) {
-                    logIndent(debugIndentation, "node is VarInsnNode - first call, variable should be \"this\" - discarding!");
-                    thisDiscarded = true;
+            for (Node successor : node.successors) {
+                propagate(method, node, successor, state, states, changes, worklist, queued);
+            }
+
+            for (Node handler : node.exceptions) {
+                if (enteredHandlers.add(handler)) {
+                    propagate(method, node, handler, handlerState, states, changes, worklist, queued);
                 }
-            } else if (varInsnNode.getOpcode() == Opcodes.ISTORE || varInsnNode.getOpcode() == Opcodes.LSTORE
-                    || varInsnNode.getOpcode() == Opcodes.FSTORE || varInsnNode.getOpcode() == Opcodes.DSTORE
-                    || varInsnNode.getOpcode() == Opcodes.ASTORE) {
-                logIndent(debugIndentation, "node is VarInsnNode which stores var (curr: %d)", varsOnStack.size());
-                varsOnStack.poll();
             }
         }
     }
 
-    private void handleSuccessors(Node node, Queue<AbstractInsnNode> varsOnStack, int debugIndentation) {
-        for (Node successor : node.successors) {
-            int level = debugIndentation;
-            // these nodes clutter the output, suppress them
-            if (isNotMarkerInstruction(node)) {
-                ++ level;
+    private void propagate(MethodNode method, Node node, Node successor, StackState incoming,
+                           Map<Node, StackState> states, Map<Node, Integer> changes, Deque<Node> worklist,
+                           Set<Node> queued) {
+        StackState existing = states.get(successor);
+        StackState merged = existing == null ? incoming : existing.merge(incoming);
+        if (merged.equals(existing)) {
+            return;
+        }
+
+        if (existing != null && isBackEdge(method, node, successor)) {
+            Integer count = changes.get(successor);
+            count = count == null ? 1 : count + 1;
+            changes.put(successor, count);
+
+            if (count > WIDENING_THRESHOLD) {
+                if (Trace.ENABLED) {
+                    TRACE.event("widening state at %s", nodeToString(successor.instruction));
+                }
+                merged = merged.widen();
+            }
+        }
+
+        states.put(successor, merged);
+        if (queued.add(successor)) {
+            worklist.add(successor);
+        }
+    }
+
+    private boolean isBackEdge(MethodNode method, Node from, Node to) {
+        return method.instructions.indexOf(to.instruction) <= method.instructions.indexOf(from.instruction);
+    }
+
+    private void inspectInstruction(AbstractInsnNode instruction, StackState state) {
+        int opcode = instruction.getOpcode();
+        if (opcode < 0) {
+            // labels, line numbers and frames
+            return;
+        }
+
+        if (Trace.ENABLED) {
+            TRACE.event("inspecting instruction: %s (stack: %d)", nodeToString(instruction), state.size());
+        }
+
+        if (instruction.getClass() == MethodInsnNode.class) {
+            handleMethodCallInstruction((MethodInsnNode) instruction, state);
+            return;
+        }
+
+        int[] shuffle = StackEffects.getShuffle(opcode);
+        if (shuffle != null) {
+            Value[] popped = new Value[StackEffects.getPops(instruction)];
+            for (int i = 0; i < popped.length; ++ i) {
+                popped[i] = state.pop();
             }
 
-            inspectNode(successor, copyQueue(varsOnStack), level);
+            for (int index : shuffle) {
+                state.push(popped[index]);
+            }
+            return;
+        }
+
+        // a cast leaves the value as it is
+        if (opcode == Opcodes.CHECKCAST) {
+            return;
+        }
+
+        for (int i = StackEffects.getPops(instruction); i > 0; -- i) {
+            state.pop();
+        }
+
+        int pushes = StackEffects.getPushes(instruction);
+        if (pushes > 0) {
+            Value value = Value.of(instruction);
+            for (int i = 0; i < pushes; ++ i) {
+                state.push(value);
+            }
         }
     }
 
-    private boolean isGeneralVarAddInstruction(Node node) {
-        return node.instruction.getClass() == InsnNode.class || node.instruction.getClass() == FieldInsnNode.class
-            || node.instruction.getClass() == IntInsnNode.class || node.instruction.getClass() == LdcInsnNode.class;
+    private void handleMethodCallInstruction(MethodInsnNode currentMethodCall, StackState state) {
+        Type[] args = Type.getArgumentTypes(currentMethodCall.desc);
+
+        TRACE.event("call is on stack: %s with %d args", currentMethodCall.name, args.length);
+
+        Integer desiredArgumentCount = subjectMethodCalls.get(currentMethodCall);
+        if (desiredArgumentCount != null) {
+            TRACE.event("-- this call is actually one of our desired calls");
+        }
+
+        // the last argument is on top of the stack, long and double arguments take two slots
+        for (int i = args.length - 1; i >= 0; -- i) {
+            Value argValue = state.pop();
+            for (int slot = 1; slot < args[i].getSize(); ++ slot) {
+                state.pop();
+            }
+
+            if (desiredArgumentCount != null && desiredArgumentCount == i) {
+                recordArgument(currentMethodCall, argValue);
+            }
+
+            TRACE.event("call argument %d: %s", i, argValue);
+        }
+
+        if (currentMethodCall.getOpcode() != Opcodes.INVOKESTATIC) {
+            state.pop();
+        }
+
+        int returnSize = Type.getReturnType(currentMethodCall.desc).getSize();
+        if (returnSize > 0) {
+            Value value = Value.of(currentMethodCall);
+            for (int i = 0; i < returnSize; ++ i) {
+                state.push(value);
+            }
+        }
+        TRACE.event("-- after this call, %d slots are on the stack", state.size());
     }
 
-    private Queue<AbstractInsnNode> copyQueue(Queue<AbstractInsnNode> varsOnStack) {
-        return new ArrayDeque<AbstractInsnNode>(varsOnStack);
+    private void recordArgument(MethodInsnNode call, Value argValue) {
+        if (argValue.isUnknown()) {
+            TRACE.event("warning: not recording argument (is unknown)");
+            return;
+        }
+
+        for (AbstractInsnNode source : argValue.sources) {
+            if (source.getClass() == LdcInsnNode.class) {
+                possibleProviders.get(call).add(String.valueOf(((LdcInsnNode) source).cst));
+            } else if (source.getClass() == MethodInsnNode.class && returnValueSummaries != null) {
+                possibleProviders.get(call).addAll(returnValueSummaries.getReturnedStrings((MethodInsnNode) source));
+            } else {
+                TRACE.event("warning: not recording argument (is not LDC)");
+            }
+        }
     }
 
     private String nodeToString(AbstractInsnNode instruction) {
@@ -189,4 +426,213 @@ public class StringDataFlowGraph extends ControlFlowGraph {
 
         return instruction.getClass().toString();
     }
+
+    /**
+     * Abstract value on the stack: the set of instructions that may have produced it.
+     */
+    private static final class Value {
+
+        private static final Value UNKNOWN = new Value(null);
+
+        private final Set<AbstractInsnNode> sources;
+
+        private Value(Set<AbstractInsnNode> sources) {
+            this.sources = sources;
+        }
+
+        static Value of(AbstractInsnNode source) {
+            return new Value(Collections.singleton(source));
+        }
+
+        boolean isUnknown() {
+            return sources == null;
+        }
+
+        Value merge(Value other) {
+            if (isUnknown() || other.isUnknown()) {
+                return UNKNOWN;
+            }
+
+            if (sources.containsAll(other.sources)) {
+                return this;
+            }
+
+            Set<AbstractInsnNode> union = new HashSet<>(sources);
+            union.addAll(other.sources);
+            return new Value(union);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+
+            if (!(o instanceof Value)) {
+                return false;
+            }
+
+            Value other = (Value) o;
+            return sources == null ? other.sources == null : sources.equals(other.sources);
+        }
+
+        @Override
+        public int hashCode() {
+            return sources == null ? 0 : sources.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return isUnknown() ? "<unknown>" : String.valueOf(sources.size()) + " source(s)";
+        }
+    }
+
+    /**
+     * Element of a persistent stack. Stacks share their lower elements, which are never changed.
+     */
+    private static final class Cell {
+        final Value value;
+        final Cell next;
+
+        Cell(Value value, Cell next) {
+            this.value = value;
+            this.next = next;
+        }
+    }
+
+    /**
+     * Abstract operand stack at a node, one value per slot. When stacks of different heights are merged,
+     * only the common top part is kept and everything below is unknown.
+     * <p>
+     * The values are kept in a persistent list with the top first, hence a copy is just a new head. Only
+     * {@link #push} and {@link #pop} change a state, and only while its node is inspected.
+     */
+    private static final class StackState {
+
+        private Cell top;
+
+        private int size;
+
+        private boolean bottomUnknown;
+
+        StackState() {
+        }
+
+        private StackState(Cell top, int size, boolean bottomUnknown) {
+            this.top = top;
+            this.size = size;
+            this.bottomUnknown = bottomUnknown;
+        }
+
+        StackState copy() {
+            return new StackState(top, size, bottomUnknown);
+        }
+
+        int size() {
+            return size;
+        }
+
+        void push(Value value) {
+            top = new Cell(value, top);
+            ++ size;
+        }
+
+        Value pop() {
+            if (top == null) {
+                return Value.UNKNOWN;
+            }
+
+            Value value = top.value;
+            top = top.next;
+            -- size;
+            return value;
+        }
+
+        /**
+         * @return this state if the other one adds nothing to it, a new state otherwise
+         */
+        StackState merge(StackState other) {
+            if (this == other) {
+                return this;
+            }
+
+            int height = Math.min(size, other.size);
+            boolean mergedBottomUnknown = bottomUnknown || other.bottomUnknown || size != other.size;
+            boolean unchanged = size == height && mergedBottomUnknown == bottomUnknown;
+
+            // merge from the top until both stacks continue with the same cells
+            Value[] values = new Value[height];
+            Cell cell = top;
+            Cell otherCell = other.top;
+            Cell shared = null;
+            int count = 0;
+            while (count < height) {
+                if (cell == otherCell) {
+                    shared = cell;
+                    break;
+                }
+
+                values[count] = cell.value.merge(otherCell.value);
+                unchanged &= values[count] == cell.value;
+                cell = cell.next;
+                otherCell = otherCell.next;
+                ++ count;
+            }
+
+            if (unchanged) {
+                return this;
+            }
+
+            for (int i = count - 1; i >= 0; -- i) {
+                shared = new Cell(values[i], shared);
+            }
+
+            return new StackState(shared, height, mergedBottomUnknown);
+        }
+
+        StackState widen() {
+            Cell widened = null;
+            for (int i = 0; i < size; ++ i) {
+                widened = new Cell(Value.UNKNOWN, widened);
+            }
+
+            return new StackState(widened, size, bottomUnknown);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+
+            if (!(o instanceof StackState)) {
+                return false;
+            }
+
+            StackState other = (StackState) o;
+            if (size != other.size || bottomUnknown != other.bottomUnknown) {
+                return false;
+            }
+
+            // the remaining cells are equal once both stacks share them
+            for (Cell cell = top, otherCell = other.top; cell != otherCell; cell = cell.next,
+                    otherCell = otherCell.next) {
+                if (!cell.value.equals(otherCell.value)) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = size;
+            for (Cell cell = top; cell != null; cell = cell.next) {
+                hash = hash * 31 + cell.value.hashCode();
+            }
+
+            return hash;
+        }
+    }
 }
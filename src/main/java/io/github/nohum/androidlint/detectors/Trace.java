@@ -0,0 +1,216 @@
+package io.github.nohum.androidlint.detectors;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IllegalFormatException;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Traces what the detectors and analyses do, instead of debug output to {@code System.out} that had to be compiled
+ * in. Tracing is on if {@link AnalysisOptions#getTraceFile() a trace file} is given. Otherwise {@link #ENABLED} is
+ * constantly false and an event costs nothing but testing it: messages are formats with their arguments passed by
+ * fixed-arity overloads, numbers as {@code long}, so no varargs array, boxed number or string is created. Callers
+ * guard arguments that are expensive to compute by {@link #ENABLED} themselves.
+ * <p>
+ * When on, events are recorded with their time, thread and source into a ring buffer of
+ * {@link AnalysisOptions#getTraceBufferSize()} events, overwriting the oldest. Arguments are turned into strings when
+ * recorded, messages are only formatted when written. The events recorded since the last dump and still in the buffer
+ * are appended to the trace file by {@link #dump}, which is done whenever an {@link AnalysisBudget} runs out and
+ * when the JVM exits.
+ * <p>
+ * Each class traces through its own instance, e.g. {@code private static final Trace TRACE =
+ * Trace.forClass(FindingsCache.class)}. Tracing is thread-safe.
+ */
+public final class Trace {
+
+    static final boolean ENABLED = AnalysisOptions.getTraceFile() != null;
+
+    private static final long START = System.nanoTime();
+
+    /** ring buffer, the event with sequence number n at n modulo its length; null if tracing is off */
+    private static final Event[] events = ENABLED ? new Event[AnalysisOptions.getTraceBufferSize()] : null;
+
+    private static final Object[] NO_ARGS = new Object[0];
+
+    /** number of events recorded so far, guarded by {@link #events} */
+    private static long recorded;
+
+    /** number of events recorded before the last dump, guarded by {@link #events} */
+    private static long dumped;
+
+    static {
+        if (ENABLED) {
+            Runtime.getRuntime().addShutdownHook(new Thread("trace dump") {
+                @Override
+                public void run() {
+                    dump("exit");
+                }
+            });
+        }
+    }
+
+    /** One recorded event, immutable */
+    private static final class Event {
+        final long nanos;
+        final String thread;
+        final String source;
+        final String format;
+
+        /** strings, or longs for numbers */
+        final Object[] args;
+
+        Event(String source, String format, Object[] args) {
+            nanos = System.nanoTime() - START;
+            thread = Thread.currentThread().getName();
+            this.source = source;
+            this.format = format;
+            this.args = args;
+        }
+
+        @Override
+        public String toString() {
+            String message;
+            try {
+                message = String.format(Locale.ROOT, format, args);
+            } catch (IllegalFormatException e) {
+                message = format + " " + Arrays.toString(args);
+            }
+
+            return String.format(Locale.ROOT, "%12.3f ms [%s] %s: %s", nanos / 1e6, thread, source, message);
+        }
+    }
+
+    private final String source;
+
+    private Trace(String source) {
+        this.source = source;
+    }
+
+    /**
+     * @return the trace of the events of the given class
+     */
+    public static Trace forClass(Class<?> type) {
+        return new Trace(type.getSimpleName());
+    }
+
+    /**
+     * @return whether events are recorded
+     */
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    public void event(String message) {
+        if (ENABLED) {
+            record(message, NO_ARGS);
+        }
+    }
+
+    public void event(String format, Object arg) {
+        if (ENABLED) {
+            record(format, new Object[] {String.valueOf(arg)});
+        }
+    }
+
+    public void event(String format, Object arg1, Object arg2) {
+        if (ENABLED) {
+            record(format, new Object[] {String.valueOf(arg1), String.valueOf(arg2)});
+        }
+    }
+
+    public void event(String format, Object arg1, Object arg2, Object arg3) {
+        if (ENABLED) {
+            record(format, new Object[] {String.valueOf(arg1), String.valueOf(arg2), String.valueOf(arg3)});
+        }
+    }
+
+    public void event(String format, long arg) {
+        if (ENABLED) {
+            record(format, new Object[] {arg});
+        }
+    }
+
+    public void event(String format, long arg1, long arg2) {
+        if (ENABLED) {
+            record(format, new Object[] {arg1, arg2});
+        }
+    }
+
+    public void event(String format, Object arg1, long arg2) {
+        if (ENABLED) {
+            record(format, new Object[] {String.valueOf(arg1), arg2});
+        }
+    }
+
+    public void event(String format, long arg1, Object arg2) {
+        if (ENABLED) {
+            record(format, new Object[] {arg1, String.valueOf(arg2)});
+        }
+    }
+
+    public void event(String format, Object arg1, long arg2, long arg3) {
+        if (ENABLED) {
+            record(format, new Object[] {String.valueOf(arg1), arg2, arg3});
+        }
+    }
+
+    private void record(String format, Object[] args) {
+        Event event = new Event(source, format, args);
+        synchronized (events) {
+            events[(int) (recorded % events.length)] = event;
+            ++ recorded;
+        }
+    }
+
+    /**
+     * Appends the events recorded since the last dump to the trace file, as far as they are still in the buffer.
+     * Does nothing if tracing is off.
+     *
+     * @param reason written in the header of the dump
+     */
+    public static void dump(String reason) {
+        if (!ENABLED) {
+            return;
+        }
+
+        List<Event> pending = new ArrayList<>();
+        long overwritten;
+        synchronized (events) {
+            long first = Math.max(dumped, recorded - events.length);
+            overwritten = first - dumped;
+            for (long i = first; i < recorded; ++ i) {
+                pending.add(events[(int) (i % events.length)]);
+            }
+
+            dumped = recorded;
+        }
+
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        // dumps of several threads must not be interleaved
+        synchronized (Trace.class) {
+            File file = new File(AnalysisOptions.getTraceFile());
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true),
+                    StandardCharsets.UTF_8))) {
+                writer.write(String.format(Locale.ROOT, "=== %s: %d events, %d overwritten before%n", reason,
+                        pending.size(), overwritten));
+                for (Event event : pending) {
+                    writer.write(event.toString());
+                    writer.write(System.lineSeparator());
+                }
+            } catch (IOException e) {
+                System.err.println("could not write trace " + file + ": " + e);
+            }
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package io.github.nohum.androidlint.detectors;
+
+import lombok.ast.*;
+
+import java.util.*;
+
+/**
+ * Def-use index of a method body: maps every local variable (by name) to the expressions written to it, in
+ * order of appearance. It is built with a single traversal of the body, which collects the values of all
+ * variables at once.
+ */
+class VariableDefinitionIndex {
+
+    /**
+     * A value written to a variable.
+     */
+    static final class Definition {
+
+        private final Expression value;
+
+        private final boolean initializer;
+
+        private final int conditionalStage;
+
+        private Definition(Expression value, boolean initializer, int conditionalStage) {
+            this.value = value;
+            this.initializer = initializer;
+            this.conditionalStage = conditionalStage;
+        }
+
+        Expression getValue() {
+            return value;
+        }
+
+        /**
+         * @return true for a complete initializer of the variable definition (and not only a part of it)
+         */
+        boolean isInitializer() {
+            return initializer;
+        }
+
+        /**
+         * @return number of conditionals (if, inline if) surrounding the value
+         */
+        int getConditionalStage() {
+            return conditionalStage;
+        }
+    }
+
+    private final Map<String, List<Definition>> definitions = new HashMap<>();
+
+    VariableDefinitionIndex(Block body) {
+        body.accept(new IndexingVisitor());
+    }
+
+    List<Definition> getDefinitions(String variableName) {
+        List<Definition> list = definitions.get(variableName);
+        return list == null ? Collections.<Definition>emptyList() : list;
+    }
+
+    private void add(String variableName, Expression value, boolean initializer, int conditionalStage) {
+        List<Definition> list = definitions.get(variableName);
+        if (list == null) {
+            list = new ArrayList<>(2);
+            definitions.put(variableName, list);
+        }
+
+        list.add(new Definition(value, initializer, conditionalStage));
+    }
+
+    private static boolean isAcceptableResult(Expression expression) {
+        return expression instanceof Select || expression instanceof StringLiteral
+                || expression instanceof MethodInvocation;
+    }
+
+    /**
+     * While a definition or assignment is visited, the values found in it are collected for its variable. Other
+     * definitions and assignments nested in it are not considered.
+     */
+    private class IndexingVisitor extends ForwardingAstVisitor {
+
+        /** variable whose definition or assignment is currently visited, null if none */
+        private String subject;
+
+        private int conditionalStage = 0;
+
+        private boolean isOtherThanSubject(String name) {
+            return subject != null && !subject.equals(name);
+        }
+
+        @Override
+        public boolean visitVariableDefinitionEntry(VariableDefinitionEntry node) {
+            String name = node.astName().astValue();
+            if (isOtherThanSubject(name)) {
+                return true;
+            }
+
+            if (isAcceptableResult(node.astInitializer())) {
+                add(name, node.astInitializer(), true, conditionalStage);
+                return true;
+            }
+
+            subject = name;
+            return false;
+        }
+
+        @Override
+        public boolean visitBinaryExpression(BinaryExpression node) {
+            if (!(node.astLeft() instanceof VariableReference)) {
+                return true;
+            }
+
+            String name = ((VariableReference) node.astLeft()).astIdentifier().astValue();
+            if (isOtherThanSubject(name) || !node.astOperator().isAssignment()) {
+                return true; // we are only interested in assignments
+            }
+
+            subject = name;
+            return false; // inspect statement further
+        }
+
+        @Override
+        public void endVisit(Node node) {
+            if (node instanceof VariableDefinitionEntry || node instanceof BinaryExpression) {
+                subject = null;
+            } else if (node instanceof InlineIfExpression || node instanceof If) {
+                -- conditionalStage;
+            }
+        }
+
+        @Override
+        public boolean visitInlineIfExpression(InlineIfExpression node) {
+            ++ conditionalStage;
+            return false;
+        }
+
+        @Override
+        public boolean visitIf(If node) {
+            ++ conditionalStage;
+            return super.visitIf(node);
+        }
+
+        @Override
+        public boolean visitStringLiteral(StringLiteral node) {
+            if (subject != null) {
+                add(subject, node, false, conditionalStage);
+            }
+
+            return true;
+        }
+
+        @Override
+        public boolean visitVariableReference(VariableReference node) {
+            if (subject == null || subject.equals(node.astIdentifier().astValue())) {
+                return true; // e.g. the assigned variable itself
+            }
+
+            add(subject, node, false, conditionalStage);
+            return super.visitVariableReference(node);
+        }
+
+        @Override
+        public boolean visitMethodInvocation(MethodInvocation node) {
+            if (subject == null) {
+                return true;
+            }
+
+            add(subject, node, false, conditionalStage);
+            return super.visitMethodInvocation(node);
+        }
+
+        @Override
+        public boolean visitSelect(Select node) {
+            if (subject != null) {
+                add(subject, node, false, conditionalStage);
+            }
+
+            // DO NOT CHANGE as e.g. "LocationManager.GPS_PROVIDER" would add a false VariableReference
+            // to LocationManager otherwise instead
+            return true;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package io.github.nohum.androidlint.report;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * Writes JSON values directly to the output, see RFC 8259. Strings are also written by the statistics of the
+ * detectors, hence {@link #writeString} is public.
+ */
+public final class JsonOutput {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private JsonOutput() {
+    }
+
+    /**
+     * Writes the string quoted, null as {@code null}.
+     */
+    public static void writeString(Writer out, String value) throws IOException {
+        if (value == null) {
+            out.write("null");
+            return;
+        }
+
+        out.write('"');
+        int start = 0;
+        for (int i = 0; i < value.length(); ++ i) {
+            char c = value.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\') {
+                continue;
+            }
+
+            out.write(value, start, i - start);
+            start = i + 1;
+            switch (c) {
+                case '"':
+                    out.write("\\\"");
+                    break;
+                case '\\':
+                    out.write("\\\\");
+                    break;
+                case '\n':
+                    out.write("\\n");
+                    break;
+                case '\r':
+                    out.write("\\r");
+                    break;
+                case '\t':
+                    out.write("\\t");
+                    break;
+                default:
+                    out.write("\\u00");
+                    out.write(HEX[c >> 4]);
+                    out.write(HEX[c & 0xf]);
+            }
+        }
+
+        out.write(value, start, value.length() - start);
+        out.write('"');
+    }
+
+    static void writeStrings(Writer out, List<String> values) throws IOException {
+        out.write('[');
+        for (int i = 0; i < values.size(); ++ i) {
+            if (i > 0) {
+                out.write(',');
+            }
+
+            writeString(out, values.get(i));
+        }
+        out.write(']');
+    }
+
+    /**
+     * Writes {@code ,"name":} or, for the first member of an object, {@code "name":}.
+     */
+    static void writeName(Writer out, String name, boolean first) throws IOException {
+        if (!first) {
+            out.write(',');
+        }
+
+        writeString(out, name);
+        out.write(':');
+    }
+}
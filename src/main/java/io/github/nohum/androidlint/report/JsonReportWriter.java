@@ -0,0 +1,63 @@
+package io.github.nohum.androidlint.report;
+
+import io.github.nohum.androidlint.detectors.Finding;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import static io.github.nohum.androidlint.report.JsonOutput.writeName;
+import static io.github.nohum.androidlint.report.JsonOutput.writeString;
+
+/**
+ * Writes an object with the array {@code findings}, one finding per line, followed by their {@code count}. The
+ * class and method of a finding are null if it was found in sources.
+ */
+final class JsonReportWriter implements ReportWriter {
+
+    private final Writer out;
+
+    private int findings;
+
+    JsonReportWriter(Writer out) throws IOException {
+        this.out = out;
+        out.write("{\"findings\":[");
+    }
+
+    @Override
+    public void write(String location, Finding finding) throws IOException {
+        out.write(findings == 0 ? "\n{" : ",\n{");
+        writeName(out, "issue", true);
+        writeString(out, finding.getIssueId());
+        writeName(out, "location", false);
+        writeString(out, location);
+        writeName(out, "line", false);
+        out.write(Integer.toString(finding.getLine()));
+        writeName(out, "class", false);
+        writeString(out, finding.getClassName());
+        writeName(out, "method", false);
+        writeString(out, finding.getMethodName() == null ? null : finding.getMethodName() + finding.getMethodDesc());
+        writeName(out, "call", false);
+        writeString(out, finding.getCalledMethod());
+        writeName(out, "permission", false);
+        writeString(out, finding.getPermission());
+        writeName(out, "providers", false);
+        JsonOutput.writeStrings(out, finding.getProviders());
+        writeName(out, "message", false);
+        writeString(out, finding.getMessage());
+        out.write('}');
+        ++ findings;
+    }
+
+    @Override
+    public void finish() throws IOException {
+        out.write("\n],\"count\":");
+        out.write(Integer.toString(findings));
+        out.write("}\n");
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
@@ -0,0 +1,90 @@
+package io.github.nohum.androidlint.report;
+
+import com.android.tools.lint.detector.api.Issue;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Formats of the {@link ReportWriter}s. Reports written to files ending in {@code .gz} are compressed.
+ */
+public enum ReportFormat {
+    /** One line per finding like the lint text report */
+    TEXT,
+    /** A JSON object with the findings, see {@link JsonReportWriter} */
+    JSON,
+    /** A SARIF 2.1.0 log, see {@link SarifReportWriter} */
+    SARIF;
+
+    private static final String GZIP_SUFFIX = ".gz";
+
+    /**
+     * @return the format of the given name, case-insensitive, null if there is none
+     */
+    public static ReportFormat forName(String name) {
+        for (ReportFormat format : values()) {
+            if (format.name().equalsIgnoreCase(name)) {
+                return format;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @return the format implied by the extension of the file ({@code .sarif}, {@code .json}, possibly followed by
+     *         {@code .gz}), text for all others
+     */
+    public static ReportFormat forFile(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.US);
+        if (name.endsWith(GZIP_SUFFIX)) {
+            name = name.substring(0, name.length() - GZIP_SUFFIX.length());
+        }
+
+        if (name.endsWith(".sarif")) {
+            return SARIF;
+        }
+
+        return name.endsWith(".json") ? JSON : TEXT;
+    }
+
+    /**
+     * @param issues issues of the findings, listed as rules by SARIF
+     */
+    public ReportWriter create(Writer out, List<Issue> issues) throws IOException {
+        switch (this) {
+            case JSON:
+                return new JsonReportWriter(out);
+            case SARIF:
+                return new SarifReportWriter(out, issues);
+            default:
+                return new TextReportWriter(out);
+        }
+    }
+
+    /**
+     * Creates a report in the file, gzip compressed if its name ends in {@code .gz}.
+     */
+    public ReportWriter create(Path file, List<Issue> issues) throws IOException {
+        OutputStream stream = Files.newOutputStream(file);
+        try {
+            if (file.getFileName().toString().toLowerCase(Locale.US).endsWith(GZIP_SUFFIX)) {
+                stream = new GZIPOutputStream(stream, 64 * 1024);
+            }
+
+            return create(new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8)), issues);
+        } catch (IOException | RuntimeException e) {
+            stream.close();
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package io.github.nohum.androidlint.report;
+
+import io.github.nohum.androidlint.detectors.Finding;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Writes findings as they are produced, without keeping them, so memory does not grow with the size of the report.
+ * The formats are listed in {@link ReportFormat}.
+ */
+public interface ReportWriter extends Closeable {
+
+    /**
+     * @param location file containing the finding, for classes in archives the archives separated by {@code !/}
+     */
+    void write(String location, Finding finding) throws IOException;
+
+    /**
+     * Completes the report after the last finding, before it is closed.
+     */
+    void finish() throws IOException;
+}
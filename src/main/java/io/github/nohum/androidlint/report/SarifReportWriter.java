@@ -0,0 +1,221 @@
+package io.github.nohum.androidlint.report;
+
+import com.android.tools.lint.detector.api.Issue;
+import com.android.tools.lint.detector.api.Severity;
+import com.android.tools.lint.detector.api.TextFormat;
+import io.github.nohum.androidlint.detectors.Finding;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static io.github.nohum.androidlint.report.JsonOutput.writeName;
+import static io.github.nohum.androidlint.report.JsonOutput.writeString;
+
+/**
+ * Writes a SARIF 2.1.0 log with a single run. The rules are written up front, the results one per line as they
+ * come, and the closing brackets by {@link #finish}. The permission, providers and called method of a finding are
+ * result properties.
+ * <p>
+ * Artifact locations are RFC 3986 URI references: absolute files are {@code file} URIs, relative ones are
+ * percent-encoded paths relative to the {@code %SRCROOT%} base, which the consumer of the log resolves. For classes
+ * in archives the location is the outermost archive, the path of the class within it is the {@code archiveMember}
+ * property of the artifact location.
+ */
+final class SarifReportWriter implements ReportWriter {
+
+    private static final String SCHEMA = "https://json.schemastore.org/sarif-2.1.0.json";
+
+    private static final String TOOL_NAME = "android-lint-rules";
+
+    private static final String SOURCE_ROOT = "%SRCROOT%";
+
+    private static final String ARCHIVE_SEPARATOR = "!/";
+
+    /** Characters of a path segment not to be percent-encoded: unreserved, sub-delims and {@code @} */
+    private static final String SEGMENT_CHARACTERS =
+            "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789-._~!$&'()*+,;=@";
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    private final Writer out;
+
+    private final List<Issue> issues;
+
+    private int results;
+
+    /** Location of the previous result, findings of a class come in a row */
+    private String lastLocation;
+
+    /** Artifact location object written for {@link #lastLocation} */
+    private String lastArtifactLocation;
+
+    /**
+     * @param issues rules of the run, the findings must be of these issues
+     */
+    SarifReportWriter(Writer out, List<Issue> issues) throws IOException {
+        this.out = out;
+        this.issues = issues;
+
+        out.write("{\"$schema\":\"" + SCHEMA + "\",\"version\":\"2.1.0\",\"runs\":[{\"tool\":{\"driver\":{");
+        writeName(out, "name", true);
+        writeString(out, TOOL_NAME);
+        writeName(out, "rules", false);
+        out.write('[');
+        for (int i = 0; i < issues.size(); ++ i) {
+            Issue issue = issues.get(i);
+            out.write(i == 0 ? "\n{" : ",\n{");
+            writeName(out, "id", true);
+            writeString(out, issue.getId());
+            writeName(out, "shortDescription", false);
+            writeText(issue.getBriefDescription(TextFormat.TEXT));
+            writeName(out, "fullDescription", false);
+            writeText(issue.getExplanation(TextFormat.TEXT));
+            writeName(out, "defaultConfiguration", false);
+            out.write("{\"level\":");
+            writeString(out, getLevel(issue.getDefaultSeverity()));
+            out.write("}}");
+        }
+        out.write("]}},\"results\":[");
+    }
+
+    @Override
+    public void write(String location, Finding finding) throws IOException {
+        out.write(results == 0 ? "\n{" : ",\n{");
+        writeName(out, "ruleId", true);
+        writeString(out, finding.getIssueId());
+        int ruleIndex = getRuleIndex(finding.getIssueId());
+        if (ruleIndex != -1) {
+            writeName(out, "ruleIndex", false);
+            out.write(Integer.toString(ruleIndex));
+            writeName(out, "level", false);
+            writeString(out, getLevel(issues.get(ruleIndex).getDefaultSeverity()));
+        }
+        writeName(out, "message", false);
+        writeText(finding.getMessage());
+
+        writeName(out, "locations", false);
+        out.write("[{\"physicalLocation\":{\"artifactLocation\":");
+        if (!location.equals(lastLocation)) {
+            lastLocation = location;
+            lastArtifactLocation = getArtifactLocation(location);
+        }
+        out.write(lastArtifactLocation);
+        if (finding.getLine() > 0) {
+            out.write(",\"region\":{\"startLine\":");
+            out.write(Integer.toString(finding.getLine()));
+            out.write('}');
+        }
+        out.write('}');
+        if (finding.getClassName() != null) {
+            out.write(",\"logicalLocations\":[{\"fullyQualifiedName\":");
+            writeString(out, finding.getClassName().replace('/', '.') + '.' + finding.getMethodName());
+            out.write(",\"kind\":\"function\"}]");
+        }
+        out.write("}]");
+
+        writeName(out, "properties", false);
+        out.write('{');
+        writeName(out, "permission", true);
+        writeString(out, finding.getPermission());
+        writeName(out, "providers", false);
+        JsonOutput.writeStrings(out, finding.getProviders());
+        writeName(out, "calledMethod", false);
+        writeString(out, finding.getCalledMethod());
+        out.write("}}");
+        ++ results;
+    }
+
+    @Override
+    public void finish() throws IOException {
+        out.write("\n]}]}\n");
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private void writeText(String text) throws IOException {
+        out.write("{\"text\":");
+        writeString(out, text);
+        out.write('}');
+    }
+
+    private int getRuleIndex(String issueId) {
+        for (int i = 0; i < issues.size(); ++ i) {
+            if (issues.get(i).getId().equals(issueId)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private static String getLevel(Severity severity) {
+        switch (severity) {
+            case FATAL:
+            case ERROR:
+                return "error";
+            case WARNING:
+                return "warning";
+            default:
+                return "note";
+        }
+    }
+
+    /**
+     * @return the artifact location object of the given location
+     */
+    private static String getArtifactLocation(String location) throws IOException {
+        String member = null;
+        int separator = location.indexOf(ARCHIVE_SEPARATOR);
+        if (separator != -1) {
+            member = location.substring(separator + ARCHIVE_SEPARATOR.length());
+            location = location.substring(0, separator);
+        }
+
+        StringWriter artifact = new StringWriter();
+        artifact.write("{\"uri\":");
+        File file = new File(location);
+        if (file.isAbsolute()) {
+            writeString(artifact, file.toURI().toASCIIString());
+        } else {
+            writeString(artifact, encodePath(location.replace(File.separatorChar, '/')));
+            writeName(artifact, "uriBaseId", false);
+            writeString(artifact, SOURCE_ROOT);
+        }
+
+        if (member != null) {
+            artifact.write(",\"properties\":{");
+            writeName(artifact, "archiveMember", true);
+            writeString(artifact, member);
+            artifact.write('}');
+        }
+
+        artifact.write('}');
+        return artifact.toString();
+    }
+
+    /**
+     * Percent-encodes the UTF-8 bytes of each segment of a relative path. Colons are encoded as well, so the first
+     * segment is not taken for a scheme.
+     */
+    private static String encodePath(String path) {
+        StringBuilder uri = new StringBuilder(path.length() + 16);
+        for (byte b : path.getBytes(StandardCharsets.UTF_8)) {
+            char c = (char) (b & 0xff);
+            if (c == '/' || c < 0x80 && SEGMENT_CHARACTERS.indexOf(c) != -1) {
+                uri.append(c);
+            } else {
+                uri.append('%').append(HEX[c >> 4]).append(HEX[c & 0xf]);
+            }
+        }
+
+        return uri.toString();
+    }
+}
@@ -0,0 +1,48 @@
+package io.github.nohum.androidlint.report;
+
+import io.github.nohum.androidlint.detectors.Finding;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes one line per finding, like the text report of lint:
+ * {@code location:line: Error: message [issue id]}, the line is left out if it is unknown.
+ */
+final class TextReportWriter implements ReportWriter {
+
+    private final Writer out;
+
+    private int findings;
+
+    TextReportWriter(Writer out) {
+        this.out = out;
+    }
+
+    @Override
+    public void write(String location, Finding finding) throws IOException {
+        out.write(location);
+        if (finding.getLine() > 0) {
+            out.write(':');
+            out.write(Integer.toString(finding.getLine()));
+        }
+
+        out.write(": Error: ");
+        out.write(finding.getMessage());
+        out.write(" [");
+        out.write(finding.getIssueId());
+        out.write("]\n");
+        ++ findings;
+    }
+
+    @Override
+    public void finish() throws IOException {
+        out.write(findings + " errors\n");
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
@@ -0,0 +1,197 @@
+package io.github.nohum.androidlint.scanner;
+
+import com.android.tools.lint.detector.api.Issue;
+import io.github.nohum.androidlint.detectors.BytecodeChecker;
+import io.github.nohum.androidlint.detectors.Finding;
+import io.github.nohum.androidlint.detectors.LocationUsageDetector;
+import io.github.nohum.androidlint.detectors.SocketUsageDetector;
+import io.github.nohum.androidlint.report.ReportFormat;
+import io.github.nohum.androidlint.report.ReportWriter;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Checks jars, AARs and class directories like the byte-code backends of the location and socket detectors,
+ * without a lint run, e.g. to vet third-party SDKs in CI. There is no manifest, so every call needing a permission
+ * is reported. Classes are decoded and checked in parallel on a fork-join pool. The worker threads share one
+ * {@link BytecodeChecker}, which keeps the caches walking the class hierarchy and resolving providers in a
+ * {@link ThreadLocal} per thread. The findings are written in the order of the classes in the
+ * {@link ClassIndex}, hence the output is the same on every run, however the work is scheduled.
+ * <p>
+ * Usage: {@code BatchScanner [--target-sdk N] [--threads N] [--format text|json|sarif] [--output FILE] INPUT...}.
+ * The format defaults to the one implied by the output file, see {@link ReportFormat#forFile}, and is written
+ * gzip compressed if the file name ends in {@code .gz}. Exits with status 1 if anything was found, 2 on invalid
+ * arguments or unreadable inputs.
+ */
+public final class BatchScanner {
+
+    private static final int DEFAULT_TARGET_SDK = 23;
+
+    /** Classes checked ahead of the one written next, per thread, bounds the findings kept in memory */
+    private static final int TASKS_PER_THREAD = 4;
+
+    private static final List<Issue> ISSUES = Arrays.asList(LocationUsageDetector.ISSUE, SocketUsageDetector.ISSUE);
+
+    private final ClassIndex index;
+
+    private final ForkJoinPool pool;
+
+    private final BytecodeChecker checker;
+
+    private int findings;
+
+    private int errors;
+
+    /** Outcome of checking one class */
+    private static final class Result {
+        final List<Finding> findings;
+        final String error;
+
+        Result(List<Finding> findings, String error) {
+            this.findings = findings;
+            this.error = error;
+        }
+    }
+
+    private BatchScanner(ClassIndex index, ForkJoinPool pool, int targetSdk) {
+        this.index = index;
+        this.pool = pool;
+        checker = new BytecodeChecker(index, targetSdk);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int targetSdk = DEFAULT_TARGET_SDK;
+        int threads = Runtime.getRuntime().availableProcessors();
+        String output = null;
+        ReportFormat format = null;
+        List<Path> inputs = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < args.length; ++ i) {
+                if ("--target-sdk".equals(args[i]) && i + 1 < args.length) {
+                    targetSdk = Integer.parseInt(args[++ i]);
+                } else if ("--threads".equals(args[i]) && i + 1 < args.length) {
+                    threads = Math.max(1, Integer.parseInt(args[++ i]));
+                } else if ("--format".equals(args[i]) && i + 1 < args.length) {
+                    format = ReportFormat.forName(args[++ i]);
+                    if (format == null) {
+                        throw new IllegalArgumentException("unknown format " + args[i]);
+                    }
+                } else if ("--output".equals(args[i]) && i + 1 < args.length) {
+                    output = args[++ i];
+                } else if (args[i].startsWith("--")) {
+                    throw new IllegalArgumentException("unknown option " + args[i]);
+                } else {
+                    inputs.add(Paths.get(args[i]));
+                }
+            }
+
+            if (inputs.isEmpty()) {
+                throw new IllegalArgumentException("no inputs");
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("usage: BatchScanner [--target-sdk N] [--threads N] [--format text|json|sarif] "
+                    + "[--output FILE] (JAR | AAR | DIRECTORY | CLASS)...");
+            System.exit(2);
+            return;
+        }
+
+        int status;
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try (ClassIndex index = ClassIndex.build(inputs);
+             ReportWriter report = openReport(output, format)) {
+            for (String problem : index.getProblems()) {
+                System.err.println(problem);
+            }
+
+            BatchScanner scanner = new BatchScanner(index, pool, targetSdk);
+            scanner.scan(report, threads * TASKS_PER_THREAD);
+            report.finish();
+
+            System.err.println(String.format("%d classes in %d archives: %d findings, %d classes failed",
+                    index.getEntries().size(), index.getArchives(), scanner.findings, scanner.errors));
+            status = scanner.findings > 0 ? 1 : 0;
+        } catch (IOException e) {
+            System.err.println(e.toString());
+            status = 2;
+        } finally {
+            pool.shutdown();
+        }
+
+        System.exit(status);
+    }
+
+    private static ReportWriter openReport(String output, ReportFormat format) throws IOException {
+        if (output == null) {
+            Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+            return (format == null ? ReportFormat.TEXT : format).create(out, ISSUES);
+        }
+
+        Path file = Paths.get(output);
+        return (format == null ? ReportFormat.forFile(file) : format).create(file, ISSUES);
+    }
+
+    /**
+     * Checks all classes of the index, at most {@code window} at a time, and writes their findings in order.
+     */
+    private void scan(ReportWriter report, int window) throws IOException, InterruptedException {
+        List<ClassEntry> entries = index.getEntries();
+        Deque<ForkJoinTask<Result>> pending = new ArrayDeque<>();
+        int submitted = 0;
+
+        for (ClassEntry entry : entries) {
+            while (pending.size() >= window) {
+                write(report, entries.get(submitted - pending.size()), pending.removeFirst());
+            }
+
+            pending.addLast(pool.submit(check(entry)));
+            ++ submitted;
+        }
+
+        while (!pending.isEmpty()) {
+            write(report, entries.get(submitted - pending.size()), pending.removeFirst());
+        }
+    }
+
+    private Callable<Result> check(final ClassEntry entry) {
+        return new Callable<Result>() {
+            @Override
+            public Result call() {
+                try {
+                    return new Result(checker.check(index.read(entry)), null);
+                } catch (Exception | StackOverflowError e) {
+                    return new Result(Collections.<Finding>emptyList(), e.toString());
+                }
+            }
+        };
+    }
+
+    private void write(ReportWriter report, ClassEntry entry, ForkJoinTask<Result> task)
+            throws IOException, InterruptedException {
+        Result result;
+        try {
+            result = task.get();
+        } catch (ExecutionException e) {
+            result = new Result(Collections.<Finding>emptyList(), e.getCause().toString());
+        }
+
+        if (result.error != null) {
+            System.err.println(entry.getLocation() + ": " + result.error);
+            ++ errors;
+        }
+
+        for (Finding finding : result.findings) {
+            report.write(entry.getLocation(), finding);
+            ++ findings;
+        }
+    }
+}
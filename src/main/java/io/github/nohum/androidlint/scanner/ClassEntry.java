@@ -0,0 +1,41 @@
+package io.github.nohum.androidlint.scanner;
+
+import java.nio.file.Path;
+
+/**
+ * Class file found in one of the scanned inputs.
+ */
+final class ClassEntry {
+
+    private final String location;
+
+    private final Path path;
+
+    private final String name;
+
+    /**
+     * @param location where the class was found, archives separated by {@code !/}
+     * @param path class file, possibly within a zip file system
+     * @param name internal name of the class, implied by its path
+     */
+    ClassEntry(String location, Path path, String name) {
+        this.location = location;
+        this.path = path;
+        this.name = name;
+    }
+
+    String getLocation() {
+        return location;
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    /**
+     * @return internal name of the class
+     */
+    String getName() {
+        return name;
+    }
+}
@@ -0,0 +1,318 @@
+package io.github.nohum.androidlint.scanner;
+
+import io.github.nohum.androidlint.detectors.BytecodeChecker;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.tree.ClassNode;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Class files of the scanned inputs: class directories, jars and AARs (their {@code classes.jar} and the jars in
+ * {@code libs}), also found within directories. Archives are read through zip file systems, nested jars are copied
+ * to temporary files first. The entries of each input are sorted by location, so they are listed in the same
+ * order on every run.
+ * <p>
+ * Building the index only lists the class files, named by their path like on a class path: class directories and
+ * archives are the roots of their packages. A class file is read when it is checked, or when its superclass is
+ * looked up before. The superclasses are remembered, so each class is usually read once.
+ * <p>
+ * As {@link BytecodeChecker.ClassHierarchy} it looks up classes by name, the first input declaring a class wins.
+ * The entries are immutable once built and the superclasses are remembered in a concurrent map, hence lookups
+ * are thread-safe.
+ */
+final class ClassIndex implements BytecodeChecker.ClassHierarchy, Closeable {
+
+    private static final String CLASS_SUFFIX = ".class";
+
+    private static final String ARCHIVE_SEPARATOR = "!/";
+
+    /** Remembered superclass of classes without one, i.e. {@code java/lang/Object} and unreadable classes */
+    private static final String NO_SUPERCLASS = "";
+
+    private final List<ClassEntry> entries = new ArrayList<>();
+
+    private final Map<String, ClassEntry> entriesByName = new HashMap<>();
+
+    /** Superclasses of the indexed classes, by name, as far as they have been read */
+    private final ConcurrentHashMap<String, String> superNames = new ConcurrentHashMap<>();
+
+    private final List<FileSystem> fileSystems = new ArrayList<>();
+
+    private final List<Path> temporaryFiles = new ArrayList<>();
+
+    private final List<String> problems = new ArrayList<>();
+
+    private int archives;
+
+    /**
+     * Indexes the class files of the inputs, in the given order.
+     *
+     * @throws IOException if an input cannot be read, the index is closed then
+     */
+    static ClassIndex build(List<Path> inputs) throws IOException {
+        ClassIndex index = new ClassIndex();
+        try {
+            for (Path input : inputs) {
+                index.addInput(input);
+            }
+        } catch (IOException | RuntimeException e) {
+            index.close();
+            throw e;
+        }
+
+        return index;
+    }
+
+    private ClassIndex() {
+    }
+
+    /**
+     * @return all class files found, in a deterministic order
+     */
+    List<ClassEntry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * @return number of jars and AARs read, including nested ones
+     */
+    int getArchives() {
+        return archives;
+    }
+
+    /**
+     * @return class files that could not be indexed, with the reason
+     */
+    List<String> getProblems() {
+        return problems;
+    }
+
+    /**
+     * @return the class with its code
+     */
+    ClassNode read(ClassEntry entry) throws IOException {
+        ClassNode classNode = new ClassNode();
+        new ClassReader(Files.readAllBytes(entry.getPath())).accept(classNode, 0);
+
+        if (entriesByName.get(entry.getName()) == entry) {
+            superNames.putIfAbsent(entry.getName(), classNode.superName == null ? NO_SUPERCLASS : classNode.superName);
+        }
+
+        return classNode;
+    }
+
+    @Override
+    public ClassNode findClass(String internalName) {
+        ClassEntry entry = entriesByName.get(internalName);
+        if (entry == null) {
+            return null;
+        }
+
+        try {
+            return read(entry);
+        } catch (IOException | RuntimeException e) {
+            return null; // unreadable classes are treated like unknown ones
+        }
+    }
+
+    @Override
+    public String getSuperClass(String internalName) {
+        ClassEntry entry = entriesByName.get(internalName);
+        if (entry == null) {
+            return null;
+        }
+
+        String superName = superNames.get(internalName);
+        if (superName == null) {
+            superName = readSuperName(entry);
+            superNames.putIfAbsent(internalName, superName);
+        }
+
+        return superName.equals(NO_SUPERCLASS) ? null : superName;
+    }
+
+    /**
+     * Reads the header of a class that has not been checked yet.
+     */
+    private static String readSuperName(ClassEntry entry) {
+        try {
+            String superName = new ClassReader(Files.readAllBytes(entry.getPath())).getSuperName();
+            return superName == null ? NO_SUPERCLASS : superName;
+        } catch (IOException | RuntimeException e) {
+            return NO_SUPERCLASS; // unreadable classes are treated like unknown ones
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (FileSystem fileSystem : fileSystems) {
+            try {
+                fileSystem.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+
+        for (Path file : temporaryFiles) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+
+        fileSystems.clear();
+        temporaryFiles.clear();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void addInput(Path input) throws IOException {
+        if (Files.isDirectory(input)) {
+            addDirectory(input, input.toString(), "");
+        } else if (isJar(input)) {
+            addJar(input, input.toString());
+        } else if (isAar(input)) {
+            addAar(input, input.toString());
+        } else if (input.toString().endsWith(CLASS_SUFFIX)) {
+            addClassFile(input);
+        } else if (!Files.exists(input)) {
+            throw new NoSuchFileException(input.toString());
+        } else {
+            throw new IOException("Unsupported input, expected a directory, jar, aar or class file: " + input);
+        }
+    }
+
+    /**
+     * Adds the classes, jars and AARs of the directory, in the order of their names.
+     *
+     * @param packagePrefix internal name of the package of the classes in the directory, ending with a slash
+     */
+    private void addDirectory(Path directory, String location, String packagePrefix) throws IOException {
+        List<Path> children = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path child : stream) {
+                children.add(child);
+            }
+        }
+
+        Collections.sort(children, new Comparator<Path>() {
+            @Override
+            public int compare(Path a, Path b) {
+                return a.getFileName().toString().compareTo(b.getFileName().toString());
+            }
+        });
+
+        for (Path child : children) {
+            String name = child.getFileName().toString();
+            String childLocation = location.endsWith("/") ? location + name : location + "/" + name;
+
+            if (Files.isDirectory(child)) {
+                addDirectory(child, childLocation, packagePrefix + stripSlash(name) + "/");
+            } else if (name.endsWith(CLASS_SUFFIX)) {
+                String className = name.substring(0, name.length() - CLASS_SUFFIX.length());
+                addClass(child, childLocation, packagePrefix + className);
+            } else if (isJar(child)) {
+                addJar(child, childLocation);
+            } else if (isAar(child)) {
+                addAar(child, childLocation);
+            }
+        }
+    }
+
+    private void addJar(Path jar, String location) throws IOException {
+        addDirectory(openArchive(jar).getPath("/"), location + ARCHIVE_SEPARATOR, "");
+    }
+
+    /**
+     * Adds the classes of an AAR, which keeps them in jars only.
+     */
+    private void addAar(Path aar, String location) throws IOException {
+        FileSystem fileSystem = openArchive(aar);
+
+        Path classes = fileSystem.getPath("/classes.jar");
+        if (Files.exists(classes)) {
+            addJar(classes, location + ARCHIVE_SEPARATOR + "classes.jar");
+        }
+
+        Path libs = fileSystem.getPath("/libs");
+        if (Files.isDirectory(libs)) {
+            List<Path> jars = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(libs, "*.jar")) {
+                for (Path jar : stream) {
+                    jars.add(jar);
+                }
+            }
+
+            Collections.sort(jars);
+            for (Path jar : jars) {
+                addJar(jar, location + ARCHIVE_SEPARATOR + "libs/" + jar.getFileName());
+            }
+        }
+    }
+
+    /**
+     * Zip file systems need a file of the default file system, hence archives within archives are extracted first.
+     */
+    private FileSystem openArchive(Path archive) throws IOException {
+        if (archive.getFileSystem() != FileSystems.getDefault()) {
+            Path copy = Files.createTempFile("scanner", ".zip");
+            temporaryFiles.add(copy);
+            Files.copy(archive, copy, StandardCopyOption.REPLACE_EXISTING);
+            archive = copy;
+        }
+
+        FileSystem fileSystem = FileSystems.newFileSystem(archive, (ClassLoader) null);
+        fileSystems.add(fileSystem);
+        ++ archives;
+        return fileSystem;
+    }
+
+    /**
+     * Adds a class file given as input, whose name is not implied by a directory. Its header is read for it, an
+     * invalid class file is skipped.
+     */
+    private void addClassFile(Path file) throws IOException {
+        String name;
+        try {
+            name = new ClassReader(Files.readAllBytes(file)).getClassName();
+        } catch (RuntimeException e) {
+            problems.add(file + ": invalid class file (" + e + ")");
+            return;
+        }
+
+        addClass(file, file.toString(), name);
+    }
+
+    /**
+     * Adds a class without reading it, its code is read when it is analyzed.
+     */
+    private void addClass(Path file, String location, String name) {
+        ClassEntry entry = new ClassEntry(location, file, name);
+        entries.add(entry);
+        if (!entriesByName.containsKey(entry.getName())) {
+            entriesByName.put(entry.getName(), entry);
+        }
+    }
+
+    /**
+     * @return the name of a directory of a zip file system without the trailing slash it is listed with
+     */
+    private static String stripSlash(String name) {
+        return name.endsWith("/") ? name.substring(0, name.length() - 1) : name;
+    }
+
+    private static boolean isJar(Path file) {
+        return file.getFileName() != null && file.getFileName().toString().endsWith(".jar");
+    }
+
+    private static boolean isAar(Path file) {
+        return file.getFileName() != null && file.getFileName().toString().endsWith(".aar");
+    }
+}